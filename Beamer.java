@@ -2,6 +2,8 @@
 /**
  * The Beamer class represents a device that can be charged and fired to transport the player.
  * It is a subclass of the Item class and adds specific functionality for charging and firing the beamer.
+ * Its charge is guarded by the beamer itself, as a beamer lying in a shared world can be
+ * picked up by any player.
  *
  * @author Noor Karabala
  */
@@ -21,6 +23,16 @@ public class Beamer extends Item
         this.chargingRoom = null;
     }
 
+    /**
+     * Constructor for objects of class Beamer of a given type
+     */
+    public Beamer(ItemType type)
+    {
+        super(type);
+        this.isCharged = false;
+        this.chargingRoom = null;
+    }
+
     /**
      * Charges the beamer with the current room.
      *
@@ -28,10 +40,9 @@ public class Beamer extends Item
      * 
      * @return true if the beamer was successfully charged, false if it was already charged.
      */
-    public boolean charge(Room currentRoom)
+    public synchronized boolean charge(Room currentRoom)
     {
         if(isCharged){
-            System.out.println("Beamer is already charged!");
             return false;
         }else{
             this.chargingRoom = currentRoom;
@@ -40,22 +51,44 @@ public class Beamer extends Item
         }
     }
     
+    /**
+     * Restores the charge of a beamer, e.g. of a saved game. Unlike
+     * charge(), this is not something the player does.
+     *
+     * @param chargingRoom The room the beamer was charged in, or null if it is not charged.
+     */
+    synchronized void setChargingRoom(Room chargingRoom)
+    {
+        this.chargingRoom = chargingRoom;
+        this.isCharged = chargingRoom != null;
+    }
+    
     /**
      * Returns the current charge status of the beamer. 
      *
      * @return true if the beamer is charged, false otherwise.
      */
-    public boolean getIsCharged()
+    public synchronized boolean getIsCharged()
     {
         return this.isCharged;
     }
     
+    /**
+     * Returns the room the beamer was charged in.
+     *
+     * @return the charging room, or null if the beamer is not charged.
+     */
+    public synchronized Room getChargingRoom()
+    {
+        return this.chargingRoom;
+    }
+    
     /**
      * Fires the beamer, transporting the player to the room it was charged in.
      *
      * @return The room the beamer was charged with, or null if the beamer is not charged.
      */
-    public Room fire()
+    public synchronized Room fire()
     {
         if (isCharged) {
             
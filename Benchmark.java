@@ -0,0 +1,353 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.FileWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Arrays;
+
+/**
+ * Benchmark measures the speed of the main operations of the game:
+ * recognising command words, executing each command, describing rooms,
+ * removing items from rooms of different sizes, leaving a transporter
+ * room, and loading the rooms of a large generated world file. Every
+ * benchmark is warmed up first, then timed several times; the median time
+ * per operation is reported.
+ *
+ * The results can be written to a baseline file and later runs compared
+ * against it, so a build can fail when an operation became slower:
+ *
+ *     java Benchmark                           run and print the results
+ *     java Benchmark -save baseline.txt        also write the results
+ *     java Benchmark -check baseline.txt [20]  fail if any result is more than
+ *                                              20% (default) slower than the baseline
+ *
+ * This is not a JMH harness: all benchmarks run in one JVM without forks,
+ * so a benchmark is compiled with what the JIT learned from the ones
+ * before it, and results vary from run to run. The check catches large
+ * slowdowns on a quiet machine; it is too noisy to gate every CI build.
+ *
+ * @author Noor Karabala
+ */
+public class Benchmark
+{
+    // how long each benchmark is warmed up and how often it is timed
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final int ROUNDS = 5;
+    private static final long ROUND_NANOS = 200_000_000L;
+
+    // sizes of the rooms used by the removeItem benchmarks
+    private static final int[] ROOM_SIZES = { 10, 100, 1_000, 10_000, 100_000 };
+
+    // the size of the generated world, and the number of its rooms kept loaded
+    private static final int GENERATED_ROOMS = 1_000_000;
+    private static final int GENERATED_LOADED_ROOMS = 10_000;
+
+    /**
+     * One benchmarked operation. It returns a value so that the work
+     * cannot be optimised away.
+     */
+    private interface Operation
+    {
+        int run();
+    }
+
+    // results in nanoseconds per operation, in the order they were run
+    private LinkedHashMap<String, Double> results;
+
+    // everything returned by the operations ends up here
+    private int sink;
+
+    /**
+     * Create a benchmark with no results yet.
+     */
+    public Benchmark()
+    {
+        results = new LinkedHashMap<String, Double>();
+    }
+
+    /**
+     * Run all the benchmarks.
+     * 
+     * @throws IOException If the generated world file cannot be written
+     */
+    public void runAll() throws IOException
+    {
+        benchmarkCommandWords();
+        benchmarkCommands();
+        benchmarkRooms();
+        benchmarkTransporterRoom();
+        benchmarkGeneratedWorld();
+    }
+
+    /**
+     * Benchmark recognising a valid and an invalid command word, and
+     * tokenizing whole lines.
+     */
+    private void benchmarkCommandWords()
+    {
+        CommandWords commandWords = new CommandWords();
+        run("CommandWords.isCommand(hit)", () -> commandWords.isCommand("fire") ? 1 : 0);
+        run("CommandWords.isCommand(miss)", () -> commandWords.isCommand("jump") ? 1 : 0);
+
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        String line = "take cookie";
+        ByteBuffer bytes = ByteBuffer.wrap("go north\r\n".getBytes(StandardCharsets.UTF_8));
+        run("CommandTokenizer.tokenize(String)", () -> tokenizer.tokenize(line).getSecondWord().length());
+        run("CommandTokenizer.tokenize(ByteBuffer)", () -> tokenizer.tokenize(bytes).getSecondWord().length());
+    }
+
+    /**
+     * Benchmark executing every command. Commands that change the state
+     * of the game are paired with a command undoing the change, so every
+     * operation starts from the same state.
+     */
+    private void benchmarkCommands()
+    {
+        Game game = new Game();
+        Command help = new Command("help", null);
+        Command quit = new Command("quit", null);
+        Command look = new Command("look", null);
+        Command goEast = new Command("go", "east");
+        Command goWest = new Command("go", "west");
+        Command goNowhere = new Command("go", "up");
+        Command back = new Command("back", null);
+        Command stackBack = new Command("stackBack", null);
+        Command takeCookie = new Command("take", "cookie");
+        Command eat = new Command("eat", null);
+        Command drop = new Command("drop", null);
+        Command takeBeamer = new Command("take", "beamer1");
+        Command charge = new Command("charge", null);
+        Command fire = new Command("fire", null);
+        Command route = new Command("route", "office");
+        Command unknown = new Command(null, null);
+
+        run("Game.execute(help)", () -> game.execute(help).getStatus().ordinal());
+        run("Game.execute(quit)", () -> game.execute(quit).getStatus().ordinal());
+        run("Game.execute(unknown)", () -> game.execute(unknown).getStatus().ordinal());
+        run("Game.execute(look)", () -> game.execute(look).getStatus().ordinal());
+        run("Game.execute(route)", () -> game.execute(route).getStatus().ordinal());
+        run("Game.execute(go, no door)", () -> game.execute(goNowhere).getStatus().ordinal());
+        run("Game.execute(go)", () -> game.execute(goEast).getStatus().ordinal()
+                                      + game.execute(goWest).getStatus().ordinal());
+        Game printing = new Game(OutputSink.discard());
+        run("Game.processInput(go), discarded output", () -> (printing.processInput("go east") ? 1 : 0)
+                                                          + (printing.processInput("go west") ? 1 : 0));
+        run("Game.execute(back)", () -> game.execute(back).getStatus().ordinal());
+        run("Game.execute(stackBack)", () -> game.execute(goEast).getStatus().ordinal()
+                                             + game.execute(stackBack).getStatus().ordinal());
+
+        // move to the theatre, where there is a cookie and a beamer
+        game.execute(goEast);
+        run("Game.execute(take, drop)", () -> game.execute(takeCookie).getStatus().ordinal()
+                                              + game.execute(drop).getStatus().ordinal());
+        run("Game.execute(eat)", () -> game.execute(eat).getStatus().ordinal());
+        game.execute(takeCookie);
+        game.execute(eat);
+        game.execute(takeBeamer);
+        run("Game.execute(charge, fire)", () -> game.execute(charge).getStatus().ordinal()
+                                                + game.execute(fire).getStatus().ordinal());
+    }
+
+    /**
+     * Benchmark describing a room and removing items from rooms with
+     * an increasing number of items.
+     */
+    private void benchmarkRooms()
+    {
+        World world = new World();
+        Room room = world.newRoom("in a computing lab");
+        room.setExit("north", world.newRoom("outside the main entrance of the university"));
+        room.setExit("east", world.newRoom("in the computing admin office"));
+        room.addItem(new Item("chair1", "a wooden chair", 5));
+        room.addItem(new Item("computer1", "a PC", 10));
+        room.addItem(new Item("chair2", "a wooden chair", 5));
+        room.addItem(new Item("computer2", "a Mac", 5));
+        run("Room.getLongDescription", () -> room.getLongDescription().length());
+
+        for (int size : ROOM_SIZES) {
+            Room storeroom = world.newRoom("in a storeroom");
+            for (int i = 1; i < size; i++) {
+                storeroom.addItem(new Item("box" + i, "a cardboard box", 1));
+            }
+            // the item we look for is the last one in the room
+            storeroom.addItem(new Item("key", "a small key", 0.1));
+            run("Room.removeItem(" + size + " items)", () -> {
+                Item key = storeroom.removeItem("key");
+                storeroom.addItem(key);
+                return key.getName().length();
+            });
+        }
+    }
+
+    /**
+     * Benchmark leaving a transporter room.
+     */
+    private void benchmarkTransporterRoom()
+    {
+        World world = new World();
+        TransporterRoom transporterRoom = world.newTransporterRoom("in a mysterious transporter room");
+        for (int i = 0; i < 100; i++) {
+            world.newRoom("in room " + i);
+        }
+        run("TransporterRoom.getExit", () -> transporterRoom.getExit("north").getId());
+
+        RandomSource seeded = new SeededRandom(1);
+        RandomSource threadLocal = RandomSource.threadLocal();
+        run("TransporterRoom.getExit(seeded)", () -> transporterRoom.getExit("north", seeded).getId());
+        run("TransporterRoom.getExit(threadLocal)", () -> transporterRoom.getExit("north", threadLocal).getId());
+
+        // every room weighted by its id
+        int[] roomIds = new int[world.getRoomCount()];
+        double[] weights = new double[roomIds.length];
+        for (int i = 0; i < roomIds.length; i++) {
+            roomIds[i] = i;
+            weights[i] = i + 1;
+        }
+        world.setDestinationTable(DestinationTable.weighted(roomIds, weights));
+        run("TransporterRoom.getExit(weighted)", () -> transporterRoom.getExit("north", seeded).getId());
+        world.setDestinationTable(null);
+    }
+
+    /**
+     * Benchmark a world file far larger than the rooms kept loaded:
+     * getting random rooms (nearly always loading them from the file and
+     * unloading others), and walking a player through it.
+     * 
+     * @throws IOException If the world file cannot be written
+     */
+    private void benchmarkGeneratedWorld() throws IOException
+    {
+        Path file = Files.createTempFile("benchmark", ".zwf");
+        try {
+            WorldGenerator generator = new WorldGenerator(GENERATED_ROOMS, 1);
+            generator.setTopology(WorldGenerator.Topology.SMALL_WORLD);
+            generator.write(file);
+            World world = new World(WorldFile.open(file), GENERATED_LOADED_ROOMS);
+            SeededRandom random = new SeededRandom(1);
+            run("World.getRoom(generated file)", () -> world.getRoom(random.nextInt(GENERATED_ROOMS)).getId());
+
+            // walk south until the bottom of the grid, then north again
+            Game game = new Game(OutputSink.discard(), world);
+            Command[] walk = { new Command("go", "south"), new Command("go", "north") };
+            int[] heading = new int[1];
+            run("Game.execute(go, generated file)", () -> {
+                CommandResult result = game.execute(walk[heading[0]]);
+                if (result.getStatus() == CommandResult.Status.NO_DOOR) {
+                    heading[0] ^= 1;
+                }
+                return result.getStatus().ordinal();
+            });
+        }
+        finally {
+            Files.deleteIfExists(file); // the mapping stays valid
+        }
+    }
+
+    /**
+     * Warm up and time one operation, and record its median time.
+     *
+     * @param name The name of the benchmark
+     * @param operation The operation to time
+     */
+    private void run(String name, Operation operation)
+    {
+        long end = System.nanoTime() + WARMUP_NANOS;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 1000; i++) {
+                sink += operation.run();
+            }
+        }
+
+        double[] rounds = new double[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long count = 0;
+            long start = System.nanoTime();
+            long now = start;
+            while (now - start < ROUND_NANOS) {
+                for (int i = 0; i < 1000; i++) {
+                    sink += operation.run();
+                }
+                count += 1000;
+                now = System.nanoTime();
+            }
+            rounds[r] = (double) (now - start) / count;
+        }
+        Arrays.sort(rounds);
+        double median = rounds[ROUNDS / 2];
+        results.put(name, median);
+        System.out.println(String.format("%-36s %12.1f ns/op", name, median));
+    }
+
+    /**
+     * Write the results to a baseline file, one "name=nanoseconds" per line.
+     *
+     * @param fileName The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public void save(String fileName) throws IOException
+    {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(fileName))) {
+            for (String name : results.keySet()) {
+                writer.println(name + "=" + results.get(name));
+            }
+        }
+    }
+
+    /**
+     * Compare the results with a baseline file.
+     *
+     * @param fileName The baseline file
+     * @param tolerance How many percent slower than the baseline a result may be
+     * @return true if no result is slower than allowed, false otherwise
+     * @throws IOException If the file cannot be read
+     */
+    public boolean check(String fileName, double tolerance) throws IOException
+    {
+        boolean passed = true;
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf('=');
+                if (separator < 0) {
+                    continue;
+                }
+                String name = line.substring(0, separator);
+                double baseline = Double.parseDouble(line.substring(separator + 1));
+                Double result = results.get(name);
+                if (result != null && result > baseline * (1 + tolerance / 100)) {
+                    System.out.println(String.format("REGRESSION %s: %.1f ns/op, baseline %.1f ns/op",
+                                                     name, result, baseline));
+                    passed = false;
+                }
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Run all benchmarks, then save or check the results as asked.
+     *
+     * @param args The command line arguments (see the class comment)
+     * @throws IOException If a baseline file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        Benchmark benchmark = new Benchmark();
+        benchmark.runAll();
+
+        if (args.length >= 2 && args[0].equals("-save")) {
+            benchmark.save(args[1]);
+        }
+        else if (args.length >= 2 && args[0].equals("-check")) {
+            double tolerance = args.length >= 3 ? Double.parseDouble(args[2]) : 20;
+            if (!benchmark.check(args[1], tolerance)) {
+                System.exit(1);
+            }
+        }
+    }
+}
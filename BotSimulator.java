@@ -0,0 +1,609 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+/**
+ * BotSimulator plays many games at once with simulated players (bots), to
+ * load and soak test a build in one program. Every bot plays its own Game
+ * on a virtual thread of its own, executing commands directly (nothing is
+ * rendered or printed): go, take, drop, eat, charge, fire, back and
+ * stackBack, chosen at random or by a simple explorer policy, at a given
+ * rate or as fast as it can.
+ *
+ * While the bots play, the simulator reports the commands per second,
+ * the latency percentiles of the commands, the heap in use and the
+ * garbage collection pauses (read from the platform MXBeans). When a rate
+ * is given, the latency of a command is counted from when it should have
+ * started, so a program that falls behind shows it in the percentiles
+ * instead of quietly running fewer commands.
+ *
+ * To find leaks, the heap is collected and measured after a warm-up and
+ * again at the end, while all games are still alive; what the games
+ * keep growing (a history of rooms, loaded rooms, items) shows as heap
+ * growth. With -max-growth, the program exits with status 1 if the heap
+ * grew by more than the given number of megabytes.
+ *
+ * To run bots:
+ *
+ *     java BotSimulator [-bots n] [-rate commands per second per bot] [-seconds n] [-report seconds]
+ *                       [-policy random|explorer] [-seed n] [-world file | -generate rooms] [-shared]
+ *                       [-max-growth mb]
+ *
+ * Without a world file, every bot plays on its own campus.
+ *
+ * @author Noor Karabala
+ */
+public class BotSimulator
+{
+    /**
+     * How the bots choose their commands.
+     */
+    public enum Policy
+    {
+        RANDOM,     // any command, in any direction, for any item
+        EXPLORER    // mostly walk through exits, take and eat cookies, use beamers
+    }
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // the commands the bots issue
+    private static final Command EAT = new Command("eat", null);
+    private static final Command DROP = new Command("drop", null);
+    private static final Command CHARGE = new Command("charge", null);
+    private static final Command FIRE = new Command("fire", null);
+    private static final Command BACK = new Command("back", null);
+    private static final Command STACK_BACK = new Command("stackBack", null);
+    private static final Command TAKE_COOKIE = new Command("take", "cookie");
+    private static final Command[] GO = new Command[DIRECTIONS.length];
+
+    static {
+        for (Direction direction : DIRECTIONS) {
+            GO[direction.ordinal()] = new Command("go", direction.toString());
+        }
+    }
+
+    private int botCount;
+    private Supplier<World> worlds;
+    private Policy policy = Policy.EXPLORER;
+    private double rate;
+    private long seed;
+
+    private Game[] games;
+    private Thread[] bots;
+    private volatile boolean running;
+
+    // the commands executed, their latencies (all, and since the last report), and failures
+    private LongAdder commands = new LongAdder();
+    private LatencyHistogram latency = new LatencyHistogram();
+    private LatencyHistogram recentLatency = new LatencyHistogram();
+    private LongAdder errors = new LongAdder();
+    private AtomicReference<RuntimeException> firstError = new AtomicReference<RuntimeException>();
+
+    // the garbage collection pauses (all, and since the last report), and the heap after the last one
+    private LatencyHistogram gcPauses = new LatencyHistogram();
+    private LatencyHistogram recentGcPauses = new LatencyHistogram();
+    private volatile long heapAfterGc = -1;
+    private Set<String> heapPools = new HashSet<String>();
+    private NotificationListener gcListener = this::gcFinished;
+
+    /**
+     * Create a simulator of bots using the explorer policy as fast as they can.
+     *
+     * @param botCount The number of bots
+     * @param worlds Gives every bot the world it plays in (a new one, or a shared one)
+     */
+    public BotSimulator(int botCount, Supplier<World> worlds)
+    {
+        this.botCount = botCount;
+        this.worlds = worlds;
+    }
+
+    /**
+     * @param policy How the bots choose their commands
+     */
+    public void setPolicy(Policy policy)
+    {
+        this.policy = policy;
+    }
+
+    /**
+     * @param rate The commands per second of every bot, or 0 for as fast as it can
+     */
+    public void setRate(double rate)
+    {
+        this.rate = rate;
+    }
+
+    /**
+     * @param seed The seed of the bots' choices and of their games' random sources
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Start the bots, each in a new game.
+     */
+    public void start()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool.getName());
+            }
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                ((NotificationEmitter) collector).addNotificationListener(gcListener, null, null);
+            }
+        }
+
+        games = new Game[botCount];
+        bots = new Thread[botCount];
+        running = true;
+        for (int i = 0; i < botCount; i++) {
+            Game game = new Game(OutputSink.discard(), worlds.get());
+            game.setSessionId(i + 1);
+            game.setRandomSource(new SeededRandom(seed + i));
+            games[i] = game;
+            SplittableRandom random = new SplittableRandom(seed * 31 + i);
+            bots[i] = Thread.ofVirtual().name("bot-" + i).start(() -> play(game, random));
+        }
+    }
+
+    /**
+     * Stop the bots and wait until they have stopped. The games are kept,
+     * so the memory they hold can still be measured.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void stop() throws InterruptedException
+    {
+        running = false;
+        for (Thread bot : bots) {
+            bot.join();
+        }
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) collector).removeNotificationListener(gcListener);
+                }
+                catch (ListenerNotFoundException e) {
+                    // the collector has no notifications
+                }
+            }
+        }
+    }
+
+    /**
+     * Play one game until the bots are stopped.
+     *
+     * @param game The bot's game
+     * @param random The source of the bot's choices
+     */
+    private void play(Game game, SplittableRandom random)
+    {
+        long interval = rate > 0 ? (long) (1e9 / rate) : 0;
+        // the bots start spread over one interval, so they do not all wake at once
+        long next = System.nanoTime() + (interval > 0 ? random.nextLong(interval) : 0);
+        while (running) {
+            if (interval > 0) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue; // parking may end early
+                }
+            }
+            Command command = policy == Policy.RANDOM ? randomCommand(game, random) : explorerCommand(game, random);
+            long start = System.nanoTime();
+            try {
+                game.execute(command);
+            }
+            catch (RuntimeException e) {
+                errors.increment();
+                firstError.compareAndSet(null, e);
+            }
+            long end = System.nanoTime();
+            long nanos = end - (interval > 0 ? next : start);
+            latency.record(nanos);
+            recentLatency.record(nanos);
+            commands.increment();
+            if (interval > 0) {
+                next += interval;
+            }
+            else {
+                Thread.yield(); // let the other bots on this carrier thread play
+            }
+        }
+    }
+
+    /**
+     * Choose any command the bots issue, at random.
+     *
+     * @param game The bot's game
+     * @param random The source of the choice
+     * @return The command
+     */
+    private static Command randomCommand(Game game, SplittableRandom random)
+    {
+        switch (random.nextInt(9)) {
+            case 0:
+                return takeAny(game, random);
+            case 1:
+                return TAKE_COOKIE;
+            case 2:
+                return DROP;
+            case 3:
+                return EAT;
+            case 4:
+                return CHARGE;
+            case 5:
+                return FIRE;
+            case 6:
+                return BACK;
+            case 7:
+                return STACK_BACK;
+            default:
+                return GO[random.nextInt(GO.length)];
+        }
+    }
+
+    /**
+     * Choose a command as a player exploring the world would: eat a
+     * cookie when carrying one, take cookies and some other items, drop
+     * items when carrying many, charge and fire a beamer now and then, go
+     * back sometimes, and otherwise leave through an exit of the room.
+     *
+     * @param game The bot's game
+     * @param random The source of the choice
+     * @return The command
+     */
+    private static Command explorerCommand(Game game, SplittableRandom random)
+    {
+        Inventory inventory = game.getInventory();
+        Room room = game.getCurrentRoom();
+        int roll = random.nextInt(100);
+        if (inventory.contains("cookie")) {
+            return EAT;
+        }
+        if (roll < 20 && room.getItem("cookie") != null) {
+            return TAKE_COOKIE;
+        }
+        if (roll < 30) {
+            return inventory.size() >= 5 ? DROP : takeAny(game, random);
+        }
+        if (roll < 36 && inventory.findLast(Beamer.class) != null) {
+            return roll < 33 ? CHARGE : FIRE;
+        }
+        if (roll < 40) {
+            return roll < 38 ? BACK : STACK_BACK;
+        }
+        // leave through an exit, if there is one
+        int first = random.nextInt(DIRECTIONS.length);
+        for (int i = 0; i < DIRECTIONS.length; i++) {
+            Direction direction = DIRECTIONS[(first + i) % DIRECTIONS.length];
+            if (room.getExitId(direction) >= 0) {
+                return GO[direction.ordinal()];
+            }
+        }
+        return BACK;
+    }
+
+    /**
+     * @param game The bot's game
+     * @param random The source of the choice
+     * @return A command taking a random item of the current room, or a cookie if there is none
+     */
+    private static Command takeAny(Game game, SplittableRandom random)
+    {
+        Item[] items = game.getCurrentRoom().getItemArray();
+        if (items.length == 0) {
+            return TAKE_COOKIE;
+        }
+        return new Command("take", items[random.nextInt(items.length)].getName());
+    }
+
+    /**
+     * Record a finished garbage collection: its pause, and the heap in
+     * use after it. ZGC's concurrent cycles are not pauses and are skipped.
+     *
+     * @param notification The notification of the collector's MXBean
+     * @param handback Not used
+     */
+    private void gcFinished(Notification notification, Object handback)
+    {
+        if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+            return;
+        }
+        GarbageCollectionNotificationInfo info =
+            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        if (info.getGcName().endsWith("Cycles")) {
+            return;
+        }
+        long pauseNanos = info.getGcInfo().getDuration() * 1_000_000;
+        gcPauses.record(pauseNanos);
+        recentGcPauses.record(pauseNanos);
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+            if (heapPools.contains(pool.getKey())) {
+                used += pool.getValue().getUsed();
+            }
+        }
+        heapAfterGc = used;
+    }
+
+    /**
+     * Collect the garbage and measure the heap the live objects use.
+     *
+     * @return The heap in use, in bytes
+     */
+    public long retainedHeap()
+    {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * @return The number of commands executed by all bots
+     */
+    public long getCommandCount()
+    {
+        return commands.sum();
+    }
+
+    /**
+     * @return The latencies of all commands executed
+     */
+    public LatencyHistogram getLatency()
+    {
+        return latency;
+    }
+
+    /**
+     * @return The pauses of all garbage collections since the bots started
+     */
+    public LatencyHistogram getGcPauses()
+    {
+        return gcPauses;
+    }
+
+    /**
+     * @return The number of commands that threw an exception
+     */
+    public long getErrorCount()
+    {
+        return errors.sum();
+    }
+
+    /**
+     * @return The exception thrown by the first failed command, or null
+     */
+    public RuntimeException getFirstError()
+    {
+        return firstError.get();
+    }
+
+    /**
+     * @return The number of rooms loaded in all the bots' worlds (a shared world counted once)
+     */
+    public long getLoadedRoomCount()
+    {
+        Set<World> counted = new HashSet<World>();
+        long rooms = 0;
+        for (Game game : games) {
+            World world = game.getCurrentRoom().getWorld();
+            if (counted.add(world)) {
+                rooms += world.getLoadedRoomCount();
+            }
+        }
+        return rooms;
+    }
+
+    /**
+     * Returns one line of the report: the commands and garbage collections
+     * since the last line, and the heap now.
+     *
+     * @param seconds The seconds since the bots started
+     * @param intervalSeconds The seconds since the last line
+     * @param intervalCommands The commands executed since the last line
+     * @return The line
+     */
+    private String reportLine(long seconds, double intervalSeconds, long intervalCommands)
+    {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long pauses = recentGcPauses.getCount();
+        String line = String.format("%6ds %9.0f cmd/s  p50 %7.1f  p99 %8.1f  p99.9 %8.1f  max %9.1f us"
+                                    + "  heap %5d MB (after gc %5d MB)  gc %3d pauses, max %5.1f ms, %4.1f%%"
+                                    + "  rooms %d  errors %d",
+                                    seconds, intervalCommands / intervalSeconds,
+                                    recentLatency.getPercentileNanos(50) / 1e3,
+                                    recentLatency.getPercentileNanos(99) / 1e3,
+                                    recentLatency.getPercentileNanos(99.9) / 1e3,
+                                    recentLatency.getMaxNanos() / 1e3,
+                                    heap.getUsed() >> 20, Math.max(0, heapAfterGc) >> 20,
+                                    pauses, recentGcPauses.getMaxNanos() / 1e6,
+                                    recentGcPauses.getTotalNanos() / (intervalSeconds * 1e7),
+                                    getLoadedRoomCount(), getErrorCount());
+        recentLatency.reset();
+        recentGcPauses.reset();
+        return line;
+    }
+
+    /**
+     * Start the bots, let them play for a while, reporting regularly, and
+     * stop them. The heap is measured after the first report (the warm-up)
+     * and at the end.
+     *
+     * @param seconds How long the bots play
+     * @param reportSeconds How often a line is reported
+     * @param out The stream the report is printed to
+     * @return The growth of the heap in use between the warm-up and the end, in bytes
+     * @throws InterruptedException If interrupted while the bots play
+     */
+    public long run(long seconds, long reportSeconds, PrintStream out) throws InterruptedException
+    {
+        start();
+        long startNanos = System.nanoTime();
+        long lastNanos = startNanos;
+        long lastCommands = 0;
+        long baseline = -1;
+        long elapsed = 0;
+        while (elapsed < seconds) {
+            elapsed = Math.min(seconds, elapsed + Math.max(1, reportSeconds));
+            Thread.sleep(Math.max(0, (startNanos + elapsed * 1_000_000_000L - System.nanoTime()) / 1_000_000));
+            long now = System.nanoTime();
+            long count = getCommandCount();
+            out.println(reportLine(elapsed, (now - lastNanos) / 1e9, count - lastCommands));
+            lastNanos = now;
+            lastCommands = count;
+            if (baseline < 0) {
+                baseline = retainedHeap();
+                lastNanos = System.nanoTime(); // the collection is not counted against the next line
+            }
+        }
+        stop();
+        long retained = retainedHeap();
+        if (baseline < 0) {
+            baseline = retained;
+        }
+
+        double totalSeconds = (System.nanoTime() - startNanos) / 1e9;
+        out.println();
+        out.printf("%d bots, %d commands in %.0f s, %.0f per second%n", botCount, getCommandCount(),
+                   totalSeconds, getCommandCount() / totalSeconds);
+        out.printf("latency us: mean %.1f, p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                   latency.getMeanNanos() / 1e3, latency.getPercentileNanos(50) / 1e3,
+                   latency.getPercentileNanos(99) / 1e3, latency.getPercentileNanos(99.9) / 1e3,
+                   latency.getMaxNanos() / 1e3);
+        out.printf("gc: %d pauses, %.1f ms in total, p99 %.1f ms, max %.1f ms%n", gcPauses.getCount(),
+                   gcPauses.getTotalNanos() / 1e6, gcPauses.getPercentileNanos(99) / 1e6,
+                   gcPauses.getMaxNanos() / 1e6);
+        out.printf("heap retained: %.1f MB after warm-up, %.1f MB at the end (%+.1f MB, %.0f bytes per game)%n",
+                   baseline / 1048576.0, retained / 1048576.0, (retained - baseline) / 1048576.0,
+                   (retained - baseline) / (double) botCount);
+        if (getFirstError() != null) {
+            out.println(getErrorCount() + " commands failed, the first with:");
+            getFirstError().printStackTrace(out);
+        }
+        out.println();
+        out.println(CommandMetrics.get().getReport());
+        return retained - baseline;
+    }
+
+    /**
+     * Run bots as told by the command line arguments.
+     *
+     * @param args The command line arguments (see the class comment)
+     * @throws IOException If the world file cannot be opened or generated
+     * @throws InterruptedException If interrupted while the bots play
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int botCount = 1000;
+        double rate = 10;
+        long seconds = 60;
+        long reportSeconds = 10;
+        Policy policy = Policy.EXPLORER;
+        long seed = 1;
+        String worldName = null;
+        int generatedRooms = 0;
+        boolean shared = false;
+        double maxGrowth = -1;
+        for (int i = 0; i < args.length; i++) {
+            boolean hasValue = i + 1 < args.length;
+            if (args[i].equals("-bots") && hasValue) {
+                botCount = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-rate") && hasValue) {
+                rate = Double.parseDouble(args[++i]);
+            }
+            else if (args[i].equals("-seconds") && hasValue) {
+                seconds = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-report") && hasValue) {
+                reportSeconds = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-policy") && hasValue) {
+                policy = Policy.valueOf(args[++i].toUpperCase());
+            }
+            else if (args[i].equals("-seed") && hasValue) {
+                seed = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-world") && hasValue) {
+                worldName = args[++i];
+            }
+            else if (args[i].equals("-generate") && hasValue) {
+                generatedRooms = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-shared")) {
+                shared = true;
+            }
+            else if (args[i].equals("-max-growth") && hasValue) {
+                maxGrowth = Double.parseDouble(args[++i]);
+            }
+            else {
+                System.out.println("usage: java BotSimulator [-bots n] [-rate per second] [-seconds n] [-report seconds]"
+                                   + " [-policy random|explorer] [-seed n] [-world file | -generate rooms] [-shared]"
+                                   + " [-max-growth mb]");
+                return;
+            }
+        }
+
+        WorldFile worldFile = null;
+        if (generatedRooms > 0) {
+            Path generated = Files.createTempFile("bots", ".zwf");
+            WorldGenerator generator = new WorldGenerator(generatedRooms, seed);
+            generator.setTopology(WorldGenerator.Topology.SMALL_WORLD);
+            generator.setBeamerCount(Math.max(1, generatedRooms / 100));
+            generator.write(generated);
+            worldFile = WorldFile.open(generated);
+            Files.delete(generated); // the mapping stays valid
+        }
+        else if (worldName != null) {
+            worldFile = WorldFile.open(Paths.get(worldName));
+        }
+
+        Supplier<World> worlds;
+        if (worldFile == null) {
+            World campus = shared ? World.shared(Game.createRooms()) : null;
+            worlds = shared ? () -> campus : Game::createRooms;
+        }
+        else {
+            WorldFile file = worldFile;
+            World world = shared ? World.shared(file) : null;
+            worlds = shared ? () -> world : () -> new World(file);
+        }
+
+        BotSimulator simulator = new BotSimulator(botCount, worlds);
+        simulator.setPolicy(policy);
+        simulator.setRate(rate);
+        simulator.setSeed(seed);
+        long growth = simulator.run(seconds, reportSeconds, System.out);
+        if (simulator.getErrorCount() > 0 || (maxGrowth >= 0 && growth > maxGrowth * 1048576)) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * A BufferPool hands out direct byte buffers of one size and takes them
+ * back when they are no longer needed, so network output does not
+ * allocate (and later free) native memory for every response.
+ *
+ * At most maxPooled free buffers are kept; buffers given back beyond
+ * that are left to the garbage collector. A buffer is only taken from the
+ * pool while it is in use, so a connection that is not sending anything
+ * holds no buffer at all.
+ *
+ * @author Noor Karabala
+ */
+public class BufferPool
+{
+    private int bufferSize;
+    private int maxPooled;
+    private ArrayDeque<ByteBuffer> free;
+
+    // the number of buffers ever allocated, for monitoring
+    private long allocated;
+
+    /**
+     * Create an empty pool.
+     *
+     * @param bufferSize The capacity of every buffer, in bytes
+     * @param maxPooled The number of free buffers kept at most
+     */
+    public BufferPool(int bufferSize, int maxPooled)
+    {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        free = new ArrayDeque<ByteBuffer>();
+    }
+
+    /**
+     * Take a buffer from the pool, allocating one if the pool is empty.
+     *
+     * @return A cleared buffer
+     */
+    public synchronized ByteBuffer take()
+    {
+        ByteBuffer buffer = free.pollFirst();
+        if (buffer == null) {
+            allocated++;
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Give a buffer back to the pool. It must not be used afterwards.
+     *
+     * @param buffer A buffer taken from this pool
+     */
+    public synchronized void give(ByteBuffer buffer)
+    {
+        if (free.size() < maxPooled) {
+            buffer.clear();
+            free.addFirst(buffer); // the most recently used buffer is taken first
+        }
+    }
+
+    /**
+     * @return The capacity of every buffer, in bytes
+     */
+    public int getBufferSize()
+    {
+        return bufferSize;
+    }
+
+    /**
+     * @return The number of buffers allocated since the pool was created
+     */
+    public synchronized long getAllocated()
+    {
+        return allocated;
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * A CommandHandler executes one kind of command, for example "go" or "take".
+ * Handlers are registered with a game for a command word, and the game
+ * hands every command with that word to its handler.
+ *
+ * @author Noor Karabala
+ */
+public interface CommandHandler
+{
+    /**
+     * Execute a command.
+     *
+     * @param command The command to be executed
+     * @return The result of the command
+     */
+    CommandResult handle(Command command);
+}
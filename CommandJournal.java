@@ -0,0 +1,432 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A CommandJournal is a write-ahead log of the commands of many game
+ * sessions. Every command that can change a game is appended before it
+ * is executed. After a crash, a session is rebuilt by loading its last
+ * saved snapshot (if any) and executing the journaled commands that came
+ * after it again (see recover()). Since the random choices of a game are
+ * made with its SeededRandom, whose state is journaled when the session
+ * starts and saved in snapshots, the replay ends in exactly the same state.
+ *
+ * Loading a saved game is journaled with the contents of the save, not
+ * its name: the file may have been saved over, or removed, by the time
+ * the session is recovered.
+ *
+ * Appending only copies the command into a memory buffer. The buffer is
+ * written and forced to disk by a background thread at a fixed interval
+ * (group commit), so one disk sync covers all commands of all sessions
+ * in that interval. Commands appended in the last interval before a
+ * crash may be lost.
+ *
+ * A journal that already exists is appended to. When it is opened, an
+ * entry only partly written before a crash is cut off, and the highest
+ * session id in it is found, so a server started again can give its new
+ * sessions ids that were never used (see getLastSessionId()).
+ *
+ * Every entry is an int length followed by the entry:
+ *
+ *     START:   byte START, long session id, long sequence, long random state
+ *     COMMAND: byte COMMAND, long session id, long sequence,
+ *              byte CommandWord ordinal, unsigned short length + UTF-8 bytes of the second word
+ *              (0xFFFF if none)
+ *     SNAPSHOT: byte SNAPSHOT, long session id, long sequence, the bytes of a saved game
+ *
+ * @author Noor Karabala
+ */
+public final class CommandJournal implements AutoCloseable
+{
+    // kinds of entries
+    private static final byte START = 1;
+    private static final byte COMMAND = 2;
+    private static final byte SNAPSHOT = 3;
+
+    // the size of each of the two buffers
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // the length written for a command without a second word, and the longest second word
+    private static final int NO_WORD = 0xFFFF;
+    private static final int MAX_WORD_LENGTH = NO_WORD - 1;
+
+    /**
+     * The largest saved game that can be journaled, in bytes.
+     */
+    public static final int MAX_SNAPSHOT_SIZE = 64 << 20;
+
+    // the longest entry: a snapshot of the largest size
+    private static final int MAX_ENTRY_SIZE = 1 + 8 + 8 + MAX_SNAPSHOT_SIZE;
+
+    private static final CommandWord[] COMMAND_WORDS = CommandWord.values();
+
+    /**
+     * Receives the entries of a journal when it is read.
+     */
+    public interface Listener
+    {
+        /**
+         * A session started (or was attached to the journal).
+         *
+         * @param sessionId The id of the session
+         * @param sequence The number of commands the session had executed
+         * @param randomState The state of the session's random number generator
+         */
+        void sessionStarted(long sessionId, long sequence, long randomState);
+
+        /**
+         * A session executed a command.
+         *
+         * @param sessionId The id of the session
+         * @param sequence The number of the command in its session, starting at 1
+         * @param command The command
+         */
+        void commandExecuted(long sessionId, long sequence, Command command);
+
+        /**
+         * A session loaded a saved game.
+         *
+         * @param sessionId The id of the session
+         * @param sequence The number of the load in its session, starting at 1
+         * @param snapshot The saved game, as written by Game.save()
+         */
+        void snapshotLoaded(long sessionId, long sequence, byte[] snapshot);
+    }
+
+    private FileChannel channel;
+
+    // entries are appended to "active"; "writing" is written to the file
+    private ByteBuffer active;
+    private ByteBuffer writing;
+
+    // "appendLock" guards "active"; "flushLock" is held while the buffers are
+    // swapped and written, so they are written in the order they were filled
+    private final Object appendLock = new Object();
+    private final Object flushLock = new Object();
+
+    private ScheduledExecutorService flusher;
+
+    // the highest session id in the file when it was opened, or 0
+    private long lastSessionId;
+
+    /**
+     * Open a journal, appending to the file if it exists.
+     *
+     * @param file The journal file
+     * @param flushIntervalMillis How often appended entries are written and forced to disk
+     * @throws IOException If the file cannot be opened, or holds an unknown entry
+     */
+    public CommandJournal(Path file, long flushIntervalMillis) throws IOException
+    {
+        long end = 0;
+        if (Files.exists(file)) {
+            end = read(file, new Listener() {
+                public void sessionStarted(long sessionId, long sequence, long randomState)
+                {
+                    lastSessionId = Math.max(lastSessionId, sessionId);
+                }
+
+                public void commandExecuted(long sessionId, long sequence, Command command)
+                {
+                    lastSessionId = Math.max(lastSessionId, sessionId);
+                }
+
+                public void snapshotLoaded(long sessionId, long sequence, byte[] snapshot)
+                {
+                    lastSessionId = Math.max(lastSessionId, sessionId);
+                }
+            });
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        // new entries follow the last complete one
+        channel.truncate(end);
+        channel.position(end);
+        active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        writing = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis,
+                                       TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the highest session id in the journal when it was opened.
+     * A server appending to the journal again must give its sessions
+     * higher ids, or recovering a session would replay the commands of
+     * two sessions as one.
+     *
+     * @return The highest session id, or 0 if the journal was empty
+     */
+    public long getLastSessionId()
+    {
+        return lastSessionId;
+    }
+
+    /**
+     * Append the start of a session.
+     *
+     * @param sessionId The id of the session
+     * @param sequence The number of commands the session has executed
+     * @param randomState The state of the session's random number generator
+     * @throws IOException If the buffer had to be written and that failed
+     */
+    public void appendStart(long sessionId, long sequence, long randomState) throws IOException
+    {
+        int length = 1 + 8 + 8 + 8;
+        while (true) {
+            synchronized (appendLock) {
+                if (active.remaining() >= 4 + length) {
+                    active.putInt(length).put(START).putLong(sessionId).putLong(sequence)
+                        .putLong(randomState);
+                    return;
+                }
+            }
+            flush(); // the buffer is full; write it now rather than wait for the flusher
+        }
+    }
+
+    /**
+     * Append a command.
+     *
+     * @param sessionId The id of the session
+     * @param sequence The number of the command in its session
+     * @param commandWord The command word
+     * @param secondWord The second word of the command, or null
+     * @throws IOException If the buffer had to be written and that failed
+     */
+    public void appendCommand(long sessionId, long sequence, CommandWord commandWord, String secondWord)
+        throws IOException
+    {
+        byte[] second = secondWord == null ? null : secondWord.getBytes(StandardCharsets.UTF_8);
+        if (second != null && second.length > MAX_WORD_LENGTH) {
+            second = null; // such a word cannot be an exit or an item; it does the same as none
+        }
+        int length = 1 + 8 + 8 + 1 + 2 + (second == null ? 0 : second.length);
+        while (true) {
+            synchronized (appendLock) {
+                if (active.remaining() >= 4 + length) {
+                    active.putInt(length).put(COMMAND).putLong(sessionId).putLong(sequence)
+                        .put((byte) commandWord.ordinal());
+                    if (second == null) {
+                        active.putShort((short) NO_WORD);
+                    }
+                    else {
+                        active.putShort((short) second.length).put(second);
+                    }
+                    return;
+                }
+            }
+            flush(); // the buffer is full; write it now rather than wait for the flusher
+        }
+    }
+
+    /**
+     * Append the loading of a saved game. A snapshot too large for the
+     * buffer is written to the file at once, after the entries before it.
+     *
+     * @param sessionId The id of the session
+     * @param sequence The number of the load in its session
+     * @param snapshot The saved game, as written by Game.save()
+     * @throws IOException If the snapshot is too large, or the buffer had to be written and that failed
+     */
+    public void appendSnapshot(long sessionId, long sequence, byte[] snapshot) throws IOException
+    {
+        if (snapshot.length > MAX_SNAPSHOT_SIZE) {
+            throw new IOException("saved game too large for the journal");
+        }
+        int length = 1 + 8 + 8 + snapshot.length;
+        if (4 + length > BUFFER_SIZE) {
+            synchronized (flushLock) {
+                flush(); // flushLock is reentrant, so nothing appended later is written first
+                ByteBuffer header = ByteBuffer.allocate(4 + 1 + 8 + 8);
+                header.putInt(length).put(SNAPSHOT).putLong(sessionId).putLong(sequence).flip();
+                ByteBuffer contents = ByteBuffer.wrap(snapshot);
+                while (header.hasRemaining() || contents.hasRemaining()) {
+                    channel.write(new ByteBuffer[] { header, contents });
+                }
+                channel.force(false);
+            }
+            return;
+        }
+        while (true) {
+            synchronized (appendLock) {
+                if (active.remaining() >= 4 + length) {
+                    active.putInt(length).put(SNAPSHOT).putLong(sessionId).putLong(sequence).put(snapshot);
+                    return;
+                }
+            }
+            flush(); // the buffer is full; write it now rather than wait for the flusher
+        }
+    }
+
+    /**
+     * Write all appended entries to the file and force them to disk.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void flush() throws IOException
+    {
+        synchronized (flushLock) {
+            synchronized (appendLock) {
+                ByteBuffer filled = active;
+                active = writing;
+                writing = filled;
+            }
+            writing.flip();
+            if (!writing.hasRemaining()) {
+                writing.clear();
+                return;
+            }
+            while (writing.hasRemaining()) {
+                channel.write(writing);
+            }
+            writing.clear();
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Flush, for the background thread, which has nobody to report failures to.
+     */
+    private void flushQuietly()
+    {
+        try {
+            flush();
+        }
+        catch (IOException e) {
+            System.err.println("journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stop the background thread, write all appended entries and close the file.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    public void close() throws IOException
+    {
+        flusher.shutdown();
+        try {
+            flush();
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read all entries of a journal. Reading stops at the end of the file,
+     * or at an entry that was only partly written when the program stopped.
+     *
+     * @param file The journal file
+     * @param listener The listener receiving the entries
+     * @return The size of the complete entries read, in bytes
+     * @throws IOException If the file cannot be read or holds an unknown entry
+     */
+    public static long read(Path file, Listener listener) throws IOException
+    {
+        long end = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] entry;
+                try {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_ENTRY_SIZE) {
+                        return end; // not a complete entry
+                    }
+                    entry = new byte[length];
+                    in.readFully(entry);
+                }
+                catch (EOFException e) {
+                    return end;
+                }
+                readEntry(ByteBuffer.wrap(entry), listener);
+                end += 4 + entry.length;
+            }
+        }
+    }
+
+    /**
+     * Pass one entry to a listener.
+     *
+     * @param entry The entry
+     * @param listener The listener receiving the entry
+     * @throws IOException If the entry is unknown
+     */
+    private static void readEntry(ByteBuffer entry, Listener listener) throws IOException
+    {
+        byte kind = entry.get();
+        long sessionId = entry.getLong();
+        long sequence = entry.getLong();
+        if (kind == START) {
+            listener.sessionStarted(sessionId, sequence, entry.getLong());
+        }
+        else if (kind == COMMAND) {
+            CommandWord commandWord = COMMAND_WORDS[entry.get()];
+            int length = entry.getShort() & 0xFFFF;
+            String secondWord = null;
+            if (length != NO_WORD) {
+                secondWord = new String(entry.array(), entry.position(), length, StandardCharsets.UTF_8);
+            }
+            listener.commandExecuted(sessionId, sequence, new Command(commandWord.toString(), secondWord));
+        }
+        else if (kind == SNAPSHOT) {
+            byte[] snapshot = new byte[entry.remaining()];
+            entry.get(snapshot);
+            listener.snapshotLoaded(sessionId, sequence, snapshot);
+        }
+        else {
+            throw new IOException("unknown journal entry " + kind);
+        }
+    }
+
+    /**
+     * Rebuild a session from a journal. The game must be new, or restored
+     * from the session's last snapshot; every command of the session that
+     * came after it is executed again.
+     *
+     * @param file The journal file
+     * @param sessionId The id of the session to rebuild
+     * @param game The game to replay the session in
+     * @throws IOException If the journal cannot be read
+     */
+    public static void recover(Path file, long sessionId, Game game) throws IOException
+    {
+        boolean restoredFromSnapshot = game.getCommandSequence() > 0;
+        read(file, new Listener() {
+            public void sessionStarted(long id, long sequence, long randomState)
+            {
+                if (id == sessionId && !restoredFromSnapshot && sequence == game.getCommandSequence()) {
+                    game.setRandomSource(new SeededRandom(randomState));
+                }
+            }
+
+            public void commandExecuted(long id, long sequence, Command command)
+            {
+                if (id == sessionId && sequence > game.getCommandSequence()) {
+                    game.execute(command);
+                }
+            }
+
+            public void snapshotLoaded(long id, long sequence, byte[] snapshot)
+            {
+                if (id == sessionId && sequence > game.getCommandSequence()) {
+                    game.replayLoad(sequence, snapshot);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,205 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * CommandMetrics counts the commands executed by all games in this
+ * program and how long they took, per command word, plus two operations
+ * inside the commands: describing a room and leaving a transporter room.
+ * Every one of them has a LatencyHistogram, so recording costs two clock
+ * reads and a few uncontended adds, and nothing is allocated; the metrics
+ * are always on.
+ *
+ * The metrics can be read with the "stats" command, and in JMX tools
+ * (e.g. jconsole) under zuul:type=CommandMetrics, where they can also be
+ * reset.
+ *
+ * @author Noor Karabala
+ */
+public class CommandMetrics implements CommandMetricsMBean
+{
+    // the name the metrics are registered under in JMX
+    public static final String OBJECT_NAME = "zuul:type=CommandMetrics";
+
+    // the names of the timed operations
+    public static final String ROOM_DESCRIPTION = "Room.getLongDescription";
+    public static final String TRANSPORTER_EXIT = "TransporterRoom.getExit";
+
+    private static final CommandWord[] COMMAND_WORDS = CommandWord.values();
+
+    private static final CommandMetrics METRICS = new CommandMetrics();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(METRICS, new ObjectName(OBJECT_NAME));
+        }
+        catch (JMException | SecurityException e) {
+            // the metrics still work, only not in JMX
+        }
+    }
+
+    // the latency of every command word, by ordinal
+    private LatencyHistogram[] commands;
+    private LatencyHistogram roomDescriptions;
+    private LatencyHistogram transporterExits;
+
+    // when the metrics were created or last reset
+    private volatile long startNanos;
+
+    /**
+     * Create empty metrics.
+     */
+    private CommandMetrics()
+    {
+        commands = new LatencyHistogram[COMMAND_WORDS.length];
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new LatencyHistogram();
+        }
+        roomDescriptions = new LatencyHistogram();
+        transporterExits = new LatencyHistogram();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @return The metrics of this program
+     */
+    public static CommandMetrics get()
+    {
+        return METRICS;
+    }
+
+    /**
+     * Record an executed command.
+     *
+     * @param commandWord The command word of the command (UNKNOWN if it was not recognised)
+     * @param nanos How long the command took
+     */
+    public void recordCommand(CommandWord commandWord, long nanos)
+    {
+        commands[commandWord.ordinal()].record(nanos);
+    }
+
+    /**
+     * Record describing a room.
+     *
+     * @param nanos How long it took
+     */
+    public void recordRoomDescription(long nanos)
+    {
+        roomDescriptions.record(nanos);
+    }
+
+    /**
+     * Record leaving a transporter room.
+     *
+     * @param nanos How long it took
+     */
+    public void recordTransporterExit(long nanos)
+    {
+        transporterExits.record(nanos);
+    }
+
+    /**
+     * @param commandWord A command word
+     * @return The latencies of the commands with that word
+     */
+    public LatencyHistogram getCommandLatency(CommandWord commandWord)
+    {
+        return commands[commandWord.ordinal()];
+    }
+
+    /**
+     * @param name A command word (e.g. "go") or the name of a timed operation
+     * @return Its latencies, or null if there is no such name
+     */
+    public LatencyHistogram getLatency(String name)
+    {
+        if (name.equals(ROOM_DESCRIPTION)) {
+            return roomDescriptions;
+        }
+        if (name.equals(TRANSPORTER_EXIT)) {
+            return transporterExits;
+        }
+        for (CommandWord commandWord : COMMAND_WORDS) {
+            if (name(commandWord).equals(name)) {
+                return commands[commandWord.ordinal()];
+            }
+        }
+        return null;
+    }
+
+    public long getCommandCount()
+    {
+        long count = 0;
+        for (LatencyHistogram histogram : commands) {
+            count += histogram.getCount();
+        }
+        return count;
+    }
+
+    public double getCommandsPerSecond()
+    {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds <= 0 ? 0 : getCommandCount() / seconds;
+    }
+
+    public String getReport()
+    {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%d commands, %.0f per second%n", getCommandCount(), getCommandsPerSecond()));
+        report.append(String.format("%-24s %10s %9s %9s %9s %9s %9s%n",
+                                    "", "count", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (CommandWord commandWord : COMMAND_WORDS) {
+            appendLine(report, name(commandWord), commands[commandWord.ordinal()]);
+        }
+        appendLine(report, ROOM_DESCRIPTION, roomDescriptions);
+        appendLine(report, TRANSPORTER_EXIT, transporterExits);
+        return report.toString().stripTrailing();
+    }
+
+    public double percentileMicros(String name, double percentile)
+    {
+        LatencyHistogram histogram = getLatency(name);
+        return histogram == null ? -1 : histogram.getPercentileNanos(percentile) / 1e3;
+    }
+
+    public void reset()
+    {
+        for (LatencyHistogram histogram : commands) {
+            histogram.reset();
+        }
+        roomDescriptions.reset();
+        transporterExits.reset();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * @param commandWord A command word
+     * @return Its name in reports: the word, or "unknown" for unrecognised commands
+     */
+    private static String name(CommandWord commandWord)
+    {
+        return commandWord == CommandWord.UNKNOWN ? "unknown" : commandWord.toString();
+    }
+
+    /**
+     * Add the line of one histogram to a report, unless it has no samples.
+     *
+     * @param report The report
+     * @param name The name of the command or operation
+     * @param histogram Its latencies
+     */
+    private static void appendLine(StringBuilder report, String name, LatencyHistogram histogram)
+    {
+        long count = histogram.getCount();
+        if (count == 0) {
+            return;
+        }
+        report.append(String.format("%-24s %10d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, count,
+                                    histogram.getMeanNanos() / 1e3,
+                                    histogram.getPercentileNanos(50) / 1e3,
+                                    histogram.getPercentileNanos(99) / 1e3,
+                                    histogram.getPercentileNanos(99.9) / 1e3,
+                                    histogram.getMaxNanos() / 1e3));
+    }
+}
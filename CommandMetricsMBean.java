@@ -0,0 +1,37 @@
+/**
+ * The management interface of CommandMetrics, as shown in JMX tools
+ * (e.g. jconsole) under zuul:type=CommandMetrics.
+ *
+ * @author Noor Karabala
+ */
+public interface CommandMetricsMBean
+{
+    /**
+     * @return The number of commands executed since the metrics were reset
+     */
+    long getCommandCount();
+
+    /**
+     * @return The number of commands executed per second since the metrics were reset
+     */
+    double getCommandsPerSecond();
+
+    /**
+     * @return A table of the counts and latencies of every command and timed operation
+     */
+    String getReport();
+
+    /**
+     * Returns a latency percentile of a command or timed operation.
+     *
+     * @param name A command word (e.g. "go") or the name of a timed operation
+     * @param percentile The share of the samples, from 0 to 100
+     * @return The latency in microseconds, or -1 if there is no such name
+     */
+    double percentileMicros(String name, double percentile);
+
+    /**
+     * Forget all counts and latencies.
+     */
+    void reset();
+}
@@ -0,0 +1,171 @@
+/**
+ * A CommandResult describes what happened when a command was executed:
+ * a status saying how the command ended, the room the player is in
+ * afterwards and the item the command was about (if any).
+ *
+ * Results do not contain any text. They are turned into the messages the
+ * player sees by a ResultRenderer, so programs driving the game do not
+ * have to print or read any text at all.
+ *
+ * @author Noor Karabala
+ */
+public class CommandResult
+{
+    /**
+     * The possible outcomes of a command.
+     */
+    public enum Status
+    {
+        UNKNOWN_COMMAND,        // the command word was not recognised
+        MISSING_SECOND_WORD,    // e.g. "go" without a direction
+        UNEXPECTED_SECOND_WORD, // e.g. "quit now"
+        HELP,                   // the detail holds the command words, or null for all of them
+        QUIT,
+        MOVED,                  // the player entered a new room
+        LOOKED,
+        NO_DOOR,
+        NO_PREVIOUS_ROOM,
+        NO_STACKED_ROOM,
+        TOOK,
+        NO_COOKIE,
+        NOT_EATEN,
+        HUNGRY,
+        ITEM_NOT_FOUND,
+        DROPPED,
+        NOT_HOLDING,
+        NOTHING_TO_EAT,
+        ATE,
+        NOT_EDIBLE,
+        CHARGED,
+        ALREADY_CHARGED,
+        NOT_A_BEAMER,
+        FIRED,
+        NOT_CHARGED,
+        SAVED,
+        SAVE_FAILED,
+        LOADED,
+        LOAD_FAILED,
+        ROUTE,                  // the detail holds the directions to go in
+        NO_ROUTE,
+        NO_SUCH_ROOM,
+        WHICH_ROOM,             // the detail holds the name several rooms have
+        STATS,                  // the detail holds the metrics report
+        INVENTORY,              // the detail holds the weight carried, e.g. "7.5 of 25.0 kg"
+        TOO_HEAVY,              // the detail holds the weight carried
+        TOOK_ALL,               // the detail holds the names of the items taken
+        NOTHING_TO_TAKE,
+        DROPPED_ALL,            // the detail holds the names of the items dropped
+        NOT_CARRYING;           // the detail holds the name of the item
+
+        /**
+         * @return true if results with this status show the items the player carries
+         */
+        public boolean showsHeldItems()
+        {
+            return this == MOVED || this == LOOKED || this == NO_PREVIOUS_ROOM || this == NO_STACKED_ROOM
+                || this == LOADED || this == INVENTORY;
+        }
+    }
+
+    private Status status;
+    private String commandWord;
+    private Room room;
+    private Item item;
+    private Item[] heldItems;
+    private String detail;
+
+    /**
+     * Create a result.
+     *
+     * @param status How the command ended
+     * @param commandWord The command word of the executed command
+     * @param room The room the player is in after the command
+     * @param item The item the command was about, or null
+     * @param heldItems The items the player carries after the command, in the order they were taken,
+     *                  or null if the status does not show them
+     */
+    public CommandResult(Status status, String commandWord, Room room, Item item, Item[] heldItems)
+    {
+        this.status = status;
+        this.commandWord = commandWord;
+        this.room = room;
+        this.item = item;
+        this.heldItems = heldItems;
+    }
+
+    /**
+     * Create a result with a detail, e.g. the name of a saved game
+     * or the reason a command failed.
+     *
+     * @param status How the command ended
+     * @param commandWord The command word of the executed command
+     * @param room The room the player is in after the command
+     * @param item The item the command was about, or null
+     * @param heldItems The items the player carries after the command, in the order they were taken,
+     *                  or null if the status does not show them
+     * @param detail The detail of the result
+     */
+    public CommandResult(Status status, String commandWord, Room room, Item item, Item[] heldItems,
+                         String detail)
+    {
+        this(status, commandWord, room, item, heldItems);
+        this.detail = detail;
+    }
+
+    /**
+     * @return How the command ended
+     */
+    public Status getStatus()
+    {
+        return status;
+    }
+
+    /**
+     * @return The command word of the executed command, or null if unknown
+     */
+    public String getCommandWord()
+    {
+        return commandWord;
+    }
+
+    /**
+     * @return The room the player is in after the command
+     */
+    public Room getRoom()
+    {
+        return room;
+    }
+
+    /**
+     * @return The item the command was about (taken, dropped, eaten, ...), or null
+     */
+    public Item getItem()
+    {
+        return item;
+    }
+
+    /**
+     * @return The items the player carries after the command, in the order they were taken,
+     *         or null if the status does not show them (see Status.showsHeldItems())
+     */
+    public Item[] getHeldItems()
+    {
+        return heldItems;
+    }
+
+    /**
+     * @return The detail of the result, or null
+     */
+    public String getDetail()
+    {
+        return detail;
+    }
+
+    /**
+     * @return true if the command ends the game, false otherwise
+     */
+    public boolean isQuit()
+    {
+        return status == Status.QUIT;
+    }
+}
@@ -0,0 +1,347 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A CommandTokenizer turns a line of input into a Command, the same way
+ * Game.processInput always has (the first two words of the line; a first
+ * word that is not a command word gives an unknown command), but without
+ * creating any objects for the words it knows.
+ *
+ * The words are matched in a trie, straight from the bytes of the line (or
+ * its chars), so no substrings are made. The trie knows the command words
+ * and the directions from the start; every other second word (e.g. an item
+ * name) is added the first time it is seen, up to MAX_LEARNED_WORDS words
+ * of at most MAX_LEARNED_WORD_LENGTH characters. Longer words cannot be
+ * names of anything in a world, so they are never kept: a player typing
+ * long, distinct words cannot make the trie of their session grow.
+ * Commands are immutable, so one Command is made for every pair of words
+ * and handed out again whenever the pair is typed. After the first few
+ * commands, tokenizing a line therefore creates no garbage at all.
+ *
+ * Every session has its own tokenizer; a tokenizer is not thread-safe.
+ *
+ * @author Noor Karabala
+ */
+public class CommandTokenizer
+{
+    // the number of second words learned, beyond the command words and directions
+    public static final int MAX_LEARNED_WORDS = 1024;
+
+    // the longest second word learned; longer ones are tokenized without being kept
+    public static final int MAX_LEARNED_WORD_LENGTH = 32;
+
+    // the trie has no node here
+    private static final int NONE = -1;
+
+    private static final CommandWord[] COMMAND_WORDS = CommandWord.values();
+
+    // the trie: node n matches character label[n] after its parent; its
+    // children start at firstChild[n] and are linked by nextSibling
+    private char[] label = new char[64];
+    private int[] firstChild = new int[64];
+    private int[] nextSibling = new int[64];
+    private int[] wordAt = new int[64];   // the word ending at the node, or NONE
+    private int nodeCount;
+
+    // the words in the trie, by word id, and the command word each one is (or UNKNOWN)
+    private String[] words = new String[32];
+    private CommandWord[] commandWords = new CommandWord[32];
+    private int wordCount;
+    private int learnedWords;
+
+    // the commands made so far: commands[(second word id + 1) * COMMAND_WORDS.length + command word ordinal]
+    private Command[] commands = new Command[33 * COMMAND_WORDS.length];
+
+    // the line being tokenized: either bytes or chars
+    private ByteBuffer bytes;
+    private CharSequence chars;
+
+    /**
+     * Create a tokenizer that knows the command words and the directions.
+     */
+    public CommandTokenizer()
+    {
+        nodeCount = 1; // the root
+        firstChild[0] = NONE;
+        nextSibling[0] = NONE;
+        wordAt[0] = NONE;
+        for (CommandWord commandWord : COMMAND_WORDS) {
+            if (commandWord != CommandWord.UNKNOWN) {
+                add(commandWord.toString(), commandWord);
+            }
+        }
+        for (Direction direction : Direction.values()) {
+            add(direction.toString(), CommandWord.UNKNOWN);
+        }
+    }
+
+    /**
+     * Tokenize a line of bytes (UTF-8), from its position to its limit.
+     * The position of the buffer is not changed.
+     *
+     * @param line The line typed by the player
+     * @return The command
+     */
+    public Command tokenize(ByteBuffer line)
+    {
+        bytes = line;
+        try {
+            return tokenize(line.position(), line.limit());
+        }
+        finally {
+            bytes = null;
+        }
+    }
+
+    /**
+     * Tokenize a line of text.
+     *
+     * @param line The line typed by the player
+     * @return The command
+     */
+    public Command tokenize(CharSequence line)
+    {
+        chars = line;
+        try {
+            return tokenize(0, line.length());
+        }
+        finally {
+            chars = null;
+        }
+    }
+
+    /**
+     * Tokenize the current line.
+     *
+     * @param start The index of the first character
+     * @param end The index after the last character
+     * @return The command
+     */
+    private Command tokenize(int start, int end)
+    {
+        // first word
+        int i = skipSpace(start, end);
+        int firstStart = i;
+        i = skipWord(i, end);
+        int firstEnd = i;
+
+        // second word; the rest of the line is ignored
+        i = skipSpace(i, end);
+        int secondStart = i;
+        int secondEnd = skipWord(i, end);
+
+        CommandWord commandWord = CommandWord.UNKNOWN;
+        if (firstEnd > firstStart) {
+            int word = find(firstStart, firstEnd);
+            if (word != NONE) {
+                commandWord = commandWords[word];
+            }
+        }
+        int secondWord = NONE;
+        if (secondEnd > secondStart) {
+            secondWord = find(secondStart, secondEnd);
+            if (secondWord == NONE) {
+                String s = substring(secondStart, secondEnd);
+                if (learnedWords == MAX_LEARNED_WORDS || secondEnd - secondStart > MAX_LEARNED_WORD_LENGTH) {
+                    return new Command(commandName(commandWord), s);
+                }
+                learnedWords++;
+                secondWord = add(s, CommandWord.UNKNOWN);
+            }
+        }
+        return command(commandWord, secondWord);
+    }
+
+    /**
+     * @return The number of nodes of the trie, which grows with the words learned
+     */
+    int getNodeCount()
+    {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the command for a pair of words, making it the first time.
+     *
+     * @param commandWord The command word, or UNKNOWN
+     * @param secondWord The id of the second word, or NONE
+     * @return The command
+     */
+    private Command command(CommandWord commandWord, int secondWord)
+    {
+        int index = (secondWord + 1) * COMMAND_WORDS.length + commandWord.ordinal();
+        Command command = commands[index];
+        if (command == null) {
+            command = new Command(commandName(commandWord), secondWord == NONE ? null : words[secondWord]);
+            commands[index] = command;
+        }
+        return command;
+    }
+
+    /**
+     * @param commandWord A command word
+     * @return The word the player typed for it, or null if it is UNKNOWN
+     */
+    private static String commandName(CommandWord commandWord)
+    {
+        return commandWord == CommandWord.UNKNOWN ? null : commandWord.toString();
+    }
+
+    /**
+     * Returns the character at an index of the current line.
+     *
+     * @param i The index
+     * @return The character (a byte of a byte line, as an unsigned value)
+     */
+    private char charAt(int i)
+    {
+        if (bytes != null) {
+            return (char) (bytes.get(i) & 0xFF);
+        }
+        return chars.charAt(i);
+    }
+
+    /**
+     * @param i The index of a character of the current line
+     * @return true if the character separates words
+     */
+    private boolean isSpace(int i)
+    {
+        return Character.isWhitespace(charAt(i));
+    }
+
+    private int skipSpace(int i, int end)
+    {
+        while (i < end && isSpace(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipWord(int i, int end)
+    {
+        while (i < end && !isSpace(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Find a word of the current line in the trie.
+     *
+     * @param start The index of the first character of the word
+     * @param end The index after the last character
+     * @return The id of the word, or NONE if it is not in the trie
+     */
+    private int find(int start, int end)
+    {
+        int node = 0;
+        for (int i = start; i < end && node != NONE; i++) {
+            node = child(node, charAt(i));
+        }
+        return node == NONE ? NONE : wordAt[node];
+    }
+
+    /**
+     * @param node A node of the trie
+     * @param c A character
+     * @return The child of the node matching the character, or NONE
+     */
+    private int child(int node, char c)
+    {
+        int child = firstChild[node];
+        while (child != NONE && label[child] != c) {
+            child = nextSibling[child];
+        }
+        return child;
+    }
+
+    /**
+     * Returns a word of the current line as a string.
+     *
+     * @param start The index of the first character of the word
+     * @param end The index after the last character
+     * @return The word
+     */
+    private String substring(int start, int end)
+    {
+        if (bytes == null) {
+            return chars.subSequence(start, end).toString();
+        }
+        byte[] word = new byte[end - start];
+        bytes.get(start, word);
+        return new String(word, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Add a word to the trie. A byte line is matched byte by byte, so a
+     * word with characters beyond ASCII is added as its UTF-8 bytes too.
+     *
+     * @param word The word
+     * @param commandWord The command word it is, or UNKNOWN
+     * @return The id of the word
+     */
+    private int add(String word, CommandWord commandWord)
+    {
+        if (wordCount == words.length) {
+            words = Arrays.copyOf(words, wordCount * 2);
+            commandWords = Arrays.copyOf(commandWords, wordCount * 2);
+            commands = Arrays.copyOf(commands, (wordCount * 2 + 1) * COMMAND_WORDS.length);
+        }
+        int id = wordCount++;
+        words[id] = word;
+        commandWords[id] = commandWord;
+        addPath(word, id);
+        byte[] utf8 = word.getBytes(StandardCharsets.UTF_8);
+        if (utf8.length != word.length()) {
+            addPath(new String(utf8, StandardCharsets.ISO_8859_1), id);
+        }
+        return id;
+    }
+
+    /**
+     * Add the nodes for a word to the trie.
+     *
+     * @param path The characters of the word
+     * @param id The id of the word
+     */
+    private void addPath(String path, int id)
+    {
+        int node = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            int child = child(node, c);
+            if (child == NONE) {
+                child = newNode(c);
+                nextSibling[child] = firstChild[node];
+                firstChild[node] = child;
+            }
+            node = child;
+        }
+        if (wordAt[node] == NONE) {
+            wordAt[node] = id;
+        }
+    }
+
+    /**
+     * @param c The character the node matches
+     * @return A new node without children
+     */
+    private int newNode(char c)
+    {
+        if (nodeCount == label.length) {
+            int size = nodeCount * 2;
+            label = Arrays.copyOf(label, size);
+            firstChild = Arrays.copyOf(firstChild, size);
+            nextSibling = Arrays.copyOf(nextSibling, size);
+            wordAt = Arrays.copyOf(wordAt, size);
+        }
+        int node = nodeCount++;
+        label[node] = c;
+        firstChild[node] = NONE;
+        nextSibling[node] = NONE;
+        wordAt[node] = NONE;
+        return node;
+    }
+}
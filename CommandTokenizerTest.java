@@ -0,0 +1,111 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CommandTokenizerTest checks that a player cannot make the tokenizer of
+ * their session grow without limit: it sends many distinct long words,
+ * then more distinct short words than the tokenizer learns, and checks
+ * that the commands are still right and that the trie stopped growing.
+ *
+ *     java CommandTokenizerTest     exits with status 1 if a check fails
+ *
+ * @author Noor Karabala
+ */
+public class CommandTokenizerTest
+{
+    private static int failures;
+
+    /**
+     * Run the checks.
+     *
+     * @param args Not used
+     */
+    public static void main(String[] args)
+    {
+        longWordsAreNotLearned();
+        learnedWordsAreLimited();
+        if (failures > 0) {
+            System.out.println(failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+
+    /**
+     * Long words are tokenized, but never added to the trie.
+     */
+    private static void longWordsAreNotLearned()
+    {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        int nodes = tokenizer.getNodeCount();
+        for (int i = 0; i < 1100; i++) {
+            String word = i + "x".repeat(1000);
+            Command command = tokenize(tokenizer, "take " + word, i % 2 == 0);
+            check(word.equals(command.getSecondWord()), "long word " + i + " tokenized");
+            check("take".equals(command.getCommandWord()), "command word of long word " + i);
+        }
+        check(tokenizer.getNodeCount() == nodes,
+              "trie grew from " + nodes + " to " + tokenizer.getNodeCount() + " nodes for long words");
+    }
+
+    /**
+     * Short words are learned up to MAX_LEARNED_WORDS, and no more.
+     */
+    private static void learnedWordsAreLimited()
+    {
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        int longest = CommandTokenizer.MAX_LEARNED_WORD_LENGTH;
+        for (int i = 0; i < CommandTokenizer.MAX_LEARNED_WORDS; i++) {
+            tokenize(tokenizer, "drop " + padded(i, longest), i % 2 == 0);
+        }
+        int nodes = tokenizer.getNodeCount();
+        for (int i = CommandTokenizer.MAX_LEARNED_WORDS; i < 10 * CommandTokenizer.MAX_LEARNED_WORDS; i++) {
+            String word = padded(i, longest);
+            check(word.equals(tokenize(tokenizer, "drop " + word, i % 2 == 0).getSecondWord()),
+                  "word " + i + " tokenized");
+        }
+        check(tokenizer.getNodeCount() == nodes,
+              "trie grew from " + nodes + " to " + tokenizer.getNodeCount() + " nodes beyond the learned words");
+        check(tokenize(tokenizer, "go north", false) == tokenize(tokenizer, "go north", true),
+              "known words still give the same command");
+    }
+
+    /**
+     * @param i A number
+     * @param length The length of the word
+     * @return A word of the given length made from the number
+     */
+    private static String padded(int i, int length)
+    {
+        String number = Integer.toString(i);
+        return number + "y".repeat(length - number.length());
+    }
+
+    /**
+     * Tokenize a line as text or as UTF-8 bytes.
+     *
+     * @param tokenizer The tokenizer
+     * @param line The line
+     * @param asBytes true to tokenize the bytes of the line
+     * @return The command
+     */
+    private static Command tokenize(CommandTokenizer tokenizer, String line, boolean asBytes)
+    {
+        if (asBytes) {
+            return tokenizer.tokenize(ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8)));
+        }
+        return tokenizer.tokenize(line);
+    }
+
+    /**
+     * @param passed true if the check passed
+     * @param what What was checked
+     */
+    private static void check(boolean passed, String what)
+    {
+        if (!passed) {
+            failures++;
+            System.out.println("FAIL " + what);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/**
+ * Representations for all the valid command words for the game
+ * along with a string in a particular language.
+ * 
+ * This class is part of the "World of Zuul" application. 
+ * "World of Zuul" is text based adventure game.
+ *
+ * @author  Michael Kolling and David J. Barnes
+ * @author Noor Karabala
+ */
+public enum CommandWord
+{
+    // A value for each command word along with its
+    // corresponding user interface string.
+    GO("go"), QUIT("quit"), HELP("help"), LOOK("look"), EAT("eat"), BACK("back"),
+    STACK_BACK("stackBack"), TAKE("take"), DROP("drop"), CHARGE("charge"), FIRE("fire"),
+    SAVE("save"), LOAD("load"), ROUTE("route"), STATS("stats"), INVENTORY("inventory"),
+    UNKNOWN("?");
+    
+    // The command string.
+    private String commandString;
+    
+    /**
+     * Initialise with the corresponding command string.
+     * 
+     * @param commandString The command string.
+     */
+    CommandWord(String commandString)
+    {
+        this.commandString = commandString;
+    }
+    
+    /**
+     * Commands that can change the game (or end it) are written to the
+     * command journal; help, look, save, route, stats and inventory only
+     * read it. Load journals the saved game it loads itself.
+     * 
+     * @return true if commands with this word are journaled.
+     */
+    public boolean isJournaled()
+    {
+        return this != HELP && this != LOOK && this != SAVE && this != LOAD && this != ROUTE
+            && this != STATS && this != INVENTORY && this != UNKNOWN;
+    }
+
+    /**
+     * @return The command word as a string.
+     */
+    public String toString()
+    {
+        return commandString;
+    }
+}
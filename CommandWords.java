@@ -1,3 +1,6 @@
+import java.util.HashMap;
+import java.util.Set;
+
 /**
  * This class is part of the "World of Zuul" application. 
  * "World of Zuul" is text based adventure game.
@@ -11,17 +14,39 @@
 
 public class CommandWords
 {
-    // a constant array that holds all valid command words
-    private static final String[] validCommands = {
-        "go", "quit", "help", "look", "eat", "back", "stackBack", "take", "drop", "charge", "fire"
-    };
+    // A mapping between a command word and the CommandWord
+    // associated with it.
+    private HashMap<String, CommandWord> validCommands;
 
     /**
      * Constructor - initialise the command words.
      */
     public CommandWords()
     {
-        // nothing to do at the moment...
+        validCommands = new HashMap<String, CommandWord>();
+        for(CommandWord command : CommandWord.values()) {
+            if(command != CommandWord.UNKNOWN) {
+                validCommands.put(command.toString(), command);
+            }
+        }
+    }
+
+    /**
+     * Find the CommandWord associated with a command word.
+     * 
+     * @param commandWord The word to look up.
+     * @return The CommandWord corresponding to commandWord, or UNKNOWN
+     *         if it is not a valid command word.
+     */
+    public CommandWord getCommandWord(String commandWord)
+    {
+        CommandWord command = validCommands.get(commandWord);
+        if(command != null) {
+            return command;
+        }
+        else {
+            return CommandWord.UNKNOWN;
+        }
     }
 
     /**
@@ -32,12 +57,7 @@ public class CommandWords
      */
     public boolean isCommand(String aString)
     {
-        for(int i = 0; i < validCommands.length; i++) {
-            if(validCommands[i].equals(aString))
-                return true;
-        }
-        // if we get here, the string was not found in the commands
-        return false;
+        return validCommands.containsKey(aString);
     }
 
     /**
@@ -47,12 +67,32 @@ public class CommandWords
      */
     public String getCommandList() 
     {
-        // let's use a StringBuilder (not required)
+        // list the commands in the order they are declared in
         StringBuilder s = new StringBuilder();
-        for(String command: validCommands) {
-            s.append(command + "  ");
+        for(CommandWord command : CommandWord.values()) {
+            if(command != CommandWord.UNKNOWN) {
+                s.append(command).append("  ");
+            }
         }
         String str = s.toString(); 
         return str.trim(); // removes spaces from beginning/end
     }
+
+    /**
+     * Returns a String containing the given commands, e.g. those a
+     * game has handlers for.
+     * 
+     * @param available The commands to list, in the order they are declared in
+     * @return a String of the commands
+     */
+    public String getCommandList(Set<CommandWord> available) 
+    {
+        StringBuilder s = new StringBuilder();
+        for(CommandWord command : available) {
+            if(command != CommandWord.UNKNOWN) {
+                s.append(command).append("  ");
+            }
+        }
+        return s.toString().trim();
+    }
 }
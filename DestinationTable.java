@@ -0,0 +1,146 @@
+import java.util.ArrayDeque;
+
+/**
+ * A DestinationTable decides where transporter rooms send the player:
+ * to any of a set of rooms (a zone), each equally likely, or with a given
+ * weight per room. Picking a destination takes constant time and does not
+ * allocate; weighted tables use the alias method, so a pick needs one
+ * random index and one random comparison whatever the weights are.
+ *
+ * A table does not change once it is built, and can be used by many
+ * players at the same time. A world without a table sends the player to
+ * any of its rooms (see World.setDestinationTable).
+ *
+ * @author Noor Karabala
+ */
+public class DestinationTable
+{
+    // probabilities are scaled to ints below this
+    private static final int ONE = 1 << 30;
+
+    private int[] roomIds;
+
+    // for weighted tables: entry i is kept with probability keep[i] / ONE,
+    // otherwise alias[i] is used instead; null for equal weights
+    private int[] keep;
+    private int[] alias;
+
+    /**
+     * Create a table.
+     *
+     * @param roomIds The ids of the destinations
+     * @param keep The probabilities of keeping each entry, or null
+     * @param alias The alias of each entry, or null
+     */
+    private DestinationTable(int[] roomIds, int[] keep, int[] alias)
+    {
+        if (roomIds.length == 0) {
+            throw new IllegalArgumentException("a destination table needs at least one room");
+        }
+        this.roomIds = roomIds;
+        this.keep = keep;
+        this.alias = alias;
+    }
+
+    /**
+     * Create a table of rooms that are equally likely destinations.
+     *
+     * @param roomIds The ids of the rooms of the zone
+     * @return The table
+     */
+    public static DestinationTable zone(int[] roomIds)
+    {
+        return new DestinationTable(roomIds.clone(), null, null);
+    }
+
+    /**
+     * Create a table of rooms with a weight each: a room with twice the
+     * weight of another is twice as likely a destination.
+     *
+     * @param roomIds The ids of the rooms
+     * @param weights The weight of each room, not negative and not all zero
+     * @return The table
+     */
+    public static DestinationTable weighted(int[] roomIds, double[] weights)
+    {
+        int n = roomIds.length;
+        if (weights.length != n) {
+            throw new IllegalArgumentException("one weight per room is needed");
+        }
+        double total = 0;
+        for (double weight : weights) {
+            if (weight < 0 || Double.isNaN(weight)) {
+                throw new IllegalArgumentException("weights must not be negative: " + weight);
+            }
+            total += weight;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("weights must not all be zero");
+        }
+
+        // Vose's alias method: split the entries into those below and above
+        // the average weight, and fill up every small entry with a large one
+        double[] scaled = new double[n];
+        ArrayDeque<Integer> small = new ArrayDeque<Integer>();
+        ArrayDeque<Integer> large = new ArrayDeque<Integer>();
+        for (int i = 0; i < n; i++) {
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1) {
+                small.push(i);
+            }
+            else {
+                large.push(i);
+            }
+        }
+        int[] keep = new int[n];
+        int[] alias = new int[n];
+        while (!small.isEmpty() && !large.isEmpty()) {
+            int less = small.pop();
+            int more = large.pop();
+            keep[less] = (int) (scaled[less] * ONE);
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) {
+                small.push(more);
+            }
+            else {
+                large.push(more);
+            }
+        }
+        // what is left is (up to rounding) exactly the average
+        while (!large.isEmpty()) {
+            int i = large.pop();
+            keep[i] = ONE;
+            alias[i] = i;
+        }
+        while (!small.isEmpty()) {
+            int i = small.pop();
+            keep[i] = ONE;
+            alias[i] = i;
+        }
+        return new DestinationTable(roomIds.clone(), keep, alias);
+    }
+
+    /**
+     * Pick a destination.
+     *
+     * @param random The source of the random choice
+     * @return The id of the destination room
+     */
+    public int pick(RandomSource random)
+    {
+        int i = random.nextInt(roomIds.length);
+        if (keep != null && random.nextInt(ONE) >= keep[i]) {
+            i = alias[i];
+        }
+        return roomIds[i];
+    }
+
+    /**
+     * @return The number of rooms in the table
+     */
+    public int size()
+    {
+        return roomIds.length;
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.HashMap;
+
+/**
+ * The directions in which a room can have exits, along with the word
+ * the player types for them.
+ *
+ * The exit list of a room ("Exits: north west") only depends on which
+ * directions have exits, so the lists are built once for every
+ * combination of directions and shared by all rooms.
+ *
+ * @author Noor Karabala
+ */
+public enum Direction
+{
+    NORTH("north"), EAST("east"), SOUTH("south"), WEST("west"), UP("up"), DOWN("down");
+
+    // the directions by their words
+    private static final HashMap<String, Direction> BY_WORD = new HashMap<String, Direction>();
+
+    // the exit list for every combination of directions, indexed by a bit mask
+    // with bit "ordinal" set for every direction with an exit
+    private static final String[] EXIT_STRINGS = new String[1 << values().length];
+
+    static {
+        for (Direction direction : values()) {
+            BY_WORD.put(direction.word, direction);
+        }
+        for (int mask = 0; mask < EXIT_STRINGS.length; mask++) {
+            StringBuilder s = new StringBuilder("Exits:");
+            for (Direction direction : values()) {
+                if ((mask & direction.bit()) != 0) {
+                    s.append(' ').append(direction.word);
+                }
+            }
+            EXIT_STRINGS[mask] = s.toString();
+        }
+    }
+
+    // the word for the direction
+    private String word;
+
+    /**
+     * Initialise with the word for the direction.
+     *
+     * @param word The word for the direction
+     */
+    Direction(String word)
+    {
+        this.word = word;
+    }
+
+    /**
+     * @return The bit of this direction in an exit mask
+     */
+    public int bit()
+    {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @return The direction leading back, e.g. south for north
+     */
+    public Direction opposite()
+    {
+        switch (this) {
+            case NORTH: return SOUTH;
+            case EAST:  return WEST;
+            case SOUTH: return NORTH;
+            case WEST:  return EAST;
+            case UP:    return DOWN;
+            default:    return UP;
+        }
+    }
+
+    /**
+     * @return The word for the direction
+     */
+    public String toString()
+    {
+        return word;
+    }
+
+    /**
+     * Find the direction for a word.
+     *
+     * @param word The word typed by the player, e.g. "north"
+     * @return The direction, or null if the word is not a direction
+     */
+    public static Direction fromString(String word)
+    {
+        return BY_WORD.get(word);
+    }
+
+    /**
+     * Returns the exit list for the directions in an exit mask,
+     * for example "Exits: north west".
+     *
+     * @param mask A bit mask with the bit of every direction with an exit
+     * @return The exit list
+     */
+    public static String exitString(int mask)
+    {
+        return EXIT_STRINGS[mask];
+    }
+}
@@ -0,0 +1,295 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An EventBus delivers GameEvents to its subscribers (achievements,
+ * analytics, audit logs) without slowing the games down.
+ *
+ * Every subscriber has a bounded queue of its own. Publishing an event
+ * puts it in every queue with a compare-and-set, without locks, and never
+ * waits: when a queue is full (the subscriber cannot keep up), the event
+ * is dropped for that subscriber and counted. Every subscriber has a
+ * virtual thread of its own that takes the events from its queue and
+ * hands them to the subscriber in batches, so a slow subscriber delays
+ * only itself. With no subscribers, publishing costs one volatile read.
+ *
+ * @author Noor Karabala
+ */
+public class EventBus
+{
+    // the queue size and largest batch of subscribe(Listener)
+    public static final int DEFAULT_CAPACITY = 4096;
+    public static final int DEFAULT_BATCH = 256;
+
+    /**
+     * Receives the events published on a bus.
+     */
+    public interface Listener
+    {
+        /**
+         * Handle a batch of events, in the order they were published.
+         * Called on the subscription's own thread, never for two batches
+         * at once.
+         *
+         * @param events The events; the list is only valid during the call
+         */
+        void onEvents(List<GameEvent> events);
+    }
+
+    /**
+     * A bounded queue for many publishers and one consumer. Every slot has
+     * a sequence number telling whether it is free for the publisher of a
+     * given position, or holds the event for the consumer of a position
+     * (D. Vyukov's bounded queue).
+     */
+    private static class EventQueue
+    {
+        private int mask;
+        private AtomicReferenceArray<GameEvent> slots;
+        private AtomicLongArray sequences;
+        private AtomicLong tail = new AtomicLong();
+        private long head; // used by the consumer only
+
+        private EventQueue(int capacity)
+        {
+            int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+            mask = size - 1;
+            slots = new AtomicReferenceArray<GameEvent>(size);
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        /**
+         * @param event The event to add
+         * @return false if the queue is full
+         */
+        private boolean offer(GameEvent event)
+        {
+            while (true) {
+                long position = tail.get();
+                int slot = (int) position & mask;
+                long sequence = sequences.get(slot);
+                if (sequence == position) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.lazySet(slot, event);
+                        sequences.set(slot, position + 1); // publish to the consumer
+                        return true;
+                    }
+                }
+                else if (sequence < position) {
+                    return false; // the consumer has not taken this slot's last event yet
+                }
+                // else another publisher took the position; try the next one
+            }
+        }
+
+        /**
+         * Move events from the queue to a list.
+         *
+         * @param batch The list
+         * @param max The largest number of events moved
+         */
+        private void drainTo(List<GameEvent> batch, int max)
+        {
+            while (batch.size() < max) {
+                int slot = (int) head & mask;
+                if (sequences.get(slot) != head + 1) {
+                    return; // empty, or the event is not published yet
+                }
+                batch.add(slots.get(slot));
+                slots.lazySet(slot, null);
+                sequences.set(slot, head + mask + 1); // free for the next round
+                head++;
+            }
+        }
+
+        /**
+         * @return true if the consumer may have events to take
+         */
+        private boolean isEmpty()
+        {
+            return sequences.get((int) head & mask) != head + 1;
+        }
+    }
+
+    /**
+     * The connection of one listener to the bus.
+     */
+    public class Subscription
+    {
+        private Listener listener;
+        private EventQueue queue;
+        private int maxBatch;
+        private Thread thread;
+        private volatile boolean parked;
+        private volatile boolean closed;
+        private LongAdder dropped = new LongAdder();
+        private LongAdder delivered = new LongAdder();
+
+        private Subscription(Listener listener, int capacity, int maxBatch)
+        {
+            this.listener = listener;
+            this.queue = new EventQueue(capacity);
+            this.maxBatch = maxBatch;
+        }
+
+        /**
+         * Queue an event for the listener, waking its thread if it sleeps.
+         *
+         * @param event The event
+         */
+        private void offer(GameEvent event)
+        {
+            if (!queue.offer(event)) {
+                dropped.increment();
+                return;
+            }
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        /**
+         * Hand the queued events to the listener, batch by batch, until
+         * the subscription is closed and its queue is empty.
+         */
+        private void deliver()
+        {
+            List<GameEvent> batch = new ArrayList<GameEvent>(maxBatch);
+            while (true) {
+                queue.drainTo(batch, maxBatch);
+                if (batch.isEmpty()) {
+                    if (closed) {
+                        return;
+                    }
+                    parked = true;
+                    if (queue.isEmpty() && !closed) {
+                        LockSupport.park(this);
+                    }
+                    parked = false;
+                    continue;
+                }
+                try {
+                    listener.onEvents(batch);
+                }
+                catch (RuntimeException e) {
+                    // a failing listener loses this batch, but keeps its subscription
+                    System.err.println("event listener: " + e);
+                }
+                delivered.add(batch.size());
+                batch.clear();
+            }
+        }
+
+        /**
+         * @return The number of events dropped because the queue was full
+         */
+        public long getDropped()
+        {
+            return dropped.sum();
+        }
+
+        /**
+         * @return The number of events handed to the listener
+         */
+        public long getDelivered()
+        {
+            return delivered.sum();
+        }
+
+        /**
+         * Stop receiving events. Events already queued are still delivered;
+         * this method waits until they are.
+         *
+         * @throws InterruptedException If interrupted while waiting
+         */
+        public void close() throws InterruptedException
+        {
+            unsubscribe(this);
+            closed = true;
+            LockSupport.unpark(thread);
+            thread.join();
+        }
+    }
+
+    // the subscriptions, replaced as a whole when one is added or removed
+    private volatile Subscription[] subscriptions = new Subscription[0];
+
+    /**
+     * Subscribe a listener with the default queue size and batch size.
+     *
+     * @param listener The listener
+     * @return The subscription
+     */
+    public Subscription subscribe(Listener listener)
+    {
+        return subscribe(listener, DEFAULT_CAPACITY, DEFAULT_BATCH);
+    }
+
+    /**
+     * Subscribe a listener.
+     *
+     * @param listener The listener
+     * @param capacity The number of events queued at most; more are dropped
+     * @param maxBatch The number of events handed to the listener at most at once
+     * @return The subscription
+     */
+    public synchronized Subscription subscribe(Listener listener, int capacity, int maxBatch)
+    {
+        Subscription subscription = new Subscription(listener, capacity, maxBatch);
+        subscription.thread = Thread.ofVirtual().name("event-listener").unstarted(subscription::deliver);
+        Subscription[] current = subscriptions;
+        Subscription[] next = Arrays.copyOf(current, current.length + 1);
+        next[current.length] = subscription;
+        subscriptions = next;
+        subscription.thread.start();
+        return subscription;
+    }
+
+    /**
+     * Remove a subscription.
+     *
+     * @param subscription The subscription
+     */
+    private synchronized void unsubscribe(Subscription subscription)
+    {
+        Subscription[] current = subscriptions;
+        int index = Arrays.asList(current).indexOf(subscription);
+        if (index < 0) {
+            return; // already closed
+        }
+        Subscription[] next = new Subscription[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, next.length - index);
+        subscriptions = next;
+    }
+
+    /**
+     * @return true if any listener is subscribed; publishers can skip
+     *         creating events when there is none
+     */
+    public boolean hasSubscribers()
+    {
+        return subscriptions.length > 0;
+    }
+
+    /**
+     * Publish an event to every subscriber. Never blocks.
+     *
+     * @param event The event
+     */
+    public void publish(GameEvent event)
+    {
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(event);
+        }
+    }
+}
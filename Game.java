@@ -1,4 +1,19 @@
-import java.util.Stack;
+import java.util.EnumMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  *  This class is the main class of the "World of Zuul" application. 
@@ -12,43 +27,138 @@ import java.util.Stack;
  *  rooms, creates the parser and starts the game.  It also evaluates and
  *  executes the commands that the parser returns.
  * 
+ *  Every game has its own world and writes to its own output sink, so
+ *  many games can be played at the same time in one program (see GameServer).
+ *  Each response is collected and sent to the sink in one piece (see GameOutput).
+ * 
  * @author  Michael Kolling and David J. Barnes 
  * @author Noor Karabala
  */
 
-public class Game 
+public final class Game 
 {
+    // command words are the same for every game
+    private static final CommandWords COMMAND_WORDS = new CommandWords();
+
+    // the number of rooms "stackBack" can go back to, unless the game is given another history
+    private static final int HISTORY_CAPACITY = 1024;
+
+    // saved games are stored in files named <name>.sav, those of a session of a
+    // server in a directory of its own, saves/<session id>, holding at most MAX_SAVES
+    private static final String SAVE_FILE_SUFFIX = ".sav";
+    private static final String SAVE_DIRECTORY = "saves";
+    private static final int MAX_SAVES = 10;
+
+    // the counts and latencies of the commands of all games
+    private static final CommandMetrics METRICS = CommandMetrics.get();
+
+    // responses to piped input are sent once this many bytes are waiting
+    private static final int OUTPUT_BATCH_SIZE = 8 * 1024;
+
     private Parser parser;
+    private CommandTokenizer tokenizer;
+    private GameOutput out;
+    private ResultRenderer renderer;
+    private EnumMap<CommandWord, CommandHandler> handlers;
+    private World world;
     private Room currentRoom;
     private Room previousRoom;
-    private Stack<Room> previousRoomStack;
+    private RoomHistory previousRoomStack;
     
-    private Item pickedItem;  
+    private Inventory inventory;
     private boolean hasEaten; // Track if the player has eaten a cookie
     private int itemsPickedUpSinceEating; // Track items picked up since eating a cookie
+
+    // the random choices of this game; a SeededRandom unless another source is set
+    private RandomSource random;
+
+    // the number of journaled commands executed, and the journal they are written to (if any)
+    private long commandSequence;
+    private CommandJournal journal;
+    private long sessionId;
     
     
     /**
      * Create the game and initialise its internal map, as well
      * as the previous room (none) and previous room stack (empty).
+     * The game is played on the console.
      */
     public Game() 
     {
-        createRooms();
+        this(OutputSink.console());
         parser = new Parser();
+    }
+
+    /**
+     * Create a game that writes its output to the given stream.
+     * Commands are passed to the game with play(BufferedReader)
+     * or processInput(String), or executed without any output
+     * with execute(Command).
+     * 
+     * @param out The stream the game writes to
+     */
+    public Game(PrintStream out) 
+    {
+        this(OutputSink.of(out), createRooms());
+    }
+
+    /**
+     * Create a game that writes its output to the given sink, e.g.
+     * OutputSink.discard() for a game whose output is not needed.
+     * 
+     * @param sink The sink the game writes to
+     */
+    public Game(OutputSink sink) 
+    {
+        this(sink, createRooms());
+    }
+
+    /**
+     * Create a game played in the given world, e.g. a world loaded
+     * from a world file. The game starts in the world's start room.
+     * 
+     * @param out The stream the game writes to
+     * @param world The world the game is played in
+     */
+    public Game(PrintStream out, World world) 
+    {
+        this(OutputSink.of(out), world);
+    }
+
+    /**
+     * Create a game played in the given world, writing its output
+     * to the given sink.
+     * 
+     * @param sink The sink the game writes to
+     * @param world The world the game is played in
+     */
+    public Game(OutputSink sink, World world) 
+    {
+        this.out = new GameOutput(sink);
+        this.world = world;
+        renderer = new ResultRenderer(COMMAND_WORDS);
+        tokenizer = new CommandTokenizer();
+        handlers = new EnumMap<CommandWord, CommandHandler>(CommandWord.class);
+        registerHandlers();
+        currentRoom = world.getStartRoom();
         previousRoom = null;
-        previousRoomStack = new Stack<Room>();
-        pickedItem = null;
+        previousRoomStack = new RoomHistory(HISTORY_CAPACITY);
+        random = new SeededRandom(ThreadLocalRandom.current().nextLong());
+        inventory = new Inventory();
         hasEaten = false;
         itemsPickedUpSinceEating = 0;
     }
 
     /**
-     * Create all the rooms and link their exits together.
+     * Create all the rooms of the campus and link their exits together.
+     * Every call creates a new campus.
+     * 
+     * @return The world of the campus
      */
-    private void createRooms()
+    public static World createRooms()
     {
         Room outside, theatre, pub, lab, office;
+        World world = new World();
         Item cookie1, cookie2, cookie3, chair1, chair2, bar, computer1, computer2, computer3, tree1, tree2;
         
         // create some items
@@ -69,14 +179,14 @@ public class Game
         Beamer beamer2 = new Beamer("beamer2", "a portable teleportation device", 3.5);
        
         // create the rooms
-        outside = new Room("outside the main entrance of the university");
-        theatre = new Room("in a lecture theatre");
-        pub = new Room("in the campus pub");
-        lab = new Room("in a computing lab");
-        office = new Room("in the computing admin office");
+        outside = world.newRoom("outside the main entrance of the university");
+        theatre = world.newRoom("in a lecture theatre");
+        pub = world.newRoom("in the campus pub");
+        lab = world.newRoom("in a computing lab");
+        office = world.newRoom("in the computing admin office");
         
         // Create transporter room
-        TransporterRoom transporterRoom = new TransporterRoom("in a mysterious transporter room");
+        TransporterRoom transporterRoom = world.newTransporterRoom("in a mysterious transporter room");
         
         // put items in the rooms
         outside.addItem(tree1);
@@ -111,7 +221,8 @@ public class Game
 
         office.setExit("west", lab);
 
-        currentRoom = outside;  // start game outside
+        world.setStartRoom(outside);  // start game outside
+        return world;
     }
 
     /**
@@ -129,127 +240,592 @@ public class Game
             Command command = parser.getCommand();
             finished = processCommand(command);
         }
-        System.out.println("Thank you for playing.  Good bye.");
+        printGoodbye();
+    }
+
+    /**
+     *  Play the game with commands read line by line from the given reader.
+     *  Loops until the player quits or the input ends.
+     * 
+     * @param input The reader the commands are read from
+     * @throws IOException If the input cannot be read
+     */
+    public void play(BufferedReader input) throws IOException
+    {
+        // while more lines are waiting (e.g. a piped script), responses
+        // are collected; they are sent whenever the game waits for input
+        out.setBatchSize(OUTPUT_BATCH_SIZE);
+        printWelcome();
+
+        boolean finished = false;
+        while (! finished) {
+            out.print("> ");
+            if (!input.ready()) {
+                out.flush();
+            }
+            String inputLine = input.readLine();
+            if (inputLine == null) {
+                out.flush();
+                return; // input closed, e.g. the player disconnected
+            }
+            finished = processInput(inputLine);
+        }
+        printGoodbye();
+    }
+
+    /**
+     * Split a line of input into a command (the first two words of
+     * the line) and process it.
+     * 
+     * @param inputLine The line typed by the player
+     * @return true If the command ends the game, false otherwise
+     */
+    public boolean processInput(String inputLine)
+    {
+        // note: the rest of the input line after the second word is ignored.
+        return processCommand(tokenizer.tokenize(inputLine));
+    }
+
+    /**
+     * Split a line of input, given as UTF-8 bytes (e.g. as read from a
+     * network connection), into a command and process it. Known words
+     * are matched in place, so no strings are made for them.
+     * 
+     * @param inputLine The bytes of the line, from the buffer's position to its limit
+     * @return true If the command ends the game, false otherwise
+     */
+    public boolean processInput(ByteBuffer inputLine)
+    {
+        return processCommand(tokenizer.tokenize(inputLine));
+    }
+
+    /**
+     * Print out the opening message for the player. play() does this
+     * itself; a game driven with processInput() is welcomed with this.
+     */
+    public void printWelcome()
+    {
+        out.println();
+        out.println("Welcome to the World of Zuul!");
+        out.println("World of Zuul is a new, incredibly boring adventure game.");
+        out.println("Type 'help' if you need help.");
+        out.println();
+        out.println(currentRoom.getLongDescription());
+        out.endResponse();
     }
 
     /**
-     * Print out the opening message for the player.
+     * Print out the closing message for the player, and send everything
+     * that is still waiting.
      */
-    private void printWelcome()
+    public void printGoodbye()
     {
-        System.out.println();
-        System.out.println("Welcome to the World of Zuul!");
-        System.out.println("World of Zuul is a new, incredibly boring adventure game.");
-        System.out.println("Type 'help' if you need help.");
-        System.out.println();
-        System.out.println(currentRoom.getLongDescription());
+        out.println("Thank you for playing.  Good bye.");
+        out.flush();
     }
 
     /**
-     * Given a command, process (that is: execute) the command.
+     * Given a command, process (that is: execute) the command and
+     * print its result.
      * 
      * @param command The command to be processed
      * @return true If the command ends the game, false otherwise
      */
     private boolean processCommand(Command command) 
     {
-        boolean wantToQuit = false;
+        CommandResult result = execute(command);
+        if (!result.isQuit()) {
+            out.println(renderer.render(result));
+            out.endResponse();
+        }
+        return result.isQuit();
+    }
 
+    /**
+     * Execute a command without printing anything. This is the way
+     * for programs (bots, servers, tests) to drive the game.
+     * 
+     * @param command The command to be executed
+     * @return The result of the command
+     */
+    public CommandResult execute(Command command) 
+    {
+        long start = System.nanoTime();
         if(command.isUnknown()) {
-            System.out.println("I don't know what you mean...");
-            return false;
+            CommandResult result = result(CommandResult.Status.UNKNOWN_COMMAND, command);
+            METRICS.recordCommand(CommandWord.UNKNOWN, System.nanoTime() - start);
+            return result;
         }
 
-        String commandWord = command.getCommandWord();
-        if (commandWord.equals("help")) {
-            printHelp();
+        // one lookup finds the command word, one more its handler
+        CommandWord commandWord = COMMAND_WORDS.getCommandWord(command.getCommandWord());
+        CommandResult result = execute(commandWord, command);
+        METRICS.recordCommand(commandWord, System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Execute a command with a known command word.
+     * 
+     * @param commandWord The command word of the command
+     * @param command The command to be executed
+     * @return The result of the command
+     */
+    private CommandResult execute(CommandWord commandWord, Command command) 
+    {
+        if (commandWord.isJournaled()) {
+            journal(commandWord, command);
         }
-        else if (commandWord.equals("go")) {
-            goRoom(command);
+        CommandHandler handler = handlers.get(commandWord);
+        if (handler != null) {
+            return handler.handle(command);
+        }
+        
+        // else command not recognised.
+        return result(CommandResult.Status.UNKNOWN_COMMAND, command);
+    }
+
+    /**
+     * Count a command that changes the game and, if the game has a
+     * journal, write it there before it is executed.
+     * 
+     * @param commandWord The command word of the command
+     * @param command The command to be executed
+     */
+    private void journal(CommandWord commandWord, Command command)
+    {
+        commandSequence++;
+        if (journal != null) {
+            try {
+                journal.appendCommand(sessionId, commandSequence, commandWord, command.getSecondWord());
+            }
+            catch (IOException e) {
+                // the game goes on; only its recovery after a crash is affected
+                System.err.println("journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write the commands of this game to a journal from now on, so the game
+     * can be recovered after a crash (see CommandJournal.recover()).
+     * 
+     * @param journal The journal
+     * @param sessionId The id of this game in the journal
+     * @throws IOException If the journal cannot be written
+     */
+    public void setJournal(CommandJournal journal, long sessionId) throws IOException
+    {
+        journal.appendStart(sessionId, commandSequence, getRandomState());
+        this.journal = journal;
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * Give this game the id it is known by in the events it publishes, if
+     * it has no journal (setJournal() gives it the id of its journal session).
+     * 
+     * @param sessionId The id of this game
+     */
+    public void setSessionId(long sessionId)
+    {
+        this.sessionId = sessionId;
+    }
+
+    /**
+     * @return The id of this game in its journal and events, or 0 if it has none
+     */
+    public long getSessionId()
+    {
+        return sessionId;
+    }
+
+    /**
+     * Publish an event of this game in the current room on the event bus
+     * of the world, if anyone listens.
+     * 
+     * @param type What happened
+     * @param item The item it was about, or null
+     */
+    private void publish(GameEvent.Type type, Item item)
+    {
+        world.publish(type, sessionId, currentRoom.getId(), item);
+    }
+
+    /**
+     * Keep the rooms "stackBack" can go back to in the given history, e.g.
+     * one with a larger capacity or one writing older rooms to disk. The
+     * rooms of the current history are moved to it.
+     * 
+     * @param history The new, empty history
+     */
+    public void setRoomHistory(RoomHistory history)
+    {
+        for (int id : previousRoomStack.toArray()) {
+            history.push(id);
+        }
+        previousRoomStack = history;
+    }
+
+    /**
+     * Make the random choices of this game (e.g. where transporter rooms
+     * send the player) with the given source. Only a SeededRandom can be
+     * saved and replayed; RandomSource.threadLocal() is the fastest source.
+     * 
+     * @param random The source of random choices
+     */
+    public void setRandomSource(RandomSource random)
+    {
+        this.random = random;
+    }
+
+    /**
+     * @return The source of the random choices of this game
+     */
+    public RandomSource getRandomSource()
+    {
+        return random;
+    }
+
+    /**
+     * @return The state of the game's SeededRandom, or 0 if it uses another source
+     */
+    private long getRandomState()
+    {
+        if (random instanceof SeededRandom) {
+            return ((SeededRandom) random).getState();
+        }
+        return 0;
+    }
+
+    /**
+     * Continue the random choices of this game from a saved state.
+     * 
+     * @param state The state of a SeededRandom
+     */
+    private void setRandomState(long state)
+    {
+        if (random instanceof SeededRandom) {
+            ((SeededRandom) random).setState(state);
+        }
+        else {
+            random = new SeededRandom(state);
+        }
+    }
+
+    /**
+     * @return The number of commands executed that can change the game
+     */
+    public long getCommandSequence()
+    {
+        return commandSequence;
+    }
+
+    /**
+     * @return The room the player is in
+     */
+    public Room getCurrentRoom()
+    {
+        return currentRoom;
+    }
+
+    /**
+     * @return The items the player carries; not to be changed by the caller
+     */
+    public Inventory getInventory()
+    {
+        return inventory;
+    }
+
+    /**
+     * @return The world this game is played in
+     */
+    public World getWorld()
+    {
+        return world;
+    }
+
+    /**
+     * Create the result of a command that is not about an item.
+     * 
+     * @param status How the command ended
+     * @param command The executed command
+     * @return The result of the command
+     */
+    private CommandResult result(CommandResult.Status status, Command command)
+    {
+        return result(status, command, (Item) null);
+    }
+
+    /**
+     * Create the result of a command.
+     * 
+     * @param status How the command ended
+     * @param command The executed command
+     * @param item The item the command was about
+     * @return The result of the command
+     */
+    private CommandResult result(CommandResult.Status status, Command command, Item item)
+    {
+        return result(status, command, item, null);
+    }
+
+    /**
+     * Create the result of a command with a detail.
+     * 
+     * @param status How the command ended
+     * @param command The executed command
+     * @param detail The detail of the result
+     * @return The result of the command
+     */
+    private CommandResult result(CommandResult.Status status, Command command, String detail)
+    {
+        return result(status, command, null, detail);
+    }
+
+    /**
+     * Create the result of a command about an item, with a detail. The
+     * items carried are only copied into results that show them.
+     * 
+     * @param status How the command ended
+     * @param command The executed command
+     * @param item The item the command was about, or null
+     * @param detail The detail of the result, or null
+     * @return The result of the command
+     */
+    private CommandResult result(CommandResult.Status status, Command command, Item item, String detail)
+    {
+        Item[] heldItems = status.showsHeldItems() ? inventory.toArray() : null;
+        return new CommandResult(status, command.getCommandWord(), currentRoom, item, heldItems, detail);
+    }
+
+    /**
+     * Register the handler for a command word. A handler registered for a
+     * word that already has one replaces it. This is how new commands are
+     * added to the game.
+     * 
+     * @param commandWord The command word to handle
+     * @param handler The handler executing commands with that word
+     */
+    public void registerHandler(CommandWord commandWord, CommandHandler handler)
+    {
+        handlers.put(commandWord, handler);
+    }
+
+    /**
+     * Allow or forbid the "stats" command, which shows the metrics of all
+     * games. A game allows it when it is created; a server forbids it, so
+     * its players cannot read the metrics of the whole server (JMX shows
+     * them to its operators instead).
+     * 
+     * @param allowed true to allow "stats"
+     */
+    public void setStatsAllowed(boolean allowed)
+    {
+        if (allowed) {
+            registerHandler(CommandWord.STATS, this::stats);
+        }
+        else {
+            handlers.remove(CommandWord.STATS);
         }
-        else if (commandWord.equals("quit")) {
-            wantToQuit = quit(command);
+    }
+
+    /**
+     * Register the handlers of all the standard commands.
+     */
+    private void registerHandlers()
+    {
+        registerHandler(CommandWord.HELP, this::help);
+        registerHandler(CommandWord.GO, this::goRoom);
+        registerHandler(CommandWord.QUIT, this::quit);
+        registerHandler(CommandWord.LOOK, this::look);
+        registerHandler(CommandWord.EAT, this::eat);
+        registerHandler(CommandWord.BACK, this::back);
+        registerHandler(CommandWord.STACK_BACK, this::stackBack);
+        registerHandler(CommandWord.TAKE, this::take);
+        registerHandler(CommandWord.DROP, this::drop);
+        registerHandler(CommandWord.CHARGE, this::charge);
+        registerHandler(CommandWord.FIRE, this::fire);
+        registerHandler(CommandWord.SAVE, this::save);
+        registerHandler(CommandWord.LOAD, this::load);
+        registerHandler(CommandWord.ROUTE, this::route);
+        registerHandler(CommandWord.STATS, this::stats);
+        registerHandler(CommandWord.INVENTORY, this::inventory);
+    }
+
+    /**
+     * Save the state of this game.
+     * 
+     * @param output The stream the game is saved to
+     * @throws IOException If the stream fails
+     */
+    public void save(OutputStream output) throws IOException
+    {
+        GameSnapshot snapshot = new GameSnapshot(world, currentRoom.getId(),
+                                                 previousRoom == null ? -1 : previousRoom.getId(),
+                                                 previousRoomStack.toArray(), inventory.toArray(), hasEaten, itemsPickedUpSinceEating,
+                                                 getRandomState(), commandSequence);
+        snapshot.writeTo(new DataOutputStream(output));
+    }
+
+    /**
+     * Restore a game saved with save(). The game must be played in the
+     * same world as the saved game. If the saved game cannot be read,
+     * this game is not changed.
+     * 
+     * @param input The stream the game is read from
+     * @throws IOException If the stream fails or does not hold a game saved in this world
+     */
+    public void load(InputStream input) throws IOException
+    {
+        // a file world is loaded again, so rooms changed since are reset
+        World target = world.isLoadedFromFile() ? world.reloaded() : world;
+        GameSnapshot snapshot = GameSnapshot.readFrom(new DataInputStream(input), target,
+                                                        previousRoomStack.getMaxSize());
+
+        world = target;
+        snapshot.restoreRooms(world);
+        currentRoom = world.getRoom(snapshot.getCurrentRoomId());
+        previousRoom = snapshot.getPreviousRoomId() < 0 ? null : world.getRoom(snapshot.getPreviousRoomId());
+        previousRoomStack.clear();
+        for (int id : snapshot.getHistory()) {
+            previousRoomStack.push(id);
         }
-        else if (commandWord.equals("look")) {
-            look(command);
+        // items beyond the capacity (e.g. of a game saved before there was one) are left in the room
+        inventory = new Inventory(inventory.getCapacity());
+        for (Item item : snapshot.getHeldItems()) {
+            if (!inventory.add(item)) {
+                currentRoom.addItem(item);
+            }
         }
-        else if (commandWord.equals("eat")) {
-            eat(command);
+        hasEaten = snapshot.hasEaten();
+        itemsPickedUpSinceEating = snapshot.getItemsPickedUpSinceEating();
+        setRandomState(snapshot.getRandomState());
+        commandSequence = snapshot.getCommandSequence();
+    }
+
+    /**
+     * Returns the file a game with the given name is saved in. A game
+     * with a session id (of a server) keeps its saves in a directory of
+     * its own, so it can only load and overwrite its own games, as long as
+     * session ids are never given twice (see getLastSavingSessionId()).
+     * Saves belong to sessions, not players: there are no accounts, so a
+     * player who connects again gets a new session without those saves.
+     * Only letters, digits, '-' and '_' are allowed in names, so a
+     * player cannot write or read any other file.
+     * 
+     * @param name The name of the saved game
+     * @return The file, or null if the name is not allowed
+     */
+    private Path saveFile(String name)
+    {
+        if (!name.matches("[A-Za-z0-9_-]+")) {
+            return null;
         }
-        else if (commandWord.equals("back")) {
-            back(command);
+        if (sessionId == 0) {
+            return Paths.get(name + SAVE_FILE_SUFFIX);
         }
-        else if (commandWord.equals("stackBack")) {
-            stackBack(command);
+        return Paths.get(SAVE_DIRECTORY, Long.toString(sessionId), name + SAVE_FILE_SUFFIX);
+    }
+
+    /**
+     * Returns the highest session id that has a directory of saves, e.g.
+     * of a run of a server before it was restarted. A server has to give
+     * its sessions higher ids, or they could load and overwrite the games
+     * of those sessions.
+     * 
+     * @return The highest session id with saves, or 0 if there are none
+     * @throws IOException If the directory of saves cannot be read
+     */
+    public static long getLastSavingSessionId() throws IOException
+    {
+        Path saves = Paths.get(SAVE_DIRECTORY);
+        if (!Files.isDirectory(saves)) {
+            return 0;
         }
-        else if (commandWord.equals("take")) {
-            take(command);
+        long last = 0;
+        try (DirectoryStream<Path> directories = Files.newDirectoryStream(saves)) {
+            for (Path directory : directories) {
+                String name = directory.getFileName().toString();
+                if (name.matches("[0-9]{1,18}")) {
+                    last = Math.max(last, Long.parseLong(name));
+                }
+            }
         }
-        else if (commandWord.equals("drop")) {
-            drop(command);
+        return last;
+    }
+
+    /**
+     * Returns whether a game of a session may be saved in a file: the
+     * directory of a session holds at most MAX_SAVES games, though any of
+     * them can be saved over.
+     * 
+     * @param file The file the game would be saved in
+     * @return true if the game may be saved there
+     * @throws IOException If the directory cannot be read
+     */
+    private boolean maySave(Path file) throws IOException
+    {
+        Path directory = file.getParent();
+        if (directory == null || Files.exists(file)) {
+            return true;
         }
-        else if (commandWord.equals("charge")) {
-            charge(command);
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            return true;
         }
-        else if (commandWord.equals("fire")) {
-            fire(command);
+        try (DirectoryStream<Path> saves = Files.newDirectoryStream(directory, "*" + SAVE_FILE_SUFFIX)) {
+            int count = 0;
+            for (Path save : saves) {
+                count++;
+            }
+            return count < MAX_SAVES;
         }
-        
-        // else command not recognised.
-        return wantToQuit;
     }
 
     // implementations of user commands:
 
     /**
-     * Print out some help information.
-     * Here we print a cryptic message and a list of the 
-     * command words.
+     * "Help" was entered. The help text (a cryptic message and 
+     * a list of the command words) is added by the renderer; only
+     * the commands this game has handlers for are listed.
+     * 
+     * @param command The command to be processed
+     * @return The result of the command
      */
-    private void printHelp() 
+    private CommandResult help(Command command) 
     {
-        System.out.println("You are lost. You are alone. You wander");
-        System.out.println("around at the university.");
-        System.out.println();
-        System.out.println("Your command words are:");
-        System.out.println(parser.getCommands());
+        return result(CommandResult.Status.HELP, command, COMMAND_WORDS.getCommandList(handlers.keySet()));
     }
 
     /** 
      * Try to go to one direction. If there is an exit, enter the new
-     * room, otherwise print an error message.
+     * room, otherwise report that there is no door.
      * If we go to a new room, update previous room and previous room stack.
      * 
      * @param command The command to be processed
+     * @return The result of the command
      */
-    private void goRoom(Command command) 
+    private CommandResult goRoom(Command command) 
     {
         if(!command.hasSecondWord()) {
             // if there is no second word, we don't know where to go...
-            System.out.println("Go where?");
-            return;
+            return result(CommandResult.Status.MISSING_SECOND_WORD, command);
         }
 
         String direction = command.getSecondWord();
 
         // Try to leave current room.
-        Room nextRoom = currentRoom.getExit(direction);
+        Room nextRoom = currentRoom.getExit(direction, random);
 
         if (nextRoom == null) {
-            System.out.println("There is no door!");
-        }
-        else {
-            previousRoom = currentRoom; // store the previous room
-            previousRoomStack.push(currentRoom); // and add to previous room stack
-            currentRoom = nextRoom;
-            System.out.println(currentRoom.getLongDescription());
-            // output player item holding status
-            if (pickedItem != null){    
-                System.out.println("\nPlayer is holding " + pickedItem.getName());
-            }else{
-                System.out.println("\nPlayer is not holding anything");
-            }
+            return result(CommandResult.Status.NO_DOOR, command);
         }
+        previousRoom = currentRoom; // store the previous room
+        previousRoomStack.push(currentRoom.getId()); // and add to previous room stack
+        currentRoom = nextRoom;
+        publish(GameEvent.Type.ENTERED_ROOM, null);
+        return result(CommandResult.Status.MOVED, command);
     }
 
     /** 
@@ -257,17 +833,14 @@ public class Game
      * whether we really quit the game.
      * 
      * @param command The command to be processed
-     * @return true, if this command quits the game, false otherwise
+     * @return The result of the command, QUIT if this command quits the game
      */
-    private boolean quit(Command command) 
+    private CommandResult quit(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Quit what?");
-            return false;
-        }
-        else {
-            return true;  // signal that we want to quit
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
         }
+        return result(CommandResult.Status.QUIT, command);  // signal that we want to quit
     }
     
     /** 
@@ -275,24 +848,14 @@ public class Game
      * whether we really want to look.
      * 
      * @param command The command to be processed
+     * @return The result of the command
      */
-    private void look(Command command) 
+    private CommandResult look(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Look what?");
-            return;
-        }
-        
-        // output the long description of this room
-        System.out.println(currentRoom.getLongDescription());
-        
-        // output player item holding status
-        if (pickedItem != null){    
-            System.out.println("\nPlayer is holding " + pickedItem.getName());
-        }else{
-            System.out.println("\nPlayer is not holding anything");
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
         }
-        
+        return result(CommandResult.Status.LOOKED, command);
     }
     
     /** 
@@ -300,61 +863,52 @@ public class Game
      * whether we really want to eat.
      * 
      * @param command The command to be processed
+     * @return The result of the command
      */
-    private void eat(Command command) {
+    private CommandResult eat(Command command) {
         if (command.hasSecondWord()) {
-            System.out.println("Eat what?");
-            return;
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
         }
 
-        if (pickedItem == null) {
-            System.out.println("You are not holding anything to eat.");
-            return;
+        if (inventory.isEmpty()) {
+            return result(CommandResult.Status.NOTHING_TO_EAT, command);
         }
 
-        if (pickedItem.getName().equals("cookie")) {
-            System.out.println("You ate the cookie! You can now pick up items. (5 at most)");
+        Item cookie = inventory.remove("cookie"); // the cookie taken last
+        if (cookie != null) {
             hasEaten = true;
             itemsPickedUpSinceEating = 0; // Reset the counter
-            pickedItem = null; // Remove the cookie from the player's hand
-        } else {
-            System.out.println("You can only eat a cookie.");
+            publish(GameEvent.Type.ATE, cookie);
+            return result(CommandResult.Status.ATE, command, cookie);
         }
+        return result(CommandResult.Status.NOT_EDIBLE, command, inventory.getLast());
     }
     
     /** 
      * "Back" was entered. Check the rest of the command to see
-     * whether we really quit the game.
+     * whether we really want to go back.
      * 
      * @param command The command to be processed
+     * @return The result of the command
      */
-    private void back(Command command) 
+    private CommandResult back(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Back what?");
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
         }
-        else {
-            // go back to the previous room, if possible
-            if (previousRoom==null) {
-                System.out.println("No room to go back to.");
-            } else {
-                // go back and swap previous and current rooms,
-                // and put current room on previous room stack
-                Room temp = currentRoom;
-                currentRoom = previousRoom;
-                previousRoom = temp;
-                previousRoomStack.push(temp);
-                // and print description
-                System.out.println(currentRoom.getLongDescription());
-            }
-            
-            // output player item holding status
-            if (pickedItem != null){    
-                System.out.println("\nPlayer is holding " + pickedItem.getName());
-            }else{
-                System.out.println("\nPlayer is not holding anything");
-            }
+
+        // go back to the previous room, if possible
+        if (previousRoom==null) {
+            return result(CommandResult.Status.NO_PREVIOUS_ROOM, command);
         }
+        // go back and swap previous and current rooms,
+        // and put current room on previous room stack
+        Room temp = currentRoom;
+        currentRoom = previousRoom;
+        previousRoom = temp;
+        previousRoomStack.push(temp.getId());
+        publish(GameEvent.Type.ENTERED_ROOM, null);
+        return result(CommandResult.Status.MOVED, command);
     }
     
     /** 
@@ -362,184 +916,462 @@ public class Game
      * whether we really want to stackBack.
      * 
      * @param command The command to be processed
+     * @return The result of the command
      */
-    private void stackBack(Command command) 
+    private CommandResult stackBack(Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("StackBack what?");
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
         }
-        else {
-            // step back one room in our stack of rooms history, if possible
-            if (previousRoomStack.isEmpty()) {
-                System.out.println("No room to go stack back to.");
-            } else {
-                // current room becomes previous room, and
-                // current room is taken from the top of the stack
-                previousRoom = currentRoom;
-                currentRoom = previousRoomStack.pop();
-                // and print description
-                System.out.println(currentRoom.getLongDescription());
-            }
-            
-            // output player item holding status
-            if (pickedItem != null){    
-                System.out.println("\nPlayer is holding " + pickedItem.getName());
-            }else{
-                System.out.println("\nPlayer is not holding anything");
-            }
+
+        // step back one room in our stack of rooms history, if possible
+        if (previousRoomStack.isEmpty()) {
+            return result(CommandResult.Status.NO_STACKED_ROOM, command);
         }
+        // current room becomes previous room, and
+        // current room is taken from the top of the stack
+        previousRoom = currentRoom;
+        currentRoom = world.getRoom(previousRoomStack.pop());
+        publish(GameEvent.Type.ENTERED_ROOM, null);
+        return result(CommandResult.Status.MOVED, command);
     }
     
     /**
-     * take allows the player to take an item from the current room.
+     * take allows the player to take an item, or all items it can, from
+     * the current room, as long as they fit in the inventory.
      * 
      * @param command The command to be processed
+     * @return The result of the command
      */
-    private void take(Command command)
+    private CommandResult take(Command command)
     {
         if(!command.hasSecondWord()){
-            System.out.println("take what?");
-            return;
-        }
-        
-        // Check if the player is already holding something
-        if (pickedItem != null) {
-            System.out.println("You are already holding something. Drop it first.");
-            return;
+            return result(CommandResult.Status.MISSING_SECOND_WORD, command);
         }
         
         String itemName = command.getSecondWord();
-        
-        // Check if the player is trying to pick up a cookie
-        if (itemName.equals("cookie")) {
+        if (itemName.equals("all")) {
+            return takeAll(command);
+        }
 
-            pickedItem = currentRoom.removeItem(itemName);
-            if (pickedItem == null) {
-                System.out.println("There is no cookie in this room.");
-                return;
-            }
+        // a cookie can always be taken; other items only after eating
+        CommandResult.Status refused = mayTake(itemName);
+        if (refused != null) {
+            return result(refused, command);
+        }
 
-            System.out.println("You picked up a cookie.");
-            return;
+        CommandResult.Status missing = itemName.equals("cookie") ? CommandResult.Status.NO_COOKIE
+                                                                 : CommandResult.Status.ITEM_NOT_FOUND;
+        Item item = currentRoom.getItem(itemName);
+        if (item == null) {
+            return result(missing, command);
         }
+        if (!inventory.fits(item)) {
+            return result(CommandResult.Status.TOO_HEAVY, command, item, weightCarried());
+        }
+        Item taken = takeFromRoom(itemName);
+        if (taken == null) {
+            return result(missing, command); // another player was quicker
+        }
+        return result(CommandResult.Status.TOOK, command, taken);
+    }
 
-        // If the player hasn't eaten a cookie, they can't pick up other items
-        if (!hasEaten) {
-            System.out.println("You need to eat a cookie before you can pick up other items.");
-            return;
+    /**
+     * Take every item of the current room that may be taken and fits in
+     * the inventory, in the order they lie in the room.
+     * 
+     * @param command The command to be processed
+     * @return The result of the command
+     */
+    private CommandResult takeAll(Command command)
+    {
+        StringBuilder names = new StringBuilder();
+        for (Item item : currentRoom.getItemArray()) {
+            if (mayTake(item.getName()) == null && inventory.fits(item)
+                    && takeFromRoom(item.getName()) != null) {
+                if (names.length() > 0) {
+                    names.append(", ");
+                }
+                names.append(item.getName());
+            }
+        }
+        if (names.length() == 0) {
+            return result(CommandResult.Status.NOTHING_TO_TAKE, command);
         }
+        return result(CommandResult.Status.TOOK_ALL, command, names.toString());
+    }
 
-        // If the player has already picked up 5 items since eating a cookie, they need to eat another cookie
+    /**
+     * Check the cookie rule: a cookie can always be taken, other items
+     * only after eating a cookie, and at most 5 of them per cookie.
+     * 
+     * @param itemName The name of the item
+     * @return The status refusing the item, or null if it may be taken
+     */
+    private CommandResult.Status mayTake(String itemName)
+    {
+        if (itemName.equals("cookie")) {
+            return null;
+        }
+        if (!hasEaten) {
+            return CommandResult.Status.NOT_EATEN;
+        }
         if (itemsPickedUpSinceEating >= 5) {
-            System.out.println("You are hungry again! Find and eat a cookie to pick up more items.");
-            return;
+            return CommandResult.Status.HUNGRY;
         }
+        return null;
+    }
 
-        // Try to pick up the item
-        pickedItem = currentRoom.removeItem(itemName);
-        if (pickedItem == null) {
-            System.out.println("That item is not in the room.");
-            return;
+    /**
+     * Move an item from the current room into the inventory, counting it
+     * against the cookie rule unless it is a cookie.
+     * 
+     * @param itemName The name of the item
+     * @return The item, or null if it is no longer in the room or does not fit
+     */
+    private Item takeFromRoom(String itemName)
+    {
+        Item item = currentRoom.removeItem(itemName);
+        if (item == null) {
+            return null;
         }
+        if (!inventory.add(item)) {
+            currentRoom.addItem(item); // another item of that name, heavier than the one looked at
+            return null;
+        }
+        if (!itemName.equals("cookie")) {
+            itemsPickedUpSinceEating++; // Increment the count of items picked up
+        }
+        publish(GameEvent.Type.TOOK, item);
+        return item;
+    }
 
-        System.out.println("You picked up " + pickedItem.getName());
-        itemsPickedUpSinceEating++; // Increment the count of items picked up
+    /**
+     * @return The weight carried and the capacity, e.g. "7.5 of 25.0 kg"
+     */
+    private String weightCarried()
+    {
+        return String.format("%.1f of %.1f kg", inventory.getWeight(), inventory.getCapacity());
     }
         
     /**
-     * Drops the currently held item into the current room.
+     * Drops an item (the one taken last, unless one is named), or all
+     * items, into the current room.
      * 
      * @param command The command to be processed
+     * @return The result of the command
      */
-    private void drop(Command command)
+    private CommandResult drop(Command command)
     {
-        if(command.hasSecondWord()){
-            System.out.println("drop what?");
-            return;
+        if(inventory.isEmpty()){
+            return result(CommandResult.Status.NOT_HOLDING, command);
         }
-        
-        if(this.pickedItem == null){
-            System.out.println("You are not holding anything.");
-            return;
+
+        if (!command.hasSecondWord()) {
+            return dropItem(command, inventory.removeLast());
         }
-        
-        currentRoom.addItem(pickedItem);
-        System.out.println("You dropped " + pickedItem.getName());
-        pickedItem = null;
+        String itemName = command.getSecondWord();
+        if (itemName.equals("all")) {
+            StringBuilder names = new StringBuilder();
+            for (Item dropped : inventory.removeAll()) {
+                currentRoom.addItem(dropped);
+                publish(GameEvent.Type.DROPPED, dropped);
+                if (names.length() > 0) {
+                    names.append(", ");
+                }
+                names.append(dropped.getName());
+            }
+            return result(CommandResult.Status.DROPPED_ALL, command, names.toString());
+        }
+        Item dropped = inventory.remove(itemName);
+        if (dropped == null) {
+            return result(CommandResult.Status.NOT_CARRYING, command, itemName);
+        }
+        return dropItem(command, dropped);
+    }
+
+    /**
+     * Put an item taken out of the inventory into the current room.
+     * 
+     * @param command The command being processed
+     * @param dropped The item
+     * @return The result of the command
+     */
+    private CommandResult dropItem(Command command, Item dropped)
+    {
+        currentRoom.addItem(dropped);
+        publish(GameEvent.Type.DROPPED, dropped);
+        return result(CommandResult.Status.DROPPED, command, dropped);
+    }
+
+    /**
+     * "Inventory" was entered. List the items the player carries and
+     * their weight.
+     * 
+     * @param command The command to be processed
+     * @return The result of the command
+     */
+    private CommandResult inventory(Command command)
+    {
+        if (command.hasSecondWord()) {
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
+        }
+        return result(CommandResult.Status.INVENTORY, command, weightCarried());
     }
     
     /**
      * Charges the beamer in the current room.  
      *  
      * @param command The command to be processed.
+     * @return The result of the command
      */
-    private void charge(Command command){
+    private CommandResult charge(Command command){
         
         if (command.hasSecondWord()) 
         {
-            System.out.println("Charge what?");
-            return;
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
         }
     
-        if (pickedItem == null) 
+        if (inventory.isEmpty()) 
         {
-            System.out.println("You are not holding anything.");
-            return;
+            return result(CommandResult.Status.NOT_HOLDING, command);
         }
     
-        if (pickedItem.getClass() == Beamer.class)   //check if pickedItem is a Beamer
+        Beamer beamer = inventory.findLast(Beamer.class); // the beamer taken last, if any
+        if (beamer != null)
         {
-            Beamer beamer = (Beamer) pickedItem; // Cast to Beamer to apply Beamer methods
-    
-            if (beamer.getIsCharged()) 
+            if (!beamer.charge(currentRoom)) 
             { 
-                System.out.println("The beamer is already charged.");
-            } else 
-            {
-                beamer.charge(currentRoom);  
-                System.out.println("The beamer has been charged!");
+                return result(CommandResult.Status.ALREADY_CHARGED, command, beamer);
             }
-        } else 
-        {
-            System.out.println("You must be holding a beamer to charge it.");
+            publish(GameEvent.Type.CHARGED, beamer);
+            return result(CommandResult.Status.CHARGED, command, beamer);
         }
+        return result(CommandResult.Status.NOT_A_BEAMER, command, inventory.getLast());
     }
     
     /**
      * Fires the beamer, transporting the player to the charged room. 
      *  
      * @param command The command to be processed.
+     * @return The result of the command
      */
-    private void fire(Command command) {
+    private CommandResult fire(Command command) {
         if (command.hasSecondWord()) {
-            System.out.println("Fire what?");
-            return;
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
         }
 
-        if (pickedItem == null) {
-            System.out.println("You are not holding anything.");
-            return;
+        if (inventory.isEmpty()) {
+            return result(CommandResult.Status.NOT_HOLDING, command);
         }
 
-        if (pickedItem.getClass() == Beamer.class) //check if pickedItem is a Beamer
+        Beamer beamer = inventory.findLast(Beamer.class); // the beamer taken last, if any
+        if (beamer != null)
         {
-            Beamer beamer = (Beamer) pickedItem; // Cast to Beamer to apply Beamer methods
             Room destination = beamer.fire();
-            if (destination != null) 
-            {
-                System.out.println("Beamer fired! You are transported to " + destination.getShortDescription());
-                previousRoom = currentRoom; // Store the current room as the previous room
-                currentRoom = destination; // Move to the charged room
-                System.out.println(currentRoom.getLongDescription());
-            } else 
+            if (destination == null) 
             {
-                System.out.println("The beamer is not charged.");
+                return result(CommandResult.Status.NOT_CHARGED, command, beamer);
             }
-        } else 
-        {
-            System.out.println("You must be holding a beamer to fire it.");
+            previousRoom = currentRoom; // Store the current room as the previous room
+            currentRoom = destination; // Move to the charged room
+            publish(GameEvent.Type.FIRED, beamer);
+            publish(GameEvent.Type.ENTERED_ROOM, null);
+            return result(CommandResult.Status.FIRED, command, beamer);
         }
+        return result(CommandResult.Status.NOT_A_BEAMER, command, inventory.getLast());
     }
     
+    /**
+     * "Save" was entered. Save the game under the given name.
+     *  
+     * @param command The command to be processed.
+     * @return The result of the command
+     */
+    private CommandResult save(Command command) {
+        if (!command.hasSecondWord()) {
+            return result(CommandResult.Status.MISSING_SECOND_WORD, command);
+        }
+        if (world.isShared()) {
+            return result(CommandResult.Status.SAVE_FAILED, command, "the world is shared with other players");
+        }
+
+        String name = command.getSecondWord();
+        Path file = saveFile(name);
+        if (file == null) {
+            return result(CommandResult.Status.SAVE_FAILED, command,
+                          "names may only contain letters, digits, '-' and '_'");
+        }
+        try {
+            if (!maySave(file)) {
+                return result(CommandResult.Status.SAVE_FAILED, command,
+                              "at most " + MAX_SAVES + " games can be saved; save over one of them");
+            }
+            try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(file))) {
+                save(output);
+            }
+        }
+        catch (IOException e) {
+            return result(CommandResult.Status.SAVE_FAILED, command, e.getMessage());
+        }
+        return result(CommandResult.Status.SAVED, command, name);
+    }
     
+    /**
+     * "Load" was entered. Restore the game saved under the given name.
+     *  
+     * @param command The command to be processed.
+     * @return The result of the command
+     */
+    private CommandResult load(Command command) {
+        if (!command.hasSecondWord()) {
+            return result(CommandResult.Status.MISSING_SECOND_WORD, command);
+        }
+        if (world.isShared()) {
+            return result(CommandResult.Status.LOAD_FAILED, command, "the world is shared with other players");
+        }
+
+        String name = command.getSecondWord();
+        Path file = saveFile(name);
+        if (file == null || !Files.exists(file)) {
+            return result(CommandResult.Status.LOAD_FAILED, command, "there is no saved game " + name);
+        }
+        byte[] snapshot;
+        try {
+            if (Files.size(file) > CommandJournal.MAX_SNAPSHOT_SIZE) {
+                return result(CommandResult.Status.LOAD_FAILED, command, "the saved game is too large");
+            }
+            snapshot = Files.readAllBytes(file);
+        }
+        catch (IOException e) {
+            return result(CommandResult.Status.LOAD_FAILED, command, e.getMessage());
+        }
+
+        // the journal gets what was loaded, since the file may be saved over later
+        commandSequence++;
+        if (journal != null) {
+            try {
+                journal.appendSnapshot(sessionId, commandSequence, snapshot);
+            }
+            catch (IOException e) {
+                System.err.println("journal: " + e.getMessage());
+            }
+        }
+        try {
+            loadSnapshot(snapshot);
+        }
+        catch (IOException e) {
+            return result(CommandResult.Status.LOAD_FAILED, command, e.getMessage());
+        }
+        return result(CommandResult.Status.LOADED, command, name);
+    }
+
+    /**
+     * Restore a saved game, keeping the number of commands executed:
+     * commands keep their numbers in the journal, whatever game is loaded.
+     * 
+     * @param snapshot The saved game
+     * @throws IOException If the snapshot does not hold a game saved in this world
+     */
+    private void loadSnapshot(byte[] snapshot) throws IOException
+    {
+        long sequence = commandSequence;
+        try {
+            load(new ByteArrayInputStream(snapshot));
+        }
+        finally {
+            commandSequence = sequence;
+        }
+    }
+
+    /**
+     * Load a saved game again while recovering this game from its journal.
+     * A snapshot that could not be loaded when the game was played does
+     * not change the game now either.
+     * 
+     * @param sequence The number of the load in the journal
+     * @param snapshot The saved game, as journaled
+     */
+    void replayLoad(long sequence, byte[] snapshot)
+    {
+        commandSequence = sequence;
+        try {
+            loadSnapshot(snapshot);
+        }
+        catch (IOException e) {
+            // it failed in the same way when it was played
+        }
+    }
+    
+    /**
+     * "Route" was entered. Find the shortest way from the current room to
+     * the given room, given by its id or a word of its description.
+     *  
+     * @param command The command to be processed.
+     * @return The result of the command
+     */
+    private CommandResult route(Command command) {
+        if (!command.hasSecondWord()) {
+            return result(CommandResult.Status.MISSING_SECOND_WORD, command);
+        }
+
+        String name = command.getSecondWord();
+        int target = findRoom(name);
+        if (target == WordIndex.AMBIGUOUS) {
+            return result(CommandResult.Status.WHICH_ROOM, command, name);
+        }
+        if (target < 0) {
+            return result(CommandResult.Status.NO_SUCH_ROOM, command, name);
+        }
+        Direction[] route = world.getRouteIndex().route(currentRoom.getId(), target);
+        if (route == null) {
+            return result(CommandResult.Status.NO_ROUTE, command);
+        }
+        StringBuilder directions = new StringBuilder();
+        for (Direction direction : route) {
+            if (directions.length() > 0) {
+                directions.append(' ');
+            }
+            directions.append(direction);
+        }
+        return result(CommandResult.Status.ROUTE, command, directions.toString());
+    }
+
+    /**
+     * "Stats" was entered. Report how many commands all games executed
+     * and how long they took (see CommandMetrics).
+     *  
+     * @param command The command to be processed.
+     * @return The result of the command
+     */
+    private CommandResult stats(Command command) {
+        if (command.hasSecondWord()) {
+            return result(CommandResult.Status.UNEXPECTED_SECOND_WORD, command);
+        }
+        return result(CommandResult.Status.STATS, command, METRICS.getReport());
+    }
+
+    /**
+     * Find a room by its id, or else by a name in its description
+     * (e.g. "pub"). A name stands for the only room whose description
+     * holds it (see WordIndex).
+     * 
+     * @param name The id of the room, or a name in its description
+     * @return The id of the room, WordIndex.NONE if there is no such room,
+     *         or WordIndex.AMBIGUOUS if several rooms have that name
+     */
+    private int findRoom(String name)
+    {
+        int roomCount = world.getRoomCount();
+        if (name.chars().allMatch(Character::isDigit)) {
+            try {
+                int id = Integer.parseInt(name);
+                return id < roomCount ? id : WordIndex.NONE;
+            }
+            catch (NumberFormatException e) {
+                return WordIndex.NONE; // too many digits
+            }
+        }
+        return world.getWordIndex().find(name);
+    }
 }
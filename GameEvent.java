@@ -0,0 +1,100 @@
+/**
+ * A GameEvent tells that something changed in a game: a player entered a
+ * room, took, dropped or ate an item, or charged or fired a beamer; or an
+ * item was added to or removed from a room (by any player, or when the
+ * world was built). Events are published on the EventBus of the world
+ * they happen in.
+ *
+ * A GameEvent is immutable and holds only ids and names, never rooms or
+ * items, so a subscriber can keep it as long as it likes.
+ *
+ * @author Noor Karabala
+ */
+public class GameEvent
+{
+    /**
+     * What happened.
+     */
+    public enum Type
+    {
+        ENTERED_ROOM,   // a player went, went back, or was beamed to the room
+        TOOK,           // a player took the item
+        DROPPED,        // a player dropped the item
+        ATE,            // a player ate the item
+        ITEM_ADDED,     // the item was added to the room
+        ITEM_REMOVED,   // the item was removed from the room
+        CHARGED,        // the beamer was charged in the room
+        FIRED           // the beamer was fired, sending its holder to the room
+    }
+
+    private Type type;
+    private long sessionId;
+    private int roomId;
+    private String itemName;
+    private long timeNanos;
+
+    /**
+     * Create an event that happened now.
+     *
+     * @param type What happened
+     * @param sessionId The session id of the player's game, or 0 if no player is known
+     * @param roomId The id of the room it happened in (or was about)
+     * @param itemName The name of the item it was about, or null
+     */
+    public GameEvent(Type type, long sessionId, int roomId, String itemName)
+    {
+        this.type = type;
+        this.sessionId = sessionId;
+        this.roomId = roomId;
+        this.itemName = itemName;
+        this.timeNanos = System.nanoTime();
+    }
+
+    /**
+     * @return What happened
+     */
+    public Type getType()
+    {
+        return type;
+    }
+
+    /**
+     * @return The session id of the player's game, or 0 if no player is known
+     */
+    public long getSessionId()
+    {
+        return sessionId;
+    }
+
+    /**
+     * @return The id of the room the event happened in (or was about)
+     */
+    public int getRoomId()
+    {
+        return roomId;
+    }
+
+    /**
+     * @return The name of the item the event was about, or null
+     */
+    public String getItemName()
+    {
+        return itemName;
+    }
+
+    /**
+     * @return When the event happened, as given by System.nanoTime()
+     */
+    public long getTimeNanos()
+    {
+        return timeNanos;
+    }
+
+    /**
+     * @return The event in a readable form, e.g. for an audit log
+     */
+    public String toString()
+    {
+        return type + " session " + sessionId + " room " + roomId + (itemName == null ? "" : " item " + itemName);
+    }
+}
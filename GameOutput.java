@@ -0,0 +1,187 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * GameOutput collects the text a game prints and passes it to an
+ * OutputSink. Text is encoded as UTF-8 straight into one reusable byte
+ * array as it is printed; nothing reaches the sink until the response is
+ * complete, so printing a response of several lines costs one write and
+ * one flush of the sink.
+ *
+ * A game ends every response with endResponse(). Normally this sends the
+ * response at once. With a batch size, responses are collected until at
+ * least that many bytes are waiting (or flush() is called), e.g. while a
+ * script is piped into the game and nobody waits for each answer.
+ *
+ * Like a PrintStream, a GameOutput does not throw when its sink fails;
+ * checkError() tells whether it did. A GameOutput is used by one game
+ * and is not thread-safe.
+ *
+ * @author Noor Karabala
+ */
+public class GameOutput
+{
+    // an array that grew beyond this size is replaced after a flush
+    private static final int MAX_IDLE_SIZE = 64 * 1024;
+
+    private OutputSink sink;
+    private byte[] bytes = new byte[1024];
+    private int length;
+    private int batchSize;
+    private boolean failed;
+
+    /**
+     * Create an output sending every response to a sink.
+     *
+     * @param sink The sink
+     */
+    public GameOutput(OutputSink sink)
+    {
+        this.sink = sink;
+    }
+
+    /**
+     * @return The sink the output is sent to
+     */
+    public OutputSink getSink()
+    {
+        return sink;
+    }
+
+    /**
+     * Collect responses until at least this many bytes are waiting.
+     *
+     * @param batchSize The number of bytes, or 0 to send every response at once
+     */
+    public void setBatchSize(int batchSize)
+    {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Print text.
+     *
+     * @param text The text
+     */
+    public void print(CharSequence text)
+    {
+        int count = text.length();
+        ensureSpace(count);
+        for (int i = 0; i < count; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes[length++] = (byte) c;
+            }
+            else {
+                i = encode(text, i);
+            }
+        }
+    }
+
+    /**
+     * Print text and end the line.
+     *
+     * @param text The text
+     */
+    public void println(CharSequence text)
+    {
+        print(text);
+        println();
+    }
+
+    /**
+     * End the line.
+     */
+    public void println()
+    {
+        ensureSpace(1);
+        bytes[length++] = '\n';
+    }
+
+    /**
+     * End a response: send everything printed, unless responses are
+     * collected and fewer than the batch size bytes are waiting.
+     */
+    public void endResponse()
+    {
+        if (length >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Send everything printed to the sink and flush the sink.
+     */
+    public void flush()
+    {
+        try {
+            if (length > 0) {
+                sink.write(bytes, 0, length);
+            }
+            sink.flush();
+        }
+        catch (IOException e) {
+            failed = true;
+        }
+        length = 0;
+        if (bytes.length > MAX_IDLE_SIZE) {
+            bytes = new byte[1024];
+        }
+    }
+
+    /**
+     * @return true if the sink ever failed
+     */
+    public boolean checkError()
+    {
+        return failed;
+    }
+
+    /**
+     * Encode a character beyond ASCII (and, for a surrogate pair, the
+     * character after it).
+     *
+     * @param text The text
+     * @param i The index of the character
+     * @return The index of the last character encoded
+     */
+    private int encode(CharSequence text, int i)
+    {
+        char c = text.charAt(i);
+        ensureSpace(text.length() - i); // this character, and the rest as ASCII
+        if (c < 0x800) {
+            bytes[length++] = (byte) (0xC0 | (c >> 6));
+            bytes[length++] = (byte) (0x80 | (c & 0x3F));
+            return i;
+        }
+        if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+            int codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+            bytes[length++] = (byte) (0xF0 | (codePoint >> 18));
+            bytes[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+            bytes[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+            bytes[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            return i + 1;
+        }
+        if (Character.isSurrogate(c)) {
+            bytes[length++] = '?'; // half of a pair
+            return i;
+        }
+        bytes[length++] = (byte) (0xE0 | (c >> 12));
+        bytes[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        bytes[length++] = (byte) (0x80 | (c & 0x3F));
+        return i;
+    }
+
+    /**
+     * Make room for at least "count" more bytes, plus a few for the
+     * characters beyond ASCII that are encoded one at a time.
+     *
+     * @param count The number of bytes
+     */
+    private void ensureSpace(int count)
+    {
+        if (length + count + 4 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count + 4));
+        }
+    }
+}
@@ -0,0 +1,287 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GameServer runs many games of Zuul in one program. Every session is a
+ * Game played on its own virtual thread, so a blocked session (waiting for
+ * its player to type) costs almost nothing. Every session has a world of
+ * its own, or all sessions play together in one shared world.
+ *
+ * Sessions can be started on any reader/stream pair (for example in-memory
+ * pipes), or the server can accept players over TCP with listen().
+ * Games are played on the campus, or in a world loaded from a world file;
+ * all sessions share the one read-only mapped file. Every session is given
+ * an id. With a command journal, its commands are journaled under that id,
+ * so sessions can be recovered after a crash. The events of all sessions
+ * are published on one EventBus, for achievements, analytics or auditing.
+ *
+ * To start a server:  java GameServer [-analyze] [-shared] [-nio] [port] [world file or -] [journal file]
+ *
+ * With -analyze, the world is checked with a WorldAnalyzer before the
+ * server starts, and the server does not start if a problem is found.
+ * With -nio, players are served by a TelnetServer (one selector thread
+ * for all connections) instead of a virtual thread per connection.
+ *
+ * @author Noor Karabala
+ */
+public class GameServer
+{
+    // the port used when none is given on the command line
+    private static final int DEFAULT_PORT = 4000;
+
+    // how often the journal is forced to disk
+    private static final long JOURNAL_FLUSH_MILLIS = 50;
+
+    private ExecutorService sessions;
+
+    // the world file the games are played in, or null for the campus
+    private WorldFile worldFile;
+
+    // the world all games are played in, or null if every game has its own
+    private World sharedWorld;
+
+    // the journal the commands of all sessions are written to, or null
+    private CommandJournal journal;
+
+    // where the events of all sessions are published
+    private EventBus events;
+
+    // the id of the next session; ids are never given twice, not even by
+    // earlier runs, as sessions are known by them in the journal and saves
+    private AtomicLong nextSessionId = new AtomicLong(1);
+
+    /**
+     * Create a server with no sessions, playing on the campus.
+     */
+    public GameServer()
+    {
+        this(null);
+    }
+
+    /**
+     * Create a server with no sessions, playing in the given world.
+     *
+     * @param worldFile The world file the games are played in, or null for the campus
+     */
+    public GameServer(WorldFile worldFile)
+    {
+        this(worldFile, false);
+    }
+
+    /**
+     * Create a server with no sessions, playing in the given world.
+     *
+     * @param worldFile The world file the games are played in, or null for the campus
+     * @param shareWorld true if all games are played in one shared world
+     * @throws UncheckedIOException If the directory of saves cannot be read
+     */
+    public GameServer(WorldFile worldFile, boolean shareWorld)
+    {
+        try {
+            // ids with saves belong to sessions of earlier runs
+            nextSessionId.set(Game.getLastSavingSessionId() + 1);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.worldFile = worldFile;
+        if (shareWorld) {
+            sharedWorld = worldFile == null ? World.shared(Game.createRooms()) : World.shared(worldFile);
+        }
+        events = new EventBus();
+        if (sharedWorld != null) {
+            sharedWorld.setEventBus(events);
+        }
+        sessions = Executors.newVirtualThreadPerTaskExecutor();
+    }
+
+    /**
+     * Journal the commands of all sessions started from now on.
+     *
+     * @param journal The journal, or null to stop journaling new sessions
+     */
+    public void setJournal(CommandJournal journal)
+    {
+        if (journal != null) {
+            // ids already in the journal belong to sessions of earlier runs
+            nextSessionId.accumulateAndGet(journal.getLastSessionId() + 1, Math::max);
+        }
+        this.journal = journal;
+    }
+
+    /**
+     * @return The bus the events of all sessions are published on, e.g. to
+     *         subscribe achievements or an audit log
+     */
+    public EventBus getEventBus()
+    {
+        return events;
+    }
+
+    /**
+     * Create a new game, with a world of its own (or in the shared world).
+     * Used by the sessions of this server and by a TelnetServer in front of it.
+     *
+     * @param output The sink the game writes to
+     * @return The new game
+     * @throws IOException If the game cannot be added to the journal
+     */
+    Game newGame(OutputSink output) throws IOException
+    {
+        Game game;
+        if (sharedWorld != null) {
+            game = new Game(output, sharedWorld);
+        }
+        else {
+            World world = worldFile == null ? Game.createRooms() : new World(worldFile);
+            world.setEventBus(events);
+            game = new Game(output, world);
+        }
+        // the metrics of the whole server are for its operators, over JMX
+        game.setStatsAllowed(false);
+        long sessionId = nextSessionId.getAndIncrement();
+        if (journal != null) {
+            game.setJournal(journal, sessionId);
+        }
+        else {
+            game.setSessionId(sessionId);
+        }
+        return game;
+    }
+
+    /**
+     * Start a new game session. The session reads its commands from
+     * "input" and writes its output to "output" until the player quits
+     * or the input ends.
+     *
+     * @param input The reader the commands are read from
+     * @param output The stream the game writes to
+     * @return A Future that completes when the session ends
+     */
+    public Future<?> startSession(BufferedReader input, PrintStream output)
+    {
+        return sessions.submit(() -> {
+            Game game = newGame(OutputSink.of(output));
+            game.play(input);
+            return null;
+        });
+    }
+
+    /**
+     * Accept players on the given port, starting a new session for
+     * every connection. This method does not return until the server
+     * socket is closed.
+     *
+     * @param port The TCP port to listen on
+     * @throws IOException If the port cannot be opened
+     */
+    public void listen(int port) throws IOException
+    {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                sessions.submit(() -> {
+                    serve(socket);
+                    return null;
+                });
+            }
+        }
+    }
+
+    /**
+     * Play one game over a connected socket and close it afterwards.
+     *
+     * @param socket The player's connection
+     * @throws IOException If the connection fails
+     */
+    private void serve(Socket socket) throws IOException
+    {
+        try (socket) {
+            BufferedReader input = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Game game = newGame(OutputSink.of(socket.getOutputStream()));
+            game.play(input);
+        }
+    }
+
+    /**
+     * Stop accepting new sessions. Running sessions are left to finish.
+     */
+    public void shutdown()
+    {
+        sessions.shutdown();
+    }
+
+    /**
+     * Start a server on the port given as the first argument, playing in
+     * the world file given as the second argument ("-" for the campus) and
+     * journaling to the file given as the third argument.
+     *
+     * @param args The command line arguments: [-analyze] [-shared] [-nio] [port] [world file or -] [journal file]
+     * @throws IOException If the port, the world file or the journal cannot be opened
+     */
+    public static void main(String[] args) throws IOException
+    {
+        boolean analyze = false;
+        boolean shared = false;
+        boolean nio = false;
+        while (args.length > 0 && (args[0].equals("-analyze") || args[0].equals("-shared") || args[0].equals("-nio"))) {
+            analyze |= args[0].equals("-analyze");
+            shared |= args[0].equals("-shared");
+            nio |= args[0].equals("-nio");
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int port = DEFAULT_PORT;
+        if (args.length > 0) {
+            port = Integer.parseInt(args[0]);
+        }
+        WorldFile worldFile = null;
+        if (args.length > 1 && !args[1].equals("-")) {
+            worldFile = WorldFile.open(Paths.get(args[1]));
+        }
+        if (analyze) {
+            World world = worldFile == null ? Game.createRooms() : new World(worldFile);
+            WorldAnalyzer.Report report = new WorldAnalyzer(world).analyze();
+            System.out.println(report);
+            if (!report.isClean()) {
+                System.out.println("Not starting: the world has problems.");
+                return;
+            }
+        }
+        GameServer server = new GameServer(worldFile, shared);
+        if (args.length > 2) {
+            CommandJournal journal = new CommandJournal(Paths.get(args[2]), JOURNAL_FLUSH_MILLIS);
+            server.setJournal(journal);
+            // the server runs until it is stopped; write what the last interval appended
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    journal.close();
+                }
+                catch (IOException e) {
+                    System.err.println("journal: " + e.getMessage());
+                }
+            }, "journal-close"));
+        }
+        System.out.println("Zuul server listening on port " + port);
+        if (nio) {
+            TelnetServer telnet = new TelnetServer(server);
+            telnet.bind(port);
+            telnet.run();
+        }
+        else {
+            server.listen(port);
+        }
+    }
+}
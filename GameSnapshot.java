@@ -0,0 +1,416 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A GameSnapshot is the state of a game at one moment: where the player
+ * is and has been, what they carry and have eaten, and the items of the
+ * rooms (with the charge of every beamer). It can be written to a compact
+ * binary form and read back, so a game can be saved to disk and restored.
+ *
+ * Rooms are written as their ids in the game's world, and items as an
+ * index into a table of the item types used. A snapshot can only be
+ * restored into a game on the same world (the campus, or the same world
+ * file).
+ *
+ *     int magic, int version, int room count of the world
+ *     int current room id, int previous room id (-1 if none)
+ *     int history size, int room id per entry (oldest first)
+ *     boolean has eaten, int items picked up since eating
+ *     long random state, long command sequence
+ *     int item type count, (string name, string description, double weight) per type
+ *     int held item count, item per held item (see below; version 2 had one item)
+ *     int room count, (int room id, int item count, item per item) per room
+ *     item: byte kind (NONE, ITEM or BEAMER), int type index,
+ *           for a beamer: int charging room id (-1 if not charged)
+ *
+ * @author Noor Karabala
+ */
+public class GameSnapshot
+{
+    public static final int MAGIC = 0x5A534156;   // "ZSAV"
+    public static final int VERSION = 3;
+
+    // kinds of items
+    private static final byte NONE = 0;
+    private static final byte ITEM = 1;
+    private static final byte BEAMER = 2;
+
+    // the most item types, held items and items in one room a snapshot may have
+    private static final int MAX_ITEMS = 1 << 16;
+
+    // the most history entries read before the array is grown; a history
+    // with a spill file has no limit, so its array grows as entries are read
+    private static final int HISTORY_CHUNK = 1 << 16;
+
+    private int roomCount;
+    private int currentRoomId;
+    private int previousRoomId;
+    private int[] history;
+    private boolean hasEaten;
+    private int itemsPickedUpSinceEating;
+    private long randomState;
+    private long commandSequence;
+    private Item[] heldItems;
+    private int[] roomIds;
+    private ItemStore[] roomItems;
+
+    /**
+     * Create a snapshot of a game's state. The snapshot refers to the
+     * items of the rooms, so it has to be written before the game goes on.
+     *
+     * @param world The world of the game
+     * @param currentRoomId The id of the room the player is in
+     * @param previousRoomId The id of the previous room, or -1
+     * @param history The ids of the rooms the player can step back to, oldest first
+     * @param heldItems The items the player carries, in the order they were taken
+     * @param hasEaten true if the player has eaten a cookie
+     * @param itemsPickedUpSinceEating The number of items picked up since eating
+     * @param randomState The state of the game's random number generator
+     * @param commandSequence The number of journaled commands the game has executed
+     */
+    public GameSnapshot(World world, int currentRoomId, int previousRoomId, int[] history,
+                        Item[] heldItems, boolean hasEaten, int itemsPickedUpSinceEating,
+                        long randomState, long commandSequence)
+    {
+        this.roomCount = world.getRoomCount();
+        this.currentRoomId = currentRoomId;
+        this.previousRoomId = previousRoomId;
+        this.history = history;
+        this.heldItems = heldItems;
+        this.hasEaten = hasEaten;
+        this.itemsPickedUpSinceEating = itemsPickedUpSinceEating;
+        this.randomState = randomState;
+        this.commandSequence = commandSequence;
+        roomIds = world.getChangedRoomIds();
+        roomItems = new ItemStore[roomIds.length];
+        for (int i = 0; i < roomIds.length; i++) {
+            roomItems[i] = world.getRoomItems(roomIds[i]);
+        }
+    }
+
+    /**
+     * Create an empty snapshot, to be read.
+     */
+    private GameSnapshot()
+    {
+    }
+
+    /**
+     * @return The id of the room the player is in
+     */
+    public int getCurrentRoomId()
+    {
+        return currentRoomId;
+    }
+
+    /**
+     * @return The id of the previous room, or -1 if there is none
+     */
+    public int getPreviousRoomId()
+    {
+        return previousRoomId;
+    }
+
+    /**
+     * @return The ids of the rooms the player can step back to, oldest first
+     */
+    public int[] getHistory()
+    {
+        return history;
+    }
+
+    /**
+     * @return The items the player carries, in the order they were taken
+     */
+    public Item[] getHeldItems()
+    {
+        return heldItems;
+    }
+
+    /**
+     * @return true if the player has eaten a cookie
+     */
+    public boolean hasEaten()
+    {
+        return hasEaten;
+    }
+
+    /**
+     * @return The number of items picked up since eating a cookie
+     */
+    public int getItemsPickedUpSinceEating()
+    {
+        return itemsPickedUpSinceEating;
+    }
+
+    /**
+     * @return The state of the game's random number generator
+     */
+    public long getRandomState()
+    {
+        return randomState;
+    }
+
+    /**
+     * @return The number of journaled commands the game had executed
+     */
+    public long getCommandSequence()
+    {
+        return commandSequence;
+    }
+
+    /**
+     * Give the rooms of a world the items in this snapshot.
+     *
+     * @param world The world to restore, on which the snapshot was taken
+     */
+    public void restoreRooms(World world)
+    {
+        for (int i = 0; i < roomIds.length; i++) {
+            world.setRoomItems(roomIds[i], roomItems[i]);
+        }
+    }
+
+    /**
+     * Write this snapshot.
+     *
+     * @param out The stream to write to
+     * @throws IOException If the stream fails
+     */
+    public void writeTo(DataOutputStream out) throws IOException
+    {
+        // the items are written first, to find the item types used
+        HashMap<ItemType, Integer> typeIndexes = new HashMap<ItemType, Integer>();
+        List<ItemType> types = new ArrayList<ItemType>();
+        ByteArrayOutputStream itemBytes = new ByteArrayOutputStream();
+        DataOutputStream items = new DataOutputStream(itemBytes);
+        items.writeInt(heldItems.length);
+        for (Item item : heldItems) {
+            writeItem(items, item, typeIndexes, types);
+        }
+        items.writeInt(roomIds.length);
+        for (int i = 0; i < roomIds.length; i++) {
+            items.writeInt(roomIds[i]);
+            if (roomItems[i] == null) {
+                items.writeInt(0);
+                continue;
+            }
+            items.writeInt(roomItems[i].size());
+            for (Item item : roomItems[i]) {
+                writeItem(items, item, typeIndexes, types);
+            }
+        }
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(roomCount);
+        out.writeInt(currentRoomId);
+        out.writeInt(previousRoomId);
+        out.writeInt(history.length);
+        for (int id : history) {
+            out.writeInt(id);
+        }
+        out.writeBoolean(hasEaten);
+        out.writeInt(itemsPickedUpSinceEating);
+        out.writeLong(randomState);
+        out.writeLong(commandSequence);
+        out.writeInt(types.size());
+        for (ItemType type : types) {
+            out.writeUTF(type.getName());
+            out.writeUTF(type.getDescription());
+            out.writeDouble(type.getWeight());
+        }
+        itemBytes.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Write an item.
+     *
+     * @param out The stream to write to
+     * @param item The item, or null
+     * @param typeIndexes The indexes of the item types written so far
+     * @param types The item types written so far
+     * @throws IOException If the stream fails
+     */
+    private static void writeItem(DataOutputStream out, Item item,
+                                  HashMap<ItemType, Integer> typeIndexes, List<ItemType> types)
+        throws IOException
+    {
+        if (item == null) {
+            out.writeByte(NONE);
+            return;
+        }
+        Integer index = typeIndexes.get(item.getType());
+        if (index == null) {
+            index = types.size();
+            types.add(item.getType());
+            typeIndexes.put(item.getType(), index);
+        }
+        if (item instanceof Beamer) {
+            Room chargingRoom = ((Beamer) item).getChargingRoom();
+            out.writeByte(BEAMER);
+            out.writeInt(index);
+            out.writeInt(chargingRoom == null ? -1 : chargingRoom.getId());
+        }
+        else {
+            out.writeByte(ITEM);
+            out.writeInt(index);
+        }
+    }
+
+    /**
+     * Read a snapshot of a game on the given world. Every count read is
+     * checked before anything is allocated for it, so a damaged or hostile
+     * file fails with an IOException rather than running out of memory.
+     *
+     * @param in The stream to read from
+     * @param world The world of the game, used to find the rooms beamers are charged in
+     * @param maxHistory The most rooms the history of the game can hold
+     * @return The snapshot
+     * @throws IOException If the stream fails, or does not hold a snapshot of a game on this world
+     */
+    public static GameSnapshot readFrom(DataInputStream in, World world, int maxHistory) throws IOException
+    {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a saved game");
+        }
+        int version = in.readInt();
+        if (version != VERSION && version != 2) {
+            throw new IOException("saved by an unsupported version");
+        }
+        GameSnapshot snapshot = new GameSnapshot();
+        snapshot.roomCount = in.readInt();
+        if (snapshot.roomCount != world.getRoomCount()) {
+            throw new IOException("saved in a different world");
+        }
+        snapshot.currentRoomId = readRoomId(in, world, false);
+        snapshot.previousRoomId = readRoomId(in, world, true);
+        int historySize = readCount(in, maxHistory, "history");
+        snapshot.history = new int[Math.min(historySize, HISTORY_CHUNK)];
+        for (int i = 0; i < historySize; i++) {
+            if (i == snapshot.history.length) {
+                snapshot.history = Arrays.copyOf(snapshot.history,
+                                                 (int) Math.min(historySize, 2L * snapshot.history.length));
+            }
+            snapshot.history[i] = readRoomId(in, world, false);
+        }
+        snapshot.hasEaten = in.readBoolean();
+        snapshot.itemsPickedUpSinceEating = in.readInt();
+        snapshot.randomState = in.readLong();
+        snapshot.commandSequence = in.readLong();
+
+        ItemType[] types = new ItemType[readCount(in, MAX_ITEMS, "item type")];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = ItemType.of(in.readUTF(), in.readUTF(), in.readDouble());
+        }
+        if (version == 2) {
+            // a single held item, or none
+            Item held = readItem(in, world, types);
+            snapshot.heldItems = held == null ? new Item[0] : new Item[] { held };
+        }
+        else {
+            snapshot.heldItems = new Item[readCount(in, MAX_ITEMS, "held item")];
+            for (int i = 0; i < snapshot.heldItems.length; i++) {
+                snapshot.heldItems[i] = readItem(in, world, types);
+                if (snapshot.heldItems[i] == null) {
+                    throw new IOException("missing held item");
+                }
+            }
+        }
+
+        int rooms = readCount(in, world.getRoomCount(), "room");
+        snapshot.roomIds = new int[rooms];
+        snapshot.roomItems = new ItemStore[rooms];
+        for (int i = 0; i < rooms; i++) {
+            snapshot.roomIds[i] = readRoomId(in, world, false);
+            int itemCount = readCount(in, MAX_ITEMS, "item");
+            ItemStore items = new ItemStore();
+            for (int j = 0; j < itemCount; j++) {
+                Item item = readItem(in, world, types);
+                if (item == null) {
+                    throw new IOException("missing item in room " + snapshot.roomIds[i]);
+                }
+                items.add(item);
+            }
+            snapshot.roomItems[i] = items;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Read a count and check that it is not negative or too large.
+     *
+     * @param in The stream to read from
+     * @param max The largest count allowed
+     * @param what What is counted, for the message of the exception
+     * @return The count
+     * @throws IOException If the stream fails or the count is not valid
+     */
+    private static int readCount(DataInputStream in, int max, String what) throws IOException
+    {
+        int count = in.readInt();
+        if (count < 0 || count > max) {
+            throw new IOException("bad " + what + " count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Read a room id and check that the world has such a room.
+     *
+     * @param in The stream to read from
+     * @param world The world of the game
+     * @param noneAllowed true if -1 (no room) is allowed
+     * @return The room id
+     * @throws IOException If the stream fails or the id is not valid
+     */
+    private static int readRoomId(DataInputStream in, World world, boolean noneAllowed) throws IOException
+    {
+        int id = in.readInt();
+        if ((id == -1 && noneAllowed) || (id >= 0 && id < world.getRoomCount())) {
+            return id;
+        }
+        throw new IOException("no room " + id);
+    }
+
+    /**
+     * Read an item.
+     *
+     * @param in The stream to read from
+     * @param world The world of the game
+     * @param types The item types of the snapshot
+     * @return The item, or null if there was none
+     * @throws IOException If the stream fails or the item is not valid
+     */
+    private static Item readItem(DataInputStream in, World world, ItemType[] types) throws IOException
+    {
+        byte kind = in.readByte();
+        if (kind == NONE) {
+            return null;
+        }
+        int index = in.readInt();
+        if (index < 0 || index >= types.length) {
+            throw new IOException("no item type " + index);
+        }
+        ItemType type = types[index];
+        if (kind == ITEM) {
+            return new Item(type);
+        }
+        if (kind != BEAMER) {
+            throw new IOException("unknown item kind " + kind);
+        }
+        Beamer beamer = new Beamer(type);
+        int chargingRoomId = readRoomId(in, world, true);
+        if (chargingRoomId >= 0) {
+            beamer.setChargingRoom(world.getRoom(chargingRoomId));
+        }
+        return beamer;
+    }
+}
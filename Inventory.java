@@ -0,0 +1,243 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An Inventory holds the items a player carries, up to a total weight.
+ * The items are kept in the order they were taken, in a plain array that
+ * is only created when the first item is taken, so the inventories of
+ * many players who carry nothing cost almost nothing. The total weight is
+ * kept as a running sum of whole grams, so checking whether an item fits
+ * takes constant time and never drifts through rounding.
+ *
+ * @author Noor Karabala
+ */
+public class Inventory implements Iterable<Item>
+{
+    // the weight a player can carry unless given another capacity, in kilograms
+    public static final double DEFAULT_CAPACITY = 25;
+
+    private static final Item[] NO_ITEMS = new Item[0];
+
+    private Item[] items;
+    private int size;
+    private long weightGrams;
+    private long capacityGrams;
+
+    /**
+     * Create an empty inventory with the default capacity.
+     */
+    public Inventory()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty inventory.
+     *
+     * @param capacity The weight that can be carried, in kilograms
+     */
+    public Inventory(double capacity)
+    {
+        capacityGrams = grams(capacity);
+    }
+
+    /**
+     * @param item An item
+     * @return true if the item can be added without going over the capacity
+     */
+    public boolean fits(Item item)
+    {
+        return weightGrams + grams(item.getWeight()) <= capacityGrams;
+    }
+
+    /**
+     * Add an item, if it fits.
+     *
+     * @param item The item
+     * @return true if the item was added, false if it is too heavy
+     */
+    public boolean add(Item item)
+    {
+        if (!fits(item)) {
+            return false;
+        }
+        if (items == null) {
+            items = new Item[4];
+        }
+        else if (size == items.length) {
+            items = Arrays.copyOf(items, size * 2);
+        }
+        items[size++] = item;
+        weightGrams += grams(item.getWeight());
+        return true;
+    }
+
+    /**
+     * Remove the most recently taken item with the given name.
+     *
+     * @param name The name of the item
+     * @return The item, or null if there is none with that name
+     */
+    public Item remove(String name)
+    {
+        for (int i = size - 1; i >= 0; i--) {
+            if (items[i].getName().equals(name)) {
+                return removeAt(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remove the most recently taken item.
+     *
+     * @return The item, or null if the inventory is empty
+     */
+    public Item removeLast()
+    {
+        return size == 0 ? null : removeAt(size - 1);
+    }
+
+    /**
+     * Remove all items.
+     *
+     * @return The items, in the order they were taken
+     */
+    public Item[] removeAll()
+    {
+        Item[] removed = toArray();
+        items = null;
+        size = 0;
+        weightGrams = 0;
+        return removed;
+    }
+
+    /**
+     * Returns the most recently taken item of a kind, e.g. a Beamer.
+     *
+     * @param kind The class of the item
+     * @return The item, or null if there is none of that kind
+     */
+    public <T extends Item> T findLast(Class<T> kind)
+    {
+        for (int i = size - 1; i >= 0; i--) {
+            if (kind.isInstance(items[i])) {
+                return kind.cast(items[i]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name The name of an item
+     * @return true if an item with that name is carried
+     */
+    public boolean contains(String name)
+    {
+        for (int i = 0; i < size; i++) {
+            if (items[i].getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The most recently taken item, or null if the inventory is empty
+     */
+    public Item getLast()
+    {
+        return size == 0 ? null : items[size - 1];
+    }
+
+    /**
+     * @return The number of items carried
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return true if nothing is carried
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return The weight of the items carried, in kilograms
+     */
+    public double getWeight()
+    {
+        return weightGrams / 1000.0;
+    }
+
+    /**
+     * @return The weight that can be carried, in kilograms
+     */
+    public double getCapacity()
+    {
+        return capacityGrams / 1000.0;
+    }
+
+    /**
+     * @return The items carried, in the order they were taken
+     */
+    public Item[] toArray()
+    {
+        return size == 0 ? NO_ITEMS : Arrays.copyOf(items, size);
+    }
+
+    /**
+     * @return The items carried, in the order they were taken
+     */
+    public Iterator<Item> iterator()
+    {
+        return new Iterator<Item>() {
+            private int next;
+
+            public boolean hasNext()
+            {
+                return next < size;
+            }
+
+            public Item next()
+            {
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                return items[next++];
+            }
+        };
+    }
+
+    /**
+     * Remove the item at an index, keeping the order of the others.
+     *
+     * @param index The index
+     * @return The item
+     */
+    private Item removeAt(int index)
+    {
+        Item item = items[index];
+        System.arraycopy(items, index + 1, items, index, size - index - 1);
+        items[--size] = null;
+        weightGrams -= grams(item.getWeight());
+        if (size == 0) {
+            items = null; // an empty inventory holds no array
+        }
+        return item;
+    }
+
+    /**
+     * @param kilograms A weight
+     * @return The weight in whole grams
+     */
+    private static long grams(double kilograms)
+    {
+        return Math.round(kilograms * 1000);
+    }
+}
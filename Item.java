@@ -3,18 +3,15 @@
  * This class represents an item which may be put
  * in a room in the game of Zuul.
  * 
+ * What an item is (its name, description and weight) is kept in an
+ * ItemType that is shared by all identical items.
+ * 
  * @author Noor Karabala
  */
 public class Item
 {
-    // description of the item
-    private String description;
-    
-    // weight of the item in kilograms
-    private double weight;
-    
-    // name of item
-    private String name;
+    // name, description and weight (in kilograms) of the item
+    private ItemType type;
 
     /**
      * Constructor for objects of class Item.
@@ -25,9 +22,17 @@ public class Item
      */
     public Item(String name, String description, double weight)
     {
-        this.name = name;
-        this.description = description;
-        this.weight = weight;
+        this(ItemType.of(name, description, weight));
+    }
+
+    /**
+     * Constructor for objects of class Item of a given type.
+     * 
+     * @param type The type of the item
+     */
+    public Item(ItemType type)
+    {
+        this.type = type;
     }
 
     /**
@@ -38,7 +43,37 @@ public class Item
      */
     public String getDescription()
     {
-        return name +": " + description + " that weighs " + weight + "kg.";
+        return type.getFullDescription();
+    }
+    
+    /**
+     * Returns the description of the item on its own, e.g. "a wooden chair".
+     * 
+     * @return  the description of the item
+     */
+    public String getItemDescription()
+    {
+        return type.getDescription();
+    }
+    
+    /**
+     * Returns the weight of the item in kilograms.
+     * 
+     * @return  the weight of the item
+     */
+    public double getWeight()
+    {
+        return type.getWeight();
+    }
+    
+    /**
+     * Returns the type of the item.
+     * 
+     * @return  the type of the item
+     */
+    public ItemType getType()
+    {
+        return type;
     }
     
     /**
@@ -48,6 +83,6 @@ public class Item
      */
     public String getName()
     {
-        return this.name;
+        return type.getName();
     }
 }
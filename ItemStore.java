@@ -0,0 +1,188 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An ItemStore holds the items of a room. It keeps the items in the order
+ * they were added, and indexes them by name, so that an item can be found
+ * and removed by its name in constant time however many items there are.
+ *
+ * Several items may have the same name (e.g. the cookies). Removing an
+ * item by name always removes the one added first.
+ *
+ * @author Noor Karabala
+ */
+public class ItemStore implements Iterable<Item>
+{
+    /**
+     * An item in the store. Nodes are linked in the order the items were
+     * added, and to the next item with the same name.
+     */
+    private static class Node
+    {
+        private Item item;
+        private Node previous;
+        private Node next;
+        private Node nextSameName;
+
+        private Node(Item item)
+        {
+            this.item = item;
+        }
+    }
+
+    /**
+     * The items with one name, oldest first.
+     */
+    private static class NameChain
+    {
+        private Node first;
+        private Node last;
+    }
+
+    private Node first;
+    private Node last;
+    private int size;
+    private HashMap<String, NameChain> byName;
+
+    /**
+     * Create an empty store.
+     */
+    public ItemStore()
+    {
+        byName = new HashMap<String, NameChain>();
+    }
+
+    /**
+     * Add an item at the end of the store.
+     *
+     * @param item The item to add
+     */
+    public void add(Item item)
+    {
+        Node node = new Node(item);
+        if (last == null) {
+            first = node;
+        }
+        else {
+            last.next = node;
+            node.previous = last;
+        }
+        last = node;
+
+        NameChain chain = byName.get(item.getName());
+        if (chain == null) {
+            chain = new NameChain();
+            chain.first = node;
+            byName.put(item.getName(), chain);
+        }
+        else {
+            chain.last.nextSameName = node;
+        }
+        chain.last = node;
+        size++;
+    }
+
+    /**
+     * Remove the first item with the given name.
+     *
+     * @param name The name of the item
+     * @return The removed item, or null if there is no item with that name
+     */
+    public Item remove(String name)
+    {
+        NameChain chain = byName.get(name);
+        if (chain == null) {
+            return null;
+        }
+        Node node = chain.first;
+        if (node.nextSameName == null) {
+            byName.remove(name);
+        }
+        else {
+            chain.first = node.nextSameName;
+        }
+
+        if (node.previous == null) {
+            first = node.next;
+        }
+        else {
+            node.previous.next = node.next;
+        }
+        if (node.next == null) {
+            last = node.previous;
+        }
+        else {
+            node.next.previous = node.previous;
+        }
+        size--;
+        return node.item;
+    }
+
+    /**
+     * Returns the first item with the given name, without removing it.
+     *
+     * @param name The name of the item
+     * @return The item, or null if there is no item with that name
+     */
+    public Item get(String name)
+    {
+        NameChain chain = byName.get(name);
+        return chain == null ? null : chain.first.item;
+    }
+
+    /**
+     * Check whether the store holds an item with the given name.
+     *
+     * @param name The name of the item
+     * @return true if there is such an item, false otherwise
+     */
+    public boolean contains(String name)
+    {
+        return byName.containsKey(name);
+    }
+
+    /**
+     * @return The number of items in the store
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return true if the store holds no items, false otherwise
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns an iterator over the items in the order they were added.
+     * The store must not be changed while it is iterated.
+     *
+     * @return An iterator over the items
+     */
+    public Iterator<Item> iterator()
+    {
+        return new Iterator<Item>() {
+            private Node next = first;
+
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            public Item next()
+            {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Item item = next.item;
+                next = next.next;
+                return item;
+            }
+        };
+    }
+}
@@ -0,0 +1,203 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An ItemType holds what items of one kind have in common: their name,
+ * description and weight. Item types never change, and there is only
+ * one item type for each combination of name, description and weight
+ * in use, so identical items (e.g. the cookies, or thousands of boxes in
+ * a storeroom) all share one item type instead of copies of its strings.
+ *
+ * Item types are looked up by name without creating anything, as items
+ * are created for every room loaded from a world file. The table only
+ * refers to them weakly: once no item of a type is left (e.g. its world
+ * is gone), the type is collected and forgotten.
+ *
+ * @author Noor Karabala
+ */
+public final class ItemType
+{
+    /**
+     * A weak reference to an item type in use, linked to the other
+     * types with the same name.
+     */
+    private static class TypeReference extends WeakReference<ItemType>
+    {
+        private String name;
+        private TypeReference next;
+
+        private TypeReference(ItemType type, TypeReference next)
+        {
+            super(type, COLLECTED_TYPES);
+            this.name = type.name;
+            this.next = next;
+        }
+    }
+
+    // the item types in use by name; a name almost always has one type only
+    private static final ConcurrentHashMap<String, TypeReference> TYPES =
+        new ConcurrentHashMap<String, TypeReference>();
+    private static final ReferenceQueue<ItemType> COLLECTED_TYPES = new ReferenceQueue<ItemType>();
+
+    private final String name;
+    private final String description;
+    private final double weight;
+
+    // the full description, built the first time it is needed
+    private String fullDescription;
+
+    /**
+     * Create an item type.
+     *
+     * @param name The name of the items
+     * @param description The description of the items
+     * @param weight The weight of the items in kilograms
+     */
+    private ItemType(String name, String description, double weight)
+    {
+        this.name = name;
+        this.description = description;
+        this.weight = weight;
+    }
+
+    /**
+     * Returns the item type with the given name, description and weight.
+     *
+     * @param name The name of the items
+     * @param description The description of the items
+     * @param weight The weight of the items in kilograms
+     * @return The shared item type
+     */
+    public static ItemType of(String name, String description, double weight)
+    {
+        ItemType type = find(TYPES.get(name), description, weight);
+        if (type != null) {
+            return type;
+        }
+        forgetCollectedTypes();
+        ItemType[] added = new ItemType[1];
+        TYPES.compute(name, (key, first) -> {
+            // another thread may have added it meanwhile
+            added[0] = find(first, description, weight);
+            if (added[0] != null) {
+                return first;
+            }
+            added[0] = new ItemType(name, description, weight);
+            return new TypeReference(added[0], withoutCollected(first));
+        });
+        return added[0];
+    }
+
+    /**
+     * Find an item type among those with one name.
+     *
+     * @param first The first item type with the name, or null
+     * @param description The description of the items
+     * @param weight The weight of the items in kilograms
+     * @return The item type, or null if it is not in use
+     */
+    private static ItemType find(TypeReference first, String description, double weight)
+    {
+        for (TypeReference reference = first; reference != null; reference = reference.next) {
+            ItemType type = reference.get();
+            if (type != null && type.description.equals(description)
+                && Double.compare(type.weight, weight) == 0) {
+                return type;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Forget the names of item types that have been garbage collected.
+     */
+    private static void forgetCollectedTypes()
+    {
+        TypeReference collected;
+        while ((collected = (TypeReference) COLLECTED_TYPES.poll()) != null) {
+            TYPES.computeIfPresent(collected.name, (key, first) -> withoutCollected(first));
+        }
+    }
+
+    /**
+     * Returns the item types with one name that are still in use.
+     *
+     * @param first The first item type with the name, or null
+     * @return The first of a new list of the types in use, or null if there are none
+     */
+    private static TypeReference withoutCollected(TypeReference first)
+    {
+        if (first == null) {
+            return null;
+        }
+        TypeReference next = withoutCollected(first.next);
+        ItemType type = first.get();
+        if (type == null) {
+            return next;
+        }
+        return next == first.next ? first : new TypeReference(type, next);
+    }
+
+    /**
+     * @return The name of the items
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * @return The description of the items, e.g. "a wooden chair"
+     */
+    public String getDescription()
+    {
+        return description;
+    }
+
+    /**
+     * @return The weight of the items in kilograms
+     */
+    public double getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * Returns a description of the items, including their
+     * name and description and weight.
+     *
+     * @return The full description
+     */
+    public String getFullDescription()
+    {
+        if (fullDescription == null) {
+            fullDescription = name + ": " + description + " that weighs " + weight + "kg.";
+        }
+        return fullDescription;
+    }
+
+    /**
+     * Item types are equal if they have the same name, description and weight.
+     *
+     * @param other The object to compare with
+     * @return true if other is an equal item type
+     */
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof ItemType)) {
+            return false;
+        }
+        ItemType type = (ItemType) other;
+        return name.equals(type.name) && description.equals(type.description)
+            && Double.compare(weight, type.weight) == 0;
+    }
+
+    /**
+     * @return A hash code for the item type
+     */
+    public int hashCode()
+    {
+        return (name.hashCode() * 31 + description.hashCode()) * 31 + Double.hashCode(weight);
+    }
+}
@@ -0,0 +1,167 @@
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A LatencyHistogram counts how long an operation took, in nanoseconds,
+ * in buckets of roughly equal relative width (like an HDR histogram with
+ * one significant digit): every power of two is split into 8 buckets, so
+ * a percentile is never off by more than 12.5%, from 1 ns to centuries.
+ *
+ * Every bucket is a LongAdder, so games on many threads can record at the
+ * same time without contending for one counter, and recording a sample
+ * allocates nothing. Reading the histogram while samples are recorded
+ * gives a close, but not exact, snapshot.
+ *
+ * @author Noor Karabala
+ */
+public class LatencyHistogram
+{
+    // every power of two is split into 2^SUB_BITS buckets
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // enough buckets for every positive long
+    private static final int BUCKETS = (63 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private LongAdder[] buckets;
+    private LongAdder count;
+    private LongAdder totalNanos;
+    private LongAccumulator maxNanos;
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        buckets = new LongAdder[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+        count = new LongAdder();
+        totalNanos = new LongAdder();
+        maxNanos = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Record one sample.
+     *
+     * @param nanos How long the operation took
+     */
+    public void record(long nanos)
+    {
+        if (nanos < 0) {
+            nanos = 0; // System.nanoTime() is monotonic, but be safe
+        }
+        buckets[bucket(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * @return The number of samples
+     */
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    /**
+     * @return The sum of all samples, in nanoseconds
+     */
+    public long getTotalNanos()
+    {
+        return totalNanos.sum();
+    }
+
+    /**
+     * @return The average sample in nanoseconds, or 0 if there are none
+     */
+    public double getMeanNanos()
+    {
+        long samples = count.sum();
+        return samples == 0 ? 0 : (double) totalNanos.sum() / samples;
+    }
+
+    /**
+     * @return The largest sample in nanoseconds, or 0 if there are none
+     */
+    public long getMaxNanos()
+    {
+        return maxNanos.get();
+    }
+
+    /**
+     * Returns the value below which a given share of the samples lie.
+     *
+     * @param percentile The share, from 0 to 100 (e.g. 99.9)
+     * @return The highest value of the bucket holding that sample, in
+     *         nanoseconds (at most the largest sample), or 0 if there are none
+     */
+    public long getPercentileNanos(double percentile)
+    {
+        long[] counts = new long[BUCKETS];
+        long samples = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            samples += counts[i];
+        }
+        if (samples == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * samples));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Forget all samples. Samples recorded during a reset may be partly kept.
+     */
+    public void reset()
+    {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    /**
+     * Returns the bucket of a value: values below 8 have a bucket each;
+     * above, the bucket is given by the highest set bit and the 3 bits after it.
+     *
+     * @param nanos The value
+     * @return The index of its bucket
+     */
+    private static int bucket(long nanos)
+    {
+        if (nanos < SUB_BUCKETS) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @param bucket The index of a bucket
+     * @return The highest value counted in the bucket
+     */
+    private static long highestValue(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + sub) << (exponent - SUB_BITS);
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An OutputSink is where the text of a game ends up: the console, a
+ * network connection, or nowhere. A game collects each response in a
+ * GameOutput and hands it to its sink in one piece, already encoded as
+ * UTF-8, so a sink sees one write (and one flush) per response instead of
+ * one per line.
+ *
+ * @author Noor Karabala
+ */
+public interface OutputSink
+{
+    /**
+     * Write bytes to the sink.
+     *
+     * @param bytes The array holding the bytes
+     * @param offset The index of the first byte
+     * @param length The number of bytes
+     * @throws IOException If the bytes cannot be written
+     */
+    void write(byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * Make sure everything written so far reaches its destination.
+     *
+     * @throws IOException If the bytes cannot be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * Returns a sink writing straight to standard output, without going
+     * through System.out (and its lock and character encoding).
+     *
+     * @return The sink
+     */
+    static OutputSink console()
+    {
+        return of(new FileOutputStream(FileDescriptor.out));
+    }
+
+    /**
+     * Returns a sink that forgets everything written to it, e.g. for
+     * benchmarks and scripted runs.
+     *
+     * @return The sink
+     */
+    static OutputSink discard()
+    {
+        return new OutputSink() {
+            public void write(byte[] bytes, int offset, int length)
+            {
+            }
+
+            public void flush()
+            {
+            }
+        };
+    }
+
+    /**
+     * Returns a sink writing to a stream, e.g. the stream of a socket.
+     *
+     * @param stream The stream
+     * @return The sink
+     */
+    static OutputSink of(OutputStream stream)
+    {
+        return new OutputSink() {
+            public void write(byte[] bytes, int offset, int length) throws IOException
+            {
+                stream.write(bytes, offset, length);
+            }
+
+            public void flush() throws IOException
+            {
+                stream.flush();
+            }
+        };
+    }
+
+    /**
+     * Returns a sink writing to a blocking channel, e.g. a SocketChannel,
+     * through a direct buffer taken from a pool for every write.
+     *
+     * @param channel The channel; it must be in blocking mode
+     * @param pool The pool the buffers are taken from
+     * @return The sink
+     */
+    static OutputSink of(WritableByteChannel channel, BufferPool pool)
+    {
+        return new OutputSink() {
+            public void write(byte[] bytes, int offset, int length) throws IOException
+            {
+                ByteBuffer buffer = pool.take();
+                try {
+                    while (length > 0) {
+                        int chunk = Math.min(length, buffer.capacity());
+                        buffer.clear();
+                        buffer.put(bytes, offset, chunk);
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            channel.write(buffer);
+                        }
+                        offset += chunk;
+                        length -= chunk;
+                    }
+                }
+                finally {
+                    pool.give(buffer);
+                }
+            }
+
+            public void flush()
+            {
+                // channels do not buffer
+            }
+        };
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A RandomSource makes the random choices of a game, such as the room a
+ * transporter room sends the player to. Every game session has its own
+ * source, so players sharing a world never contend for one generator.
+ *
+ * A SeededRandom is the source to use when a game has to be replayed
+ * (its state is saved and journaled); threadLocal() is the fastest
+ * source when it does not.
+ *
+ * @author Noor Karabala
+ */
+public interface RandomSource
+{
+    /**
+     * Returns a random int between 0 (inclusive) and bound (exclusive).
+     *
+     * @param bound The upper bound, must be positive
+     * @return The random int
+     */
+    int nextInt(int bound);
+
+    /**
+     * Returns a source using the ThreadLocalRandom of the calling thread.
+     * It cannot be seeded.
+     *
+     * @return The source
+     */
+    static RandomSource threadLocal()
+    {
+        return bound -> ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    /**
+     * Returns a source using a SplittableRandom with the given seed. The
+     * source must only be used by one thread at a time.
+     *
+     * @param seed The seed
+     * @return The source
+     */
+    static RandomSource splittable(long seed)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        return random::nextInt;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * ResultRenderer turns the result of a command into the text shown to
+ * the player. Games played on a console or over a connection use it to
+ * print their results; programs driving the game directly do not need it.
+ *
+ * @author Noor Karabala
+ */
+public class ResultRenderer
+{
+    private CommandWords commandWords;
+
+    /**
+     * Create a renderer.
+     *
+     * @param commandWords The command words listed by "help"
+     */
+    public ResultRenderer(CommandWords commandWords)
+    {
+        this.commandWords = commandWords;
+    }
+
+    /**
+     * Returns the text for the result of a command.
+     *
+     * @param result The result to render
+     * @return The text shown to the player
+     */
+    public String render(CommandResult result)
+    {
+        Item item = result.getItem();
+        switch (result.getStatus()) {
+            case UNKNOWN_COMMAND:
+                return "I don't know what you mean...";
+            case MISSING_SECOND_WORD:
+                if (result.getCommandWord().equals("go")) {
+                    return "Go where?";
+                }
+                return capitalise(result.getCommandWord()) + " what?";
+            case UNEXPECTED_SECOND_WORD:
+                return capitalise(result.getCommandWord()) + " what?";
+            case HELP:
+                return "You are lost. You are alone. You wander\n"
+                    + "around at the university.\n\n"
+                    + "Your command words are:\n"
+                    + (result.getDetail() != null ? result.getDetail() : commandWords.getCommandList());
+            case QUIT:
+                return "Thank you for playing.  Good bye.";
+            case MOVED:
+            case LOOKED:
+                return result.getRoom().getLongDescription() + "\n" + holding(result);
+            case NO_DOOR:
+                return "There is no door!";
+            case NO_PREVIOUS_ROOM:
+                return "No room to go back to.\n" + holding(result);
+            case NO_STACKED_ROOM:
+                return "No room to go stack back to.\n" + holding(result);
+            case TOOK:
+                if (item.getName().equals("cookie")) {
+                    return "You picked up a cookie.";
+                }
+                return "You picked up " + item.getName();
+            case TOOK_ALL:
+                return "You picked up " + result.getDetail();
+            case NOTHING_TO_TAKE:
+                return "There is nothing here you can take.";
+            case TOO_HEAVY:
+                return "The " + item.getName() + " is too heavy to carry (you carry " + result.getDetail() + ").";
+            case NO_COOKIE:
+                return "There is no cookie in this room.";
+            case NOT_EATEN:
+                return "You need to eat a cookie before you can pick up other items.";
+            case HUNGRY:
+                return "You are hungry again! Find and eat a cookie to pick up more items.";
+            case ITEM_NOT_FOUND:
+                return "That item is not in the room.";
+            case DROPPED:
+                return "You dropped " + item.getName();
+            case DROPPED_ALL:
+                return "You dropped " + result.getDetail();
+            case NOT_CARRYING:
+                return "You are not carrying " + result.getDetail() + ".";
+            case NOT_HOLDING:
+                return "You are not holding anything.";
+            case NOTHING_TO_EAT:
+                return "You are not holding anything to eat.";
+            case ATE:
+                return "You ate the cookie! You can now pick up items. (5 at most)";
+            case NOT_EDIBLE:
+                return "You can only eat a cookie.";
+            case CHARGED:
+                return "The beamer has been charged!";
+            case ALREADY_CHARGED:
+                return "The beamer is already charged.";
+            case NOT_A_BEAMER:
+                return "You must be holding a beamer to " + result.getCommandWord() + " it.";
+            case FIRED:
+                return "Beamer fired! You are transported to " + result.getRoom().getShortDescription()
+                    + "\n" + result.getRoom().getLongDescription();
+            case NOT_CHARGED:
+                return "The beamer is not charged.";
+            case SAVED:
+                return "Game saved as " + result.getDetail() + ".";
+            case SAVE_FAILED:
+                return "Could not save the game: " + result.getDetail();
+            case LOADED:
+                return "Game " + result.getDetail() + " loaded.\n"
+                    + result.getRoom().getLongDescription() + "\n" + holding(result);
+            case LOAD_FAILED:
+                return "Could not load the game: " + result.getDetail();
+            case ROUTE:
+                if (result.getDetail().isEmpty()) {
+                    return "You are already there.";
+                }
+                return "To get there, go: " + result.getDetail();
+            case NO_ROUTE:
+                return "There is no way there from here.";
+            case NO_SUCH_ROOM:
+                return "There is no room " + result.getDetail() + ".";
+            case WHICH_ROOM:
+                return "Which room? Several rooms are called " + result.getDetail() + ".";
+            case STATS:
+                return result.getDetail();
+            case INVENTORY:
+                return inventory(result);
+            default:
+                return "";
+        }
+    }
+
+    /**
+     * Returns the line telling what the player is holding.
+     *
+     * @param result The result of a command
+     * @return The item holding status of the player
+     */
+    private String holding(CommandResult result)
+    {
+        Item[] held = result.getHeldItems();
+        if (held.length == 0) {
+            return "\nPlayer is not holding anything";
+        }
+        StringBuilder text = new StringBuilder("\nPlayer is holding ");
+        for (int i = 0; i < held.length; i++) {
+            if (i > 0) {
+                text.append(", ");
+            }
+            text.append(held[i].getName());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the list of the items the player carries, with their weights.
+     *
+     * @param result The result of an "inventory" command
+     * @return The inventory of the player
+     */
+    private String inventory(CommandResult result)
+    {
+        Item[] held = result.getHeldItems();
+        if (held.length == 0) {
+            return "You are carrying nothing.";
+        }
+        StringBuilder text = new StringBuilder("You are carrying (" + result.getDetail() + "):");
+        for (Item carried : held) {
+            text.append(String.format("\n  %-12s %6.1f kg", carried.getName(), carried.getWeight()));
+        }
+        return text.toString();
+    }
+
+    /**
+     * Returns the word with its first letter in upper case.
+     *
+     * @param word The word to capitalise
+     * @return The capitalised word
+     */
+    private String capitalise(String word)
+    {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
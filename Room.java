@@ -1,7 +1,4 @@
-import java.util.Set;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.ArrayList; // or java.util.*; and replace the above
+import java.util.Arrays;
 
 /**
  * Class Room - a room in an adventure game.
@@ -11,7 +8,15 @@ import java.util.ArrayList; // or java.util.*; and replace the above
  *
  * A "Room" represents one location in the scenery of the game.  It is 
  * connected to other rooms via exits.  For each existing exit, the room 
- * stores a reference to the neighboring room.
+ * stores the id of the neighboring room in the room's world, so that
+ * neighbours loaded from a world file only have to exist once they are
+ * entered. The ids are kept in a small array with one entry per Direction.
+ * 
+ * The items of a room (and the descriptions listing them) are guarded by
+ * the room itself, so players sharing a world can take and drop items in
+ * the same room at once; taking an item is atomic, so only one of two
+ * players taking the same cookie gets it. Exits are set before a room is
+ * played in, and only read afterwards.
  * 
  * @author  Michael Kolling and David J. Barnes
  * @author Noor Karabala
@@ -20,30 +25,32 @@ import java.util.ArrayList; // or java.util.*; and replace the above
 public class Room 
 {
     private String description;
-    private HashMap<String, Room> exits;        // stores exits of this room.
-    private static ArrayList<Room> gameRooms;   // stores rooms in the game.
+    private int[] exits;                        // neighbour ids by direction, null if no exits
+    private int exitMask;                       // the bits of the directions with exits
+    private World world;                        // the world this room belongs to
+    private int id;                             // the id of this room in its world
 
-    // the items in this room
-    private ArrayList<Item> items;
+    // the items in this room, indexed by name, null if there never were any
+    private ItemStore items;
+    
+    // rendered descriptions, null when they have to be built again
+    private String itemString;
+    private String longDescription;
     
     /**
-     * Create a room described "description". Initially, it has
-     * no exits. "description" is something like "a kitchen" or
-     * "an open court yard".
+     * Create a room with a known id in its world. Rooms are created by
+     * their world (see World.newRoom), or loaded from a world file.
+     * Initially, a room has no exits.
      * 
      * @param description The room's description.
+     * @param world The world the room belongs to.
+     * @param id The id of the room in its world.
      */
-    public Room(String description) 
+    Room(String description, World world, int id) 
     {
         this.description = description;
-        exits = new HashMap<String, Room>();
-        items = new ArrayList<Item>();
-        
-        if (gameRooms == null) {
-            gameRooms = new ArrayList<Room>();
-        }
-        gameRooms.add(this);
-        
+        this.world = world;
+        this.id = id;
     }
     
     /**
@@ -51,10 +58,15 @@ public class Room
      * 
      * @param item The item to add to the room
      */
-    public void addItem(Item item) 
+    public synchronized void addItem(Item item) 
     {
         if (item!=null) { // not required, but good practice
+            if (items == null) {
+                items = new ItemStore();
+            }
             items.add(item);
+            itemsChanged();
+            world.publish(GameEvent.Type.ITEM_ADDED, 0, id, item);
         }
     }
 
@@ -66,7 +78,54 @@ public class Room
      */
     public void setExit(String direction, Room neighbour) 
     {
-        exits.put(direction, neighbour);
+        setExit(direction, neighbour.getId());
+    }
+
+    /**
+     * Define an exit from this room to the room with the given id
+     * in the same world.
+     * 
+     * @param direction The direction of the exit, e.g. "north"
+     * @param neighbourId The id of the room to which the exit leads
+     * @throws IllegalArgumentException If direction is not a direction
+     */
+    public void setExit(String direction, int neighbourId) 
+    {
+        Direction exitDirection = Direction.fromString(direction);
+        if (exitDirection == null) {
+            throw new IllegalArgumentException("not a direction: " + direction);
+        }
+        setExit(exitDirection, neighbourId);
+    }
+
+    /**
+     * Define an exit from this room to the room with the given id
+     * in the same world.
+     * 
+     * @param direction The direction of the exit
+     * @param neighbourId The id of the room to which the exit leads
+     */
+    public synchronized void setExit(Direction direction, int neighbourId) 
+    {
+        if (exits == null) {
+            exits = new int[Direction.values().length];
+            Arrays.fill(exits, -1);
+        }
+        exits[direction.ordinal()] = neighbourId;
+        exitMask |= direction.bit();
+        longDescription = null;
+        world.exitsChanged();
+    }
+    
+    /**
+     * Forget the rendered item list, as the items of the room changed,
+     * and tell the world, which keeps the items of changed rooms.
+     */
+    private void itemsChanged()
+    {
+        itemString = null;
+        longDescription = null;
+        world.itemsChanged(this);
     }
 
     /**
@@ -87,13 +146,20 @@ public class Room
      *     Items: 
      *        a chair weighing 5 kgs.
      *        a table weighing 10 kgs.
+     * The description is built once and kept until the exits or
+     * the items of the room change. Every call is timed in CommandMetrics.
      *     
      * @return A long description of this room
      */
-    public String getLongDescription()
+    public synchronized String getLongDescription()
     {
-        return "You are " + description + ".\n" + getExitString()
-            + "\nItems:" + getItems();
+        long start = System.nanoTime();
+        if (longDescription == null) {
+            longDescription = "You are " + description + ".\n" + getExitString()
+                + "\nItems:" + getItems();
+        }
+        CommandMetrics.get().recordRoomDescription(System.nanoTime() - start);
+        return longDescription;
     }
 
     /**
@@ -104,12 +170,7 @@ public class Room
      */
     private String getExitString()
     {
-        String returnString = "Exits:";
-        Set<String> keys = exits.keySet();
-        for(String exit : keys) {
-            returnString += " " + exit;
-        }
-        return returnString;
+        return Direction.exitString(exitMask);
     }
 
     /**
@@ -121,7 +182,56 @@ public class Room
      */
     public Room getExit(String direction) 
     {
-        return exits.get(direction);
+        Direction exitDirection = Direction.fromString(direction);
+        if (exitDirection == null) {
+            return null;
+        }
+        return getExit(exitDirection);
+    }
+    
+    /**
+     * Return the room that is reached if we go from this room in direction
+     * "direction", making any random choice with the given source. If there
+     * is no room in that direction, return null.
+     * 
+     * @param direction The exit's direction
+     * @param random The source of random choices, e.g. the one of the player's game
+     * @return The room in the given direction
+     */
+    public Room getExit(String direction, RandomSource random) 
+    {
+        return getExit(direction);
+    }
+    
+    /**
+     * Return the room that is reached if we go from this room in direction
+     * "direction". If there is no room in that direction, return null.
+     * 
+     * @param direction The exit's direction
+     * @return The room in the given direction
+     */
+    public Room getExit(Direction direction) 
+    {
+        int neighbourId = getExitId(direction);
+        if (neighbourId < 0) {
+            return null;
+        }
+        return world.getRoom(neighbourId);
+    }
+    
+    /**
+     * Return the id of the room that is reached if we go from this room
+     * in direction "direction", without loading that room.
+     * 
+     * @param direction The exit's direction
+     * @return The id of the room in the given direction, or -1 if there is no exit
+     */
+    public int getExitId(Direction direction) 
+    {
+        if (exits == null) {
+            return -1;
+        }
+        return exits[direction.ordinal()];
     }
     
     /**
@@ -129,48 +239,115 @@ public class Room
      * 
      * @return A String of the items, one per line
      */
-    public String getItems() 
+    public synchronized String getItems() 
     {
-        // let's use a StringBuilder (not required)
-        StringBuilder s = new StringBuilder();
-        for (Item i : items) {
-            s.append("\n" + i.getDescription());
+        if (itemString == null) {
+            StringBuilder s = new StringBuilder();
+            if (items != null) {
+                for (Item i : items) {
+                    s.append('\n').append(i.getDescription());
+                }
+            }
+            itemString = s.toString();
+        }
+        return itemString; 
+    }
+    
+    /**
+     * Returns the item with the given name, leaving it in the room.
+     * If several items have that name, the one added first is returned.
+     * 
+     * @param item The name of the item
+     * @return The item, or null if no item with the given name is found
+     */
+    public synchronized Item getItem(String item)
+    {
+        return items == null ? null : items.get(item);
+    }
+
+    /**
+     * Returns the items in the room at this moment, in the order they
+     * were added.
+     * 
+     * @return The items
+     */
+    public synchronized Item[] getItemArray()
+    {
+        if (items == null) {
+            return new Item[0];
+        }
+        Item[] array = new Item[items.size()];
+        int i = 0;
+        for (Item item : items) {
+            array[i++] = item;
         }
-        return s.toString(); 
+        return array;
     }
     
     /**
-     * removeItem removes an item when picked from the list of items in the room.
+     * removeItem removes an item when picked from the items in the room.
+     * If several items have that name, the one added first is removed.
      * 
-     * @param item The name of the item to be removed from the list.
+     * @param item The name of the item to be removed.
      * 
      * @return The item that was removed, or null if no item with the given name is found.
      */
-    public Item removeItem(String item) 
-    {
-        Iterator<Item> iter = items.iterator();
-        
-        while(iter.hasNext()){
-            
-            Item current = iter.next();
-            
-            if(current.getName().equals(item)){
-                iter.remove();
-                return current; 
-            }
+    public synchronized Item removeItem(String item) 
+    {
+        if (items == null) {
+            return null;
+        }
+        Item removed = items.remove(item);
+        if (removed != null) {
+            itemsChanged();
+            world.publish(GameEvent.Type.ITEM_REMOVED, 0, id, removed);
         }
-        return null;
+        return removed;
+    }
+    
+    /**
+     * Returns the items of this room, so that its world can keep them
+     * when the room is unloaded.
+     * 
+     * @return The items of the room, or null if it never had any
+     */
+    synchronized ItemStore getItemStore()
+    {
+        return items;
     }
     
     /**
-     * Returns the list of all available rooms in the game.
-     * This allows the transporter room to access the list when 
-     * selecting a random room for teleportation.
+     * Give the room its items when it is loaded, either the items stored
+     * in a world file or the items kept from an earlier copy of the room.
+     * 
+     * @param loadedItems The items to put in the room
+     */
+    synchronized void setItemStore(ItemStore loadedItems)
+    {
+        items = loadedItems;
+        itemString = null;
+        longDescription = null;
+    }
+    
+    /**
+     * Returns the world this room belongs to.
+     * This allows the transporter room to access the other rooms 
+     * of the same game when selecting a random room for teleportation.
      *
-     * @return An ArrayList containing all rooms in the game.
+     * @return The world of this room.
      */
-    public static ArrayList<Room> getGameRooms() {
-        return gameRooms;
+    public World getWorld()
+    {
+        return world;
+    }
+    
+    /**
+     * Returns the id of this room in its world.
+     *
+     * @return The id of this room.
+     */
+    public int getId()
+    {
+        return id;
     }
 }
-
@@ -0,0 +1,266 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A RoomHistory holds the ids of the rooms a player can step back to
+ * with "stackBack", most recent last. It replaces a Stack of rooms: the
+ * ids are kept in a ring buffer of ints, which grows only as far as it is
+ * used, up to a fixed capacity.
+ *
+ * When the buffer is full, the oldest id is forgotten, so the history
+ * always holds the most recent rooms up to its capacity. A history with a
+ * spill file instead writes the oldest half of the buffer to it, in one
+ * write rather than one per room. Spilled ids are read back half a buffer
+ * at a time once the buffer is empty again, so the history is unlimited
+ * while only a bounded part of it is in memory.
+ *
+ * A history is used by one game at a time and is not synchronized.
+ *
+ * @author Noor Karabala
+ */
+public class RoomHistory implements AutoCloseable
+{
+    // the size of the buffer of a new history
+    private static final int INITIAL_SIZE = 16;
+
+    // the most ids toArray() can return
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private int capacity;
+    private int[] ids;
+    private int head;   // index of the oldest id in the buffer
+    private int size;   // number of ids in the buffer
+
+    // the file ids are spilled to, or null to forget them; opened on the first spill
+    private Path spillPath;
+    private RandomAccessFile spillFile;
+    private long spilled;  // number of ids in the spill file
+
+    /**
+     * Create a history keeping at most the given number of rooms.
+     * Older rooms are forgotten.
+     *
+     * @param capacity The number of rooms kept
+     */
+    public RoomHistory(int capacity)
+    {
+        this(capacity, null);
+    }
+
+    /**
+     * Create a history keeping the given number of rooms in memory,
+     * writing older rooms to a file (or forgetting them, if the file is null).
+     *
+     * @param capacity The number of rooms kept in memory, at least 2
+     * @param spillPath The file older rooms are written to, or null
+     */
+    public RoomHistory(int capacity, Path spillPath)
+    {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2: " + capacity);
+        }
+        this.capacity = capacity;
+        this.spillPath = spillPath;
+        ids = new int[Math.min(INITIAL_SIZE, capacity)];
+    }
+
+    /**
+     * Add a room as the most recent one.
+     *
+     * @param roomId The id of the room
+     */
+    public void push(int roomId)
+    {
+        if (size == ids.length) {
+            if (ids.length < capacity) {
+                resize(Math.min(capacity, ids.length * 2));
+            }
+            else {
+                dropOldest(spillPath == null ? 1 : capacity / 2);
+            }
+        }
+        ids[(head + size) % ids.length] = roomId;
+        size++;
+    }
+
+    /**
+     * Remove the most recent room.
+     *
+     * @return The id of the room, or -1 if the history is empty
+     */
+    public int pop()
+    {
+        if (size == 0) {
+            if (spilled == 0) {
+                return -1;
+            }
+            readBack(capacity / 2);
+        }
+        size--;
+        return ids[(head + size) % ids.length];
+    }
+
+    /**
+     * @return The number of rooms in the history, in memory or spilled
+     */
+    public long size()
+    {
+        return spilled + size;
+    }
+
+    /**
+     * @return The most rooms this history keeps: its capacity, or without
+     *         a limit (as many as toArray() can return) if it has a spill file
+     */
+    public int getMaxSize()
+    {
+        return spillPath == null ? capacity : MAX_ARRAY_SIZE;
+    }
+
+    /**
+     * @return true if there is no room to step back to
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Forget all rooms.
+     */
+    public void clear()
+    {
+        head = 0;
+        size = 0;
+        spilled = 0;
+        if (ids.length > INITIAL_SIZE) {
+            ids = new int[INITIAL_SIZE]; // an idle session keeps only a small buffer
+        }
+    }
+
+    /**
+     * Returns all room ids of the history, oldest first, including
+     * those written to the spill file.
+     *
+     * @return The room ids
+     */
+    public int[] toArray()
+    {
+        long total = size();
+        if (total > MAX_ARRAY_SIZE) {
+            throw new IllegalStateException("history too long: " + total);
+        }
+        int[] all = new int[(int) total];
+        if (spilled > 0) {
+            readSpilled(0, (int) spilled).asIntBuffer().get(all, 0, (int) spilled);
+        }
+        for (int i = 0; i < size; i++) {
+            all[(int) spilled + i] = ids[(head + i) % ids.length];
+        }
+        return all;
+    }
+
+    /**
+     * Close and delete the spill file, if there is one.
+     *
+     * @throws IOException If the file cannot be deleted
+     */
+    public void close() throws IOException
+    {
+        if (spillFile != null) {
+            spillFile.close();
+            spillFile = null;
+            Files.deleteIfExists(spillPath);
+        }
+        spilled = 0;
+    }
+
+    /**
+     * Move the ids of the buffer to a buffer of a new size.
+     *
+     * @param newSize The size of the new buffer, at least the number of ids
+     */
+    private void resize(int newSize)
+    {
+        int[] newIds = new int[newSize];
+        for (int i = 0; i < size; i++) {
+            newIds[i] = ids[(head + i) % ids.length];
+        }
+        ids = newIds;
+        head = 0;
+    }
+
+    /**
+     * Remove the oldest ids from the buffer, writing them to the spill
+     * file if there is one.
+     *
+     * @param count The number of ids to remove
+     */
+    private void dropOldest(int count)
+    {
+        if (spillPath != null) {
+            ByteBuffer bytes = ByteBuffer.allocate(count * 4);
+            for (int i = 0; i < count; i++) {
+                bytes.putInt(ids[(head + i) % ids.length]);
+            }
+            bytes.flip();
+            try {
+                if (spillFile == null) {
+                    spillFile = new RandomAccessFile(spillPath.toFile(), "rw");
+                }
+                long position = spilled * 4;
+                while (bytes.hasRemaining()) {
+                    position += spillFile.getChannel().write(bytes, position);
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            spilled += count;
+        }
+        head = (head + count) % ids.length;
+        size -= count;
+    }
+
+    /**
+     * Read the most recently spilled ids back into the empty buffer.
+     *
+     * @param count The number of ids to read, at most
+     */
+    private void readBack(int count)
+    {
+        int n = (int) Math.min(count, spilled);
+        readSpilled(spilled - n, n).asIntBuffer().get(ids, 0, n);
+        head = 0;
+        size = n;
+        spilled -= n;
+    }
+
+    /**
+     * Read ids from the spill file.
+     *
+     * @param first The index of the first id in the file
+     * @param count The number of ids to read
+     * @return A buffer holding the ids
+     */
+    private ByteBuffer readSpilled(long first, int count)
+    {
+        ByteBuffer bytes = ByteBuffer.allocate(count * 4);
+        try {
+            while (bytes.hasRemaining()) {
+                if (spillFile.getChannel().read(bytes, first * 4 + bytes.position()) < 0) {
+                    throw new IOException("spill file " + spillPath + " is too short");
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytes.flip();
+        return bytes;
+    }
+}
@@ -0,0 +1,277 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A RouteIndex finds the shortest way (the fewest exits) from one room of
+ * a world to another. It holds the exits of all rooms in a few primitive
+ * arrays (every room's exits one after another, in compressed sparse row
+ * form) and the exits leading into every room, the same way.
+ *
+ * To find the ways to a room, a breadth-first search goes backwards from
+ * that room, giving every room the direction of its first step towards
+ * it: one byte per room. These next-hop tables are cached per target
+ * room, so after the first route to a room, every route there takes only
+ * as many steps as it is long. Small maps have the tables of all rooms
+ * built at once.
+ *
+ * The exits of transporter rooms lead to a random room, so routes never
+ * leave a transporter room through an exit; they may end in one.
+ *
+ * A RouteIndex does not change once it is built, and can be used by many
+ * games at the same time.
+ *
+ * @author Noor Karabala
+ */
+public class RouteIndex
+{
+    // maps with at most this many rooms have all next-hop tables built at once
+    public static final int ALL_PAIRS_LIMIT = 2048;
+
+    // the number of next-hop tables kept for larger maps
+    private static final int CACHED_TABLES = 64;
+
+    // next-hop table entries that are not a direction
+    private static final byte NO_ROUTE = -1;
+    private static final byte ARRIVED = -2;
+
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Reads the exits of a room, e.g. World.readExits or WorldFile.readExits.
+     */
+    public interface ExitReader
+    {
+        /**
+         * Read the exits of a room.
+         *
+         * @param id The id of the room
+         * @param exits Receives the id of the room behind every exit, indexed
+         *              by Direction ordinal, or -1 where there is no exit
+         * @return true if the room is a transporter room
+         */
+        boolean readExits(int id, int[] exits);
+    }
+
+    private int roomCount;
+
+    // the exits of room r are exitTargets/exitDirections[exitStart[r] .. exitStart[r + 1] - 1]
+    private int[] exitStart;
+    private int[] exitTargets;
+    private byte[] exitDirections;
+
+    // the exits into room r are from entrySources[entryStart[r] .. entryStart[r + 1] - 1],
+    // in direction entryDirections[...]
+    private int[] entryStart;
+    private int[] entrySources;
+    private byte[] entryDirections;
+
+    // the next-hop tables of all target rooms (small maps), roomCount bytes per target
+    private byte[] allTables;
+
+    // the most recently used next-hop tables of target rooms (larger maps)
+    private LinkedHashMap<Integer, byte[]> tables;
+
+    /**
+     * Create an index, without any next-hop tables yet.
+     *
+     * @param roomCount The number of rooms
+     */
+    private RouteIndex(int roomCount)
+    {
+        this.roomCount = roomCount;
+        tables = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest)
+            {
+                return size() > CACHED_TABLES;
+            }
+        };
+    }
+
+    /**
+     * Build the index of a world.
+     *
+     * @param roomCount The number of rooms of the world
+     * @param reader Reads the exits of the rooms
+     * @return The index
+     */
+    public static RouteIndex build(int roomCount, ExitReader reader)
+    {
+        RouteIndex index = new RouteIndex(roomCount);
+        int[] exits = new int[DIRECTIONS.length];
+
+        // every room's exits, leaving out those of transporter rooms
+        index.exitStart = new int[roomCount + 1];
+        int[] targets = new int[Math.max(16, roomCount * 2)];
+        byte[] directions = new byte[targets.length];
+        int exitCount = 0;
+        for (int id = 0; id < roomCount; id++) {
+            index.exitStart[id] = exitCount;
+            if (reader.readExits(id, exits)) {
+                continue;
+            }
+            for (int d = 0; d < exits.length; d++) {
+                if (exits[d] < 0) {
+                    continue;
+                }
+                if (exitCount == targets.length) {
+                    targets = Arrays.copyOf(targets, exitCount * 2);
+                    directions = Arrays.copyOf(directions, exitCount * 2);
+                }
+                targets[exitCount] = exits[d];
+                directions[exitCount] = (byte) d;
+                exitCount++;
+            }
+        }
+        index.exitStart[roomCount] = exitCount;
+        index.exitTargets = Arrays.copyOf(targets, exitCount);
+        index.exitDirections = Arrays.copyOf(directions, exitCount);
+
+        // the same exits, grouped by the room they lead to
+        index.entryStart = new int[roomCount + 1];
+        for (int i = 0; i < exitCount; i++) {
+            index.entryStart[index.exitTargets[i] + 1]++;
+        }
+        for (int id = 0; id < roomCount; id++) {
+            index.entryStart[id + 1] += index.entryStart[id];
+        }
+        index.entrySources = new int[exitCount];
+        index.entryDirections = new byte[exitCount];
+        int[] next = Arrays.copyOf(index.entryStart, roomCount);
+        for (int source = 0; source < roomCount; source++) {
+            for (int i = index.exitStart[source]; i < index.exitStart[source + 1]; i++) {
+                int entry = next[index.exitTargets[i]]++;
+                index.entrySources[entry] = source;
+                index.entryDirections[entry] = index.exitDirections[i];
+            }
+        }
+
+        if (roomCount <= ALL_PAIRS_LIMIT) {
+            index.allTables = new byte[roomCount * roomCount];
+            int[] queue = new int[roomCount];
+            for (int target = 0; target < roomCount; target++) {
+                index.fillTable(target, index.allTables, target * roomCount, queue);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return The number of rooms of the indexed world
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * Find the shortest route between two rooms.
+     *
+     * @param from The id of the room the route starts in
+     * @param to The id of the room the route leads to
+     * @return The directions to go in, in order (none if the rooms are
+     *         the same), or null if there is no way from one to the other
+     */
+    public Direction[] route(int from, int to)
+    {
+        if (from < 0 || from >= roomCount || to < 0 || to >= roomCount) {
+            throw new IndexOutOfBoundsException("no route from room " + from + " to room " + to);
+        }
+        byte[] table;
+        int offset;
+        if (allTables != null) {
+            table = allTables;
+            offset = to * roomCount;
+        }
+        else {
+            table = table(to);
+            offset = 0;
+        }
+        if (table[offset + from] == NO_ROUTE) {
+            return null;
+        }
+
+        // count the steps first, so the route is allocated once
+        int length = 0;
+        for (int room = from; table[offset + room] != ARRIVED; length++) {
+            room = neighbour(room, table[offset + room]);
+        }
+        Direction[] route = new Direction[length];
+        int room = from;
+        for (int i = 0; i < length; i++) {
+            byte direction = table[offset + room];
+            route[i] = DIRECTIONS[direction];
+            room = neighbour(room, direction);
+        }
+        return route;
+    }
+
+    /**
+     * Returns the room an exit of a room leads to.
+     *
+     * @param room The id of the room
+     * @param direction The ordinal of the exit's direction
+     * @return The id of the room behind the exit
+     */
+    private int neighbour(int room, byte direction)
+    {
+        for (int i = exitStart[room]; i < exitStart[room + 1]; i++) {
+            if (exitDirections[i] == direction) {
+                return exitTargets[i];
+            }
+        }
+        throw new IllegalStateException("room " + room + " has no exit " + DIRECTIONS[direction]);
+    }
+
+    /**
+     * Returns the next-hop table of a target room, building it if it is
+     * not cached.
+     *
+     * @param target The id of the target room
+     * @return The next-hop table
+     */
+    private byte[] table(int target)
+    {
+        synchronized (tables) {
+            byte[] table = tables.get(target);
+            if (table != null) {
+                return table;
+            }
+        }
+        // built outside the lock; two games may build the same table at once
+        byte[] table = new byte[roomCount];
+        fillTable(target, table, 0, new int[roomCount]);
+        synchronized (tables) {
+            tables.put(target, table);
+        }
+        return table;
+    }
+
+    /**
+     * Fill a next-hop table with a breadth-first search backwards from
+     * the target room.
+     *
+     * @param target The id of the target room
+     * @param table The table to fill
+     * @param offset The position of the target's table in "table"
+     * @param queue A queue with room for every room
+     */
+    private void fillTable(int target, byte[] table, int offset, int[] queue)
+    {
+        Arrays.fill(table, offset, offset + roomCount, NO_ROUTE);
+        table[offset + target] = ARRIVED;
+        queue[0] = target;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int room = queue[head++];
+            for (int i = entryStart[room]; i < entryStart[room + 1]; i++) {
+                int source = entrySources[i];
+                if (table[offset + source] == NO_ROUTE) {
+                    table[offset + source] = entryDirections[i];
+                    queue[tail++] = source;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,372 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * ScriptRunner plays scripted walkthroughs of the game, many at a time,
+ * and checks that every walkthrough ends up where it should. Every script
+ * is played in a fresh Game, with commands executed directly (nothing is
+ * printed), and the scripts are spread over all cores.
+ *
+ * A script has one command per line, as the player would type it. Empty
+ * lines and lines starting with "#" are skipped, except for these:
+ *
+ *     #seed 42                  make the game's random choices with this seed
+ *     #expect room pub          the player is in a room with this word (or id)
+ *     #expect holding cookie    the player carries this item ("nothing": carries none)
+ *     #expect status TOOK       the last command ended with this status
+ *
+ * Expectations are checked where they appear, so a script can check its
+ * state along the way as well as at its end. A script ends at its last
+ * line or at "quit".
+ *
+ * To run scripts:  java ScriptRunner [-world file] [-threads n] [-report file] script|directory|- ...
+ *
+ * Directories are searched for files ending in ".zuul"; "-" reads one
+ * script from standard input. The program exits with status 1 if any
+ * script fails.
+ *
+ * @author Noor Karabala
+ */
+public class ScriptRunner
+{
+    // the ending of script files in directories
+    private static final String SCRIPT_SUFFIX = ".zuul";
+
+    /**
+     * The outcome of one script.
+     */
+    public static class Result
+    {
+        private String name;
+        private int commands;
+        private List<String> failures = new ArrayList<String>();
+        private long nanos;
+
+        /**
+         * @return The name of the script
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * @return The number of commands executed
+         */
+        public int getCommands()
+        {
+            return commands;
+        }
+
+        /**
+         * @return The expectations that were not met, and any error
+         */
+        public List<String> getFailures()
+        {
+            return failures;
+        }
+
+        /**
+         * @return true if every expectation was met
+         */
+        public boolean passed()
+        {
+            return failures.isEmpty();
+        }
+
+        /**
+         * @return The time the script took, in nanoseconds
+         */
+        public long getNanos()
+        {
+            return nanos;
+        }
+    }
+
+    private WorldFile worldFile;
+
+    /**
+     * Create a runner playing scripts on the campus.
+     */
+    public ScriptRunner()
+    {
+        this(null);
+    }
+
+    /**
+     * Create a runner playing scripts in a world file.
+     *
+     * @param worldFile The world file, or null for the campus
+     */
+    public ScriptRunner(WorldFile worldFile)
+    {
+        this.worldFile = worldFile;
+    }
+
+    /**
+     * Run scripts in parallel.
+     *
+     * @param names The names of the scripts, used in the report
+     * @param scripts The lines of every script
+     * @param threads The number of scripts run at once
+     * @return The results, in the order of the scripts
+     */
+    public List<Result> runAll(List<String> names, List<List<String>> scripts, int threads)
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (int i = 0; i < scripts.size(); i++) {
+                String name = names.get(i);
+                List<String> lines = scripts.get(i);
+                futures.add(executor.submit(() -> run(name, lines)));
+            }
+            List<Result> results = new ArrayList<Result>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while running scripts", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause()); // run() reports its own errors
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Run one script in a fresh game.
+     *
+     * @param name The name of the script
+     * @param lines The lines of the script
+     * @return The result
+     */
+    public Result run(String name, List<String> lines)
+    {
+        Result result = new Result();
+        result.name = name;
+        long start = System.nanoTime();
+        Game game = worldFile == null ? new Game(OutputSink.discard()) : new Game(OutputSink.discard(), new World(worldFile));
+        CommandTokenizer tokenizer = new CommandTokenizer();
+        CommandResult last = null;
+        int lineNumber = 0;
+        try {
+            for (String line : lines) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty()) {
+                    continue;
+                }
+                if (trimmed.startsWith("#")) {
+                    String failure = directive(game, trimmed, last);
+                    if (failure != null) {
+                        result.failures.add("line " + lineNumber + ": " + failure);
+                    }
+                    continue;
+                }
+                last = game.execute(tokenizer.tokenize(trimmed));
+                result.commands++;
+                if (last.isQuit()) {
+                    break;
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            result.failures.add("line " + lineNumber + ": " + e);
+        }
+        result.nanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Carry out a "#" line of a script.
+     *
+     * @param game The game the script is played in
+     * @param line The line
+     * @param last The result of the last command, or null
+     * @return A description of the failed expectation, or null
+     */
+    private String directive(Game game, String line, CommandResult last)
+    {
+        String[] words = line.substring(1).trim().split("\\s+");
+        if (words[0].equals("seed") && words.length == 2) {
+            game.setRandomSource(new SeededRandom(Long.parseLong(words[1])));
+            return null;
+        }
+        if (!words[0].equals("expect") || words.length != 3) {
+            return null; // a comment
+        }
+        String expected = words[2];
+        switch (words[1]) {
+            case "room":
+                Room room = game.getCurrentRoom();
+                if (isRoom(room, expected)) {
+                    return null;
+                }
+                return "expected room " + expected + " but was " + room.getId() + " (" + room.getShortDescription() + ")";
+            case "holding":
+                Inventory inventory = game.getInventory();
+                if (expected.equals("nothing") ? inventory.isEmpty() : inventory.contains(expected)) {
+                    return null;
+                }
+                Item newest = inventory.getLast();
+                return "expected to hold " + expected + " but held "
+                    + (newest == null ? "nothing" : inventory.size() + " items, last " + newest.getName());
+            case "status":
+                String status = last == null ? "none" : last.getStatus().name();
+                if (status.equalsIgnoreCase(expected)) {
+                    return null;
+                }
+                return "expected status " + expected + " but was " + status;
+            default:
+                return "unknown expectation " + words[1];
+        }
+    }
+
+    /**
+     * @param room A room
+     * @param expected The id of the expected room or a word of its description
+     * @return true if the room is the expected room
+     */
+    private static boolean isRoom(Room room, String expected)
+    {
+        if (expected.equals(Integer.toString(room.getId()))) {
+            return true;
+        }
+        for (String word : room.getShortDescription().split(" ")) {
+            if (word.equalsIgnoreCase(expected)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write a report of the results.
+     *
+     * @param results The results of the scripts
+     * @param millis The time all scripts took, in milliseconds
+     * @param out The writer to write to
+     */
+    public static void report(List<Result> results, long millis, PrintWriter out)
+    {
+        int passed = 0;
+        long commands = 0;
+        for (Result result : results) {
+            commands += result.commands;
+            if (result.passed()) {
+                passed++;
+                out.printf("PASS %s (%d commands, %.2f ms)%n", result.name, result.commands,
+                           result.nanos / 1e6);
+            }
+            else {
+                out.printf("FAIL %s (%d commands, %.2f ms)%n", result.name, result.commands,
+                           result.nanos / 1e6);
+                for (String failure : result.failures) {
+                    out.println("     " + failure);
+                }
+            }
+        }
+        out.printf("%d of %d scripts passed, %d commands in %d ms%n", passed, results.size(), commands, millis);
+        out.flush();
+    }
+
+    /**
+     * Run the scripts named on the command line.
+     *
+     * @param args The command line arguments (see the class comment)
+     * @throws IOException If a script, the world file or the report cannot be read or written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        WorldFile worldFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path reportFile = null;
+        List<String> names = new ArrayList<String>();
+        List<List<String>> scripts = new ArrayList<List<String>>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-world") && i + 1 < args.length) {
+                worldFile = WorldFile.open(Paths.get(args[++i]));
+            }
+            else if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-report") && i + 1 < args.length) {
+                reportFile = Paths.get(args[++i]);
+            }
+            else if (args[i].equals("-")) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+                names.add("<stdin>");
+                scripts.add(in.lines().toList());
+            }
+            else {
+                addScripts(Paths.get(args[i]), names, scripts);
+            }
+        }
+        if (scripts.isEmpty()) {
+            System.out.println("usage: java ScriptRunner [-world file] [-threads n] [-report file] script|directory|- ...");
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = new ScriptRunner(worldFile).runAll(names, scripts, threads);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        if (reportFile != null) {
+            try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(reportFile))) {
+                report(results, millis, out);
+            }
+        }
+        PrintWriter console = new PrintWriter(System.out);
+        report(results, millis, console);
+        for (Result result : results) {
+            if (!result.passed()) {
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Add a script file, or all script files in a directory.
+     *
+     * @param path The file or directory
+     * @param names Receives the names of the scripts
+     * @param scripts Receives the lines of the scripts
+     * @throws IOException If a file cannot be read
+     */
+    private static void addScripts(Path path, List<String> names, List<List<String>> scripts) throws IOException
+    {
+        if (!Files.isDirectory(path)) {
+            names.add(path.toString());
+            scripts.add(Files.readAllLines(path));
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> found = Files.walk(path)) {
+            files = found.filter(file -> file.toString().endsWith(SCRIPT_SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            names.add(file.toString());
+            scripts.add(Files.readAllLines(file));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SeededRandom is a small random number generator (SplitMix64) whose
+ * whole state is one long. The state can be read and set again, so the
+ * random choices of a game (e.g. where a transporter room sends the
+ * player) can be saved with the game and replayed exactly.
+ *
+ * A SeededRandom can be used by many threads at once (e.g. the players of
+ * a shared world): the state is advanced atomically, without a lock.
+ *
+ * @author Noor Karabala
+ */
+public class SeededRandom implements RandomSource
+{
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private AtomicLong state;
+
+    /**
+     * Create a random number generator with the given seed.
+     *
+     * @param seed The seed
+     */
+    public SeededRandom(long seed)
+    {
+        state = new AtomicLong(seed);
+    }
+
+    /**
+     * @return The next random long
+     */
+    public long nextLong()
+    {
+        long z = state.addAndGet(GOLDEN_GAMMA);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns a random int between 0 (inclusive) and bound (exclusive).
+     *
+     * @param bound The upper bound, must be positive
+     * @return The random int
+     */
+    public int nextInt(int bound)
+    {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        // scale the high 32 bits to the bound, without division
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    /**
+     * @return The state of the generator
+     */
+    public long getState()
+    {
+        return state.get();
+    }
+
+    /**
+     * Set the state of the generator, e.g. to one saved with getState().
+     *
+     * @param state The new state
+     */
+    public void setState(long state)
+    {
+        this.state.set(state);
+    }
+}
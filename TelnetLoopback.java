@@ -0,0 +1,226 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TelnetLoopback checks a TelnetServer over real TCP connections on this
+ * machine. It starts a server on a free port, opens many connections that
+ * stay idle, and lets a number of players (each on a virtual thread) walk
+ * between the outside and the pub, checking every answer. One player also
+ * sends a line in two parts and two lines at once. At the end, every
+ * player quits and the idle connections must still be open.
+ *
+ * To run it:  java TelnetLoopback [players] [idle connections] [rounds]
+ *
+ * The program exits with status 1 if any check failed.
+ *
+ * @author Noor Karabala
+ */
+public class TelnetLoopback
+{
+    private int port;
+    private AtomicInteger failures = new AtomicInteger();
+    private AtomicInteger commands = new AtomicInteger();
+
+    /**
+     * Create a harness for a server listening on a port of this machine.
+     *
+     * @param port The port
+     */
+    public TelnetLoopback(int port)
+    {
+        this.port = port;
+    }
+
+    /**
+     * A connection of one player.
+     */
+    private class Player implements AutoCloseable
+    {
+        private Socket socket;
+        private InputStream in;
+        private OutputStream out;
+        private ByteArrayOutputStream answer = new ByteArrayOutputStream();
+
+        private Player() throws IOException
+        {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+            check("welcome", readAnswer(), "Welcome to the World of Zuul!");
+        }
+
+        /**
+         * Send a command and check its answer.
+         *
+         * @param line The command
+         * @param expected Text the answer must contain
+         */
+        private void play(String line, String expected) throws IOException
+        {
+            out.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            check(line, readAnswer(), expected);
+            commands.incrementAndGet();
+        }
+
+        /**
+         * @return Everything up to and including the next prompt
+         */
+        private String readAnswer() throws IOException
+        {
+            answer.reset();
+            while (true) {
+                int b = in.read();
+                if (b < 0) {
+                    return answer.toString(StandardCharsets.UTF_8);
+                }
+                answer.write(b);
+                if (b == ' ' && answer.size() >= 2 && answer.toString(StandardCharsets.UTF_8).endsWith("> ")) {
+                    return answer.toString(StandardCharsets.UTF_8);
+                }
+            }
+        }
+
+        public void close() throws IOException
+        {
+            socket.close();
+        }
+    }
+
+    /**
+     * Record a failed check if an answer does not contain the expected text.
+     */
+    private void check(String what, String answer, String expected)
+    {
+        if (!answer.contains(expected)) {
+            failures.incrementAndGet();
+            System.out.println("FAIL " + what + ": expected \"" + expected + "\" in \"" + answer + "\"");
+        }
+    }
+
+    /**
+     * Play a number of rounds as one player and quit.
+     *
+     * @param rounds The number of times the player walks to the pub and back
+     * @param tricky true to also send a split line and two lines at once
+     */
+    private void playRounds(int rounds, boolean tricky) throws IOException
+    {
+        try (Player player = new Player()) {
+            if (tricky) {
+                player.out.write("go ".getBytes(StandardCharsets.UTF_8));
+                player.out.flush();
+                sleep(50);
+                player.out.write("west\n".getBytes(StandardCharsets.UTF_8));
+                player.out.flush();
+                check("split line", player.readAnswer(), "in the campus pub");
+                player.out.write("go east\ngo west\n".getBytes(StandardCharsets.UTF_8));
+                player.out.flush();
+                check("first of two lines", player.readAnswer(), "outside the main entrance");
+                check("second of two lines", player.readAnswer(), "in the campus pub");
+                player.play("go east", "outside the main entrance");
+            }
+            for (int i = 0; i < rounds; i++) {
+                player.play("go west", "in the campus pub");
+                player.play("go east", "outside the main entrance");
+            }
+            player.play("quit", "Good bye.");
+            check("end of connection", Integer.toString(player.in.read()), "-1");
+        }
+    }
+
+    private static void sleep(long millis)
+    {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Run the checks against a server started in this program.
+     *
+     * @param args The command line arguments: [players] [idle connections] [rounds]
+     * @throws Exception If the server cannot be started
+     */
+    public static void main(String[] args) throws Exception
+    {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int idle = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        TelnetServer server = new TelnetServer(new GameServer());
+        int port = server.bind(0);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.run();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "telnet-server");
+        serverThread.start();
+        TelnetLoopback loopback = new TelnetLoopback(port);
+
+        List<SocketChannel> idleConnections = new ArrayList<SocketChannel>();
+        for (int i = 0; i < idle; i++) {
+            idleConnections.add(SocketChannel.open(new InetSocketAddress("localhost", port)));
+        }
+
+        long start = System.nanoTime();
+        List<Future<?>> sessions = new ArrayList<Future<?>>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < players; i++) {
+                boolean tricky = i == 0;
+                sessions.add(executor.submit(() -> {
+                    loopback.playRounds(rounds, tricky);
+                    return null;
+                }));
+            }
+            for (Future<?> session : sessions) {
+                try {
+                    session.get();
+                }
+                catch (Exception e) {
+                    loopback.failures.incrementAndGet();
+                    System.out.println("FAIL player: " + e);
+                }
+            }
+        }
+        long nanos = System.nanoTime() - start;
+
+        sleep(100); // let the server see the players leave
+        loopback.check("idle connections", "sessions: " + server.getSessionCount(), "sessions: " + idle);
+        for (SocketChannel channel : idleConnections) {
+            channel.close();
+        }
+        server.close();
+        serverThread.join();
+
+        System.out.printf("%d players, %d idle connections: %d commands in %d ms (%.0f commands/s, %.1f us per command)%n",
+                          players, idle, loopback.commands.get(), nanos / 1_000_000,
+                          loopback.commands.get() * 1e9 / nanos, nanos / 1e3 / Math.max(1, loopback.commands.get()) * players);
+        System.out.println("output buffers allocated: " + server.getBufferPool().getAllocated());
+        if (loopback.failures.get() > 0) {
+            System.out.println(loopback.failures.get() + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("all checks passed");
+    }
+}
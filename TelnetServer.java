@@ -0,0 +1,446 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * A TelnetServer lets players connect to a GameServer over TCP and play
+ * with a line-based protocol (e.g. with telnet or nc). All connections are
+ * served by one thread with a selector, so an idle connection costs no
+ * thread and no buffer: only its Game and a small output array.
+ *
+ * Everything arriving on a connection is read into one direct buffer
+ * shared by all connections. Every complete line in it is tokenized where
+ * it is (Game.processInput(ByteBuffer)) and executed at once; only a line
+ * that has not fully arrived yet is copied, to be completed by the next
+ * read. The game's output for everything read is collected and then
+ * written through a direct buffer taken from a BufferPool, which goes
+ * back to the pool as soon as it is sent. While a player does not take
+ * their output, nothing more is read from them.
+ *
+ * Commands are executed on the selector thread, which is fast because
+ * commands take microseconds; saving and loading, which use files, make
+ * the other players wait for a moment.
+ *
+ * To start a server:  java GameServer -nio [port] ...
+ *
+ * @author Noor Karabala
+ */
+public class TelnetServer
+{
+    // the size of the buffer all connections are read into
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    // the size of the pooled output buffers, and how many free ones are kept
+    private static final int WRITE_BUFFER_SIZE = 4 * 1024;
+    private static final int POOLED_BUFFERS = 256;
+
+    // longer lines are cut off at this many bytes
+    public static final int MAX_LINE_LENGTH = 1024;
+
+    // an output array that grew beyond this size is replaced once it is sent
+    private static final int MAX_IDLE_OUTPUT = 4 * 1024;
+
+    private static final byte[] PROMPT = "> ".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The game output of one connection, waiting to be sent.
+     */
+    private static class Output extends ByteArrayOutputStream
+    {
+        // the number of bytes already moved into a write buffer
+        private int sent;
+
+        private Output()
+        {
+            super(256);
+        }
+
+        /**
+         * @return The array holding the output, valid up to size()
+         */
+        private byte[] array()
+        {
+            return buf;
+        }
+
+        /**
+         * Forget everything sent, shrinking the array if it grew large.
+         */
+        private void sentAll()
+        {
+            if (buf.length > MAX_IDLE_OUTPUT) {
+                buf = new byte[256];
+            }
+            reset();
+            sent = 0;
+        }
+    }
+
+    /**
+     * One connected player.
+     */
+    private static class Session
+    {
+        private SocketChannel channel;
+        private Game game;
+        private Output output;
+
+        // a line that has not fully arrived yet, or null
+        private byte[] line;
+        private int lineLength;
+
+        // the write buffer being sent, or null
+        private ByteBuffer sending;
+
+        // true once the player quit; the connection closes when the output is sent
+        private boolean closing;
+    }
+
+    private GameServer games;
+    private BufferPool pool;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ByteBuffer readBuffer;
+    private volatile boolean closed;
+    private volatile int sessionCount; // changed only by the selector thread
+
+    /**
+     * Create a front end for the sessions of a game server.
+     *
+     * @param games The server that creates the games (e.g. in a shared world, journaled)
+     */
+    public TelnetServer(GameServer games)
+    {
+        this.games = games;
+        pool = new BufferPool(WRITE_BUFFER_SIZE, POOLED_BUFFERS);
+        readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Start listening for players. Connections are accepted once run() is called.
+     *
+     * @param port The TCP port to listen on, or 0 for any free port
+     * @return The port listened on
+     * @throws IOException If the port cannot be opened
+     */
+    public int bind(int port) throws IOException
+    {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Serve the players until close() is called. All connections are
+     * closed when this method returns.
+     *
+     * @throws IOException If the selector fails
+     */
+    public void run() throws IOException
+    {
+        try {
+            while (!closed) {
+                selector.select();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        }
+        catch (ClosedSelectorException e) {
+            // closed while selecting
+        }
+        finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Stop serving. run() closes all connections and returns.
+     */
+    public void close()
+    {
+        closed = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * @return The number of connected players
+     */
+    public int getSessionCount()
+    {
+        return sessionCount;
+    }
+
+    /**
+     * @return The pool the output buffers are taken from
+     */
+    public BufferPool getBufferPool()
+    {
+        return pool;
+    }
+
+    /**
+     * Handle a ready key: a new connection, input, or room to write.
+     * A connection that fails is closed; the other players play on.
+     *
+     * @param key The key
+     */
+    private void handle(SelectionKey key)
+    {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            accept();
+            return;
+        }
+        Session session = (Session) key.attachment();
+        try {
+            if (key.isWritable()) {
+                send(session, key);
+            }
+            else if (key.isReadable()) {
+                receive(session, key);
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            close(session, key);
+        }
+    }
+
+    /**
+     * Accept a new connection and welcome the player.
+     */
+    private void accept()
+    {
+        SocketChannel channel;
+        try {
+            channel = serverChannel.accept();
+        }
+        catch (IOException e) {
+            return; // e.g. too many open files; try again at the next select
+        }
+        if (channel == null) {
+            return;
+        }
+        SelectionKey key = null;
+        Session session = new Session();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true); // answers are small and wanted at once
+            session.channel = channel;
+            session.output = new Output();
+            session.game = games.newGame(OutputSink.of(session.output));
+            key = channel.register(selector, SelectionKey.OP_READ, session);
+            sessionCount++;
+            session.game.printWelcome();
+            session.output.write(PROMPT, 0, PROMPT.length);
+            send(session, key);
+        }
+        catch (IOException | RuntimeException e) {
+            if (key != null) {
+                close(session, key);
+            }
+            else {
+                try {
+                    channel.close();
+                }
+                catch (IOException closeFailed) {
+                    // nothing more to do
+                }
+            }
+        }
+    }
+
+    /**
+     * Read what a player sent, play every complete line and send the output.
+     *
+     * @param session The player's session
+     * @param key The key of the connection
+     * @throws IOException If the connection fails
+     */
+    private void receive(Session session, SelectionKey key) throws IOException
+    {
+        readBuffer.clear();
+        int read = session.channel.read(readBuffer);
+        if (read < 0) {
+            close(session, key);
+            return;
+        }
+        readBuffer.flip();
+        int limit = readBuffer.limit();
+        int start = 0;
+        for (int i = 0; i < limit && !session.closing; i++) {
+            if (readBuffer.get(i) != '\n') {
+                continue;
+            }
+            int end = i;
+            if (session.line != null) {
+                append(session, start, end);
+                play(session, ByteBuffer.wrap(session.line, 0, session.lineLength));
+                session.line = null;
+                session.lineLength = 0;
+            }
+            else {
+                readBuffer.limit(end).position(start);
+                play(session, readBuffer);
+                readBuffer.limit(limit);
+            }
+            start = i + 1;
+        }
+        if (start < limit && !session.closing) {
+            append(session, start, limit);
+        }
+        send(session, key);
+    }
+
+    /**
+     * Keep part of a line that has not fully arrived yet.
+     *
+     * @param session The player's session
+     * @param start The index of the first byte in the read buffer
+     * @param end The index after the last byte
+     */
+    private void append(Session session, int start, int end)
+    {
+        int length = Math.min(end - start, MAX_LINE_LENGTH - session.lineLength);
+        if (length <= 0) {
+            return;
+        }
+        if (session.line == null) {
+            session.line = new byte[Math.max(64, length)];
+        }
+        else if (session.lineLength + length > session.line.length) {
+            session.line = Arrays.copyOf(session.line,
+                Math.min(MAX_LINE_LENGTH, Math.max(session.line.length * 2, session.lineLength + length)));
+        }
+        readBuffer.get(start, session.line, session.lineLength, length);
+        session.lineLength += length;
+    }
+
+    /**
+     * Play one line.
+     *
+     * @param session The player's session
+     * @param line The line, from its position to its limit; a trailing '\r' is ignored
+     */
+    private void play(Session session, ByteBuffer line)
+    {
+        if (line.limit() > line.position() && line.get(line.limit() - 1) == '\r') {
+            line.limit(line.limit() - 1);
+        }
+        if (line.limit() - line.position() > MAX_LINE_LENGTH) {
+            line.limit(line.position() + MAX_LINE_LENGTH);
+        }
+        if (session.game.processInput(line)) {
+            session.game.printGoodbye();
+            session.closing = true;
+        }
+        else {
+            session.output.write(PROMPT, 0, PROMPT.length);
+        }
+    }
+
+    /**
+     * Send as much of a player's output as the connection takes. If not
+     * all of it is taken, the connection waits until it can be written
+     * (and is not read meanwhile).
+     *
+     * @param session The player's session
+     * @param key The key of the connection
+     * @throws IOException If the connection fails
+     */
+    private void send(Session session, SelectionKey key) throws IOException
+    {
+        Output output = session.output;
+        while (true) {
+            if (session.sending == null) {
+                int remaining = output.size() - output.sent;
+                if (remaining == 0) {
+                    output.sentAll();
+                    if (session.closing) {
+                        close(session, key);
+                    }
+                    else {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                    return;
+                }
+                session.sending = pool.take();
+                int length = Math.min(remaining, session.sending.capacity());
+                session.sending.put(output.array(), output.sent, length);
+                output.sent += length;
+                session.sending.flip();
+            }
+            session.channel.write(session.sending);
+            if (session.sending.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            pool.give(session.sending);
+            session.sending = null;
+        }
+    }
+
+    /**
+     * Close a player's connection.
+     *
+     * @param session The player's session
+     * @param key The key of the connection
+     */
+    private void close(Session session, SelectionKey key)
+    {
+        if (!key.isValid()) {
+            return;
+        }
+        key.cancel();
+        sessionCount--;
+        if (session.sending != null) {
+            pool.give(session.sending);
+            session.sending = null;
+        }
+        try {
+            session.channel.close();
+        }
+        catch (IOException e) {
+            // nothing more to do
+        }
+    }
+
+    /**
+     * Close all connections, the server channel and the selector.
+     *
+     * @throws IOException If the selector cannot be closed
+     */
+    private void closeAll() throws IOException
+    {
+        if (!selector.isOpen()) {
+            return;
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Session) {
+                close((Session) key.attachment(), key);
+            }
+        }
+        serverChannel.close();
+        selector.close();
+    }
+}
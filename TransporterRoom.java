@@ -1,25 +1,26 @@
-import java.util.Random;
-import java.util.ArrayList;
-
 /**
  * TransporterRoom is a special type of Room where players are transported to a random room
- * when they attempt to leave. The destination room is selected randomly from all available rooms
- * in the game, independent of the chosen exit direction.
+ * when they attempt to leave. The destination room is selected randomly from all rooms
+ * in the same world, independent of the chosen exit direction. The choice is made
+ * with the random source of the player's game, so it can be replayed, and players
+ * sharing a world do not contend for one generator. Which rooms can be chosen,
+ * and how likely each is, is decided by the world's DestinationTable.
  *
  * @author Noor Karabala
  */
 public class TransporterRoom extends Room {
-    
-    private Random randomGenerator;
-    
+
     /**
-     * Constructs a new TransporterRoom with the specified description.
+     * Constructs a TransporterRoom with a known id in its world. Transporter
+     * rooms are created by their world (see World.newTransporterRoom), or
+     * loaded from a world file.
      * 
      * @param description The description of the room.
+     * @param world The world the room belongs to.
+     * @param id The id of the room in its world.
      */
-    public TransporterRoom(String description) {
-        super(description);
-        randomGenerator = new Random();
+    TransporterRoom(String description, World world, int id) {
+        super(description, world, id);
     }
 
     /** 
@@ -31,18 +32,49 @@ public class TransporterRoom extends Room {
      */
     @Override
     public Room getExit(String direction) {
-        return findRandomRoom(); // Always go to a random room
+        return findRandomRoom(getWorld().getRandom()); // Always go to a random room
+    }
+
+    /** 
+     * getExit overrides the getExit method to always return a random room,
+     * chosen with the given source.
+     * 
+     * @param direction The direction the player wishes to go (ignored in this implementation).
+     * @param random The source of the random choice.
+     * 
+     * @return A randomly chosen room.
+     */
+    @Override
+    public Room getExit(String direction, RandomSource random) {
+        return findRandomRoom(random);
+    }
+
+    /** 
+     * getExit overrides the getExit method to always return a random room.
+     * 
+     * @param direction The direction the player wishes to go (ignored in this implementation).
+     * 
+     * @return A randomly chosen room.
+     */
+    @Override
+    public Room getExit(Direction direction) {
+        return findRandomRoom(getWorld().getRandom()); // Always go to a random room
     }
 
     /**
-     * Chooses a random room from the list of all game rooms.
+     * Chooses a random room among the destinations of this room's world
+     * (any room of the world, unless it has a DestinationTable).
      * 
+     * @param random The source of the random choice.
      * @return A randomly selected room.
      */
-    private Room findRandomRoom() {
+    private Room findRandomRoom(RandomSource random) {
+        long start = System.nanoTime();
         
-        ArrayList<Room> rooms = Room.getGameRooms(); // Get the list of all room
+        World world = getWorld(); // only rooms of the same game
         
-        return rooms.get(randomGenerator.nextInt(rooms.size()));
+        Room room = world.getRoom(world.pickDestination(random));
+        CommandMetrics.get().recordTransporterExit(System.nanoTime() - start);
+        return room;
     }
 }
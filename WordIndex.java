@@ -0,0 +1,126 @@
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A WordIndex finds the room a name (e.g. "pub") stands for: a word of
+ * the description of exactly one room, ignoring case. Only words that can
+ * name a room are indexed: runs of letters, except small words such as
+ * "a", "in" or "the". So "route a" finds no room rather than the first
+ * room described with an "a", and numbers (e.g. in "(room 7)") are left
+ * to be looked up as room ids. A word of several rooms is ambiguous: it
+ * does not say which room is meant.
+ *
+ * The index of a world is built by a Builder, one room at a time. A world
+ * file holds the index of its world (see WorldWriter), so only worlds
+ * built in code build their index in memory. A WordIndex does not change
+ * once it is built, and can be used by many games at the same time.
+ *
+ * @author Noor Karabala
+ */
+public interface WordIndex
+{
+    // what find() returns for a word that names no room, or several rooms
+    int NONE = -1;
+    int AMBIGUOUS = -2;
+
+    /**
+     * Returns the room a word names.
+     *
+     * @param word A word, in any case
+     * @return The id of the only room whose description holds the word,
+     *         NONE if there is no such room, or AMBIGUOUS if there are several
+     */
+    int find(String word);
+
+    /**
+     * Reads the description of a room, e.g. World.getRoomDescription or
+     * WorldFile.readDescription.
+     */
+    interface DescriptionReader
+    {
+        /**
+         * Read the description of a room.
+         *
+         * @param id The id of the room
+         * @return The description of the room
+         */
+        String readDescription(int id);
+    }
+
+    /**
+     * Build the index of the names of a world's rooms, reading every description.
+     *
+     * @param roomCount The number of rooms
+     * @param reader Reads the description of a room
+     * @return The index
+     */
+    static WordIndex build(int roomCount, DescriptionReader reader)
+    {
+        Builder builder = new Builder();
+        for (int id = 0; id < roomCount; id++) {
+            builder.addRoom(id, reader.readDescription(id));
+        }
+        return builder.build();
+    }
+
+    /**
+     * A Builder collects the names of rooms. It holds one entry per
+     * distinct name, so it grows with the words used in the world, not
+     * with the number of rooms.
+     */
+    class Builder
+    {
+        // words that are in many descriptions but name nothing
+        private static final Set<String> SMALL_WORDS = Set.of(
+            "a", "an", "the", "and", "or", "of", "in", "on", "at", "to", "by", "for", "with",
+            "from", "into", "near", "next", "outside", "inside", "under", "over", "behind");
+
+        // the room every name stands for, or AMBIGUOUS, by lower-case name
+        private Map<String, Integer> rooms = new HashMap<String, Integer>();
+
+        /**
+         * Add the names in the description of a room.
+         *
+         * @param id The id of the room
+         * @param description The description of the room
+         */
+        public void addRoom(int id, String description)
+        {
+            for (String word : description.split("[^\\p{L}]+")) {
+                if (isName(word)) {
+                    rooms.merge(word.toLowerCase(Locale.ROOT), id,
+                                (first, next) -> first.equals(next) ? first : AMBIGUOUS);
+                }
+            }
+        }
+
+        /**
+         * @return The room every name collected stands for, or AMBIGUOUS,
+         *         by lower-case name
+         */
+        public Map<String, Integer> getNames()
+        {
+            return rooms;
+        }
+
+        /**
+         * @return The index of the names collected
+         */
+        public WordIndex build()
+        {
+            Map<String, Integer> names = rooms;
+            return word -> names.getOrDefault(word.toLowerCase(Locale.ROOT), NONE);
+        }
+
+        /**
+         * @param word A run of letters of a description
+         * @return true if the word can name a room
+         */
+        private static boolean isName(String word)
+        {
+            return !word.isEmpty() && !SMALL_WORDS.contains(word.toLowerCase(Locale.ROOT));
+        }
+    }
+}
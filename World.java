@@ -0,0 +1,845 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A World is the set of rooms that belong to one game. Each game session
+ * owns its own world, so rooms (and the items in them) are never shared
+ * between players unless they are deliberately given the same world.
+ *
+ * A room is identified by its position in the world, starting at 0.
+ * Rooms are either created in code and registered when they are built,
+ * or loaded from a WorldFile. A world loaded from a file only creates
+ * a room the first time it is asked for, so even very large maps start
+ * at once. Many worlds can be loaded from the same (read-only) file.
+ *
+ * A world loaded from a file also keeps only a limited number of rooms:
+ * when more rooms are used, the least recently used room is unloaded.
+ * If items were taken from or dropped in that room, its items are kept
+ * (with any beamers and their charge) in a compact array, and given back
+ * to the room when it is loaded again. Items that are the same as in the
+ * file again (e.g. an item taken and dropped back) are not kept at all.
+ * So the memory a world needs follows the rooms its players actually
+ * visit and change, not the size of the map.
+ *
+ * A shared world (see shared()) is played by many players at once. Its
+ * rooms guard their own items, and the loaded rooms of a file world are
+ * kept in stripes, each with its own lock and its own least recently used
+ * order, chosen by room id. Players in different rooms then hardly ever
+ * wait for each other.
+ *
+ * @author Noor Karabala
+ */
+public class World
+{
+    // the number of rooms a file world keeps loaded if not told otherwise
+    public static final int DEFAULT_LOADED_ROOMS = 10_000;
+
+    // the number of stripes of a shared file world
+    public static final int SHARED_STRIPES = 64;
+
+    private static final Item[] NO_ITEMS = new Item[0];
+
+    /**
+     * A reference to an unloaded room that may still be in use (e.g. it
+     * is the room a player stands in). While it is, the same room is
+     * used again instead of loading a second copy from the file.
+     */
+    private static class UnloadedRoom extends WeakReference<Room>
+    {
+        private int id;
+
+        private UnloadedRoom(Room room, ReferenceQueue<Room> queue)
+        {
+            super(room, queue);
+            id = room.getId();
+        }
+    }
+
+    /**
+     * The rooms of a file world with the ids of one stripe. All fields
+     * are guarded by the stripe itself.
+     */
+    private class Stripe
+    {
+        // the loaded rooms, least recently used first
+        private LinkedHashMap<Integer, Room> loadedRooms;
+
+        // unloaded rooms that may still be in use
+        private HashMap<Integer, UnloadedRoom> unloadedRooms;
+        private ReferenceQueue<Room> collectedRooms;
+
+        // the items of every loaded (or still used) room whose items changed
+        private HashMap<Integer, ItemStore> changedItems;
+
+        // the items of unloaded rooms whose items differ from the file,
+        // without the index by name a store keeps
+        private HashMap<Integer, Item[]> keptItems;
+
+        // a room with changed items unloaded by the last room loaded, or null
+        private Room unloadedChanged;
+
+        /**
+         * Create an empty stripe.
+         *
+         * @param maxLoadedRooms The number of rooms the stripe keeps loaded
+         */
+        private Stripe(int maxLoadedRooms)
+        {
+            loadedRooms = new LinkedHashMap<Integer, Room>(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry<Integer, Room> eldest)
+                {
+                    if (size() <= maxLoadedRooms) {
+                        return false;
+                    }
+                    unload(eldest.getValue());
+                    return true;
+                }
+            };
+            unloadedRooms = new HashMap<Integer, UnloadedRoom>();
+            collectedRooms = new ReferenceQueue<Room>();
+            changedItems = new HashMap<Integer, ItemStore>();
+            keptItems = new HashMap<Integer, Item[]>();
+        }
+
+        /**
+         * Returns a room, loading it if it is not loaded.
+         *
+         * @param id The id of the room
+         * @return The room
+         */
+        private Room getRoom(int id)
+        {
+            Room room;
+            Room unloaded;
+            synchronized (this) {
+                room = loadedRooms.get(id);
+                if (room != null) {
+                    return room;
+                }
+                room = load(id);
+                loadedRooms.put(id, room);
+                unloaded = unloadedChanged;
+                unloadedChanged = null;
+            }
+            if (unloaded != null) {
+                keepItems(unloaded);
+            }
+            return room;
+        }
+
+        /**
+         * Load a room: reuse it if it was unloaded but is still in use,
+         * otherwise read it from the file and give it back its saved items.
+         *
+         * @param id The id of the room
+         * @return The loaded room
+         */
+        private Room load(int id)
+        {
+            forgetCollectedRooms();
+            UnloadedRoom unloaded = unloadedRooms.remove(id);
+            if (unloaded != null) {
+                Room room = unloaded.get();
+                if (room != null) {
+                    return room;
+                }
+            }
+
+            Room room = file.readRoom(id, World.this);
+            ItemStore items = changedItems.get(id);
+            if (items != null) {
+                room.setItemStore(items);
+            }
+            else if (keptItems.containsKey(id)) {
+                room.setItemStore(toStore(keptItems.get(id)));
+            }
+            return room;
+        }
+
+        /**
+         * Unload a room. If its items changed, they are kept in a compact
+         * form once the stripe is unlocked (see keepItems()).
+         *
+         * @param room The room to unload
+         */
+        private void unload(Room room)
+        {
+            unloadedRooms.put(room.getId(), new UnloadedRoom(room, collectedRooms));
+            if (changedItems.containsKey(room.getId())) {
+                unloadedChanged = room;
+            }
+        }
+
+        /**
+         * Keep the changed items of an unloaded room in a compact form.
+         * The room is locked first, as rooms are locked before stripes
+         * (see itemsChanged), so its items cannot change meanwhile.
+         *
+         * @param room The unloaded room
+         */
+        private void keepItems(Room room)
+        {
+            synchronized (room) {
+                ItemStore items = room.getItemStore();
+                synchronized (this) {
+                    if (loadedRooms.containsKey(room.getId()) || changedItems.get(room.getId()) != items) {
+                        return; // loaded again, or given other items since
+                    }
+                    keep(room.getId(), items);
+                }
+            }
+        }
+
+        /**
+         * Keep the items of a room that is not loaded in a compact form,
+         * or forget them if they are the same as in the file. Nobody may
+         * change the items meanwhile.
+         *
+         * @param id The id of the room
+         * @param items The items of the room, or null if it has none
+         */
+        private void keep(int id, ItemStore items)
+        {
+            changedItems.remove(id);
+            Item[] kept = toArray(items);
+            if (matchesFile(id, kept)) {
+                keptItems.remove(id);
+            }
+            else {
+                keptItems.put(id, kept);
+            }
+        }
+
+        /**
+         * Forget the unloaded rooms that have been garbage collected.
+         */
+        private void forgetCollectedRooms()
+        {
+            UnloadedRoom collected;
+            while ((collected = (UnloadedRoom) collectedRooms.poll()) != null) {
+                if (unloadedRooms.get(collected.id) == collected) {
+                    unloadedRooms.remove(collected.id);
+                    // the room was still used when it was unloaded; nobody can change its items now
+                    ItemStore items = changedItems.get(collected.id);
+                    if (items != null && !loadedRooms.containsKey(collected.id)) {
+                        keep(collected.id, items);
+                    }
+                }
+            }
+        }
+    }
+
+    // stores the rooms of a world built in code, indexed by room id
+    private ArrayList<Room> rooms;
+
+    // the file the rooms are loaded from, or null
+    private WorldFile file;
+    private int maxLoadedRooms;
+
+    // the rooms of a file world; room id i is in stripes[i & (stripes.length - 1)]
+    private Stripe[] stripes;
+
+    // true if many players play in this world at once
+    private boolean shared;
+
+    // the id of the room where the game starts
+    private int startRoomId;
+
+    // the random choices made in this world by callers without a RandomSource of their own
+    private SeededRandom random;
+
+    // where transporter rooms send the player, or null for any room
+    private volatile DestinationTable destinations;
+
+    // the routes between the rooms of a world built in code, built when first needed
+    private volatile RouteIndex routes;
+
+    // the rooms the words of their descriptions stand for in a world built in code,
+    // built when first needed
+    private volatile WordIndex words;
+
+    // where the events of this world are published, or null
+    private volatile EventBus events;
+
+    /**
+     * Create an empty world.
+     */
+    public World()
+    {
+        rooms = new ArrayList<Room>();
+        random = new SeededRandom(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Create a world whose rooms are loaded from a world file
+     * when they are first used.
+     *
+     * @param file The world file
+     */
+    public World(WorldFile file)
+    {
+        this(file, DEFAULT_LOADED_ROOMS);
+    }
+
+    /**
+     * Create a world whose rooms are loaded from a world file
+     * when they are first used, keeping at most the given number
+     * of rooms loaded.
+     *
+     * @param file The world file
+     * @param maxLoadedRooms The number of rooms kept loaded
+     */
+    public World(WorldFile file, int maxLoadedRooms)
+    {
+        this(file, maxLoadedRooms, 1);
+    }
+
+    /**
+     * Create a world whose rooms are loaded from a world file, with
+     * its loaded rooms kept in the given number of stripes.
+     *
+     * @param file The world file
+     * @param maxLoadedRooms The number of rooms kept loaded
+     * @param stripeCount The number of stripes, a power of 2
+     */
+    private World(WorldFile file, int maxLoadedRooms, int stripeCount)
+    {
+        this.file = file;
+        this.maxLoadedRooms = maxLoadedRooms;
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(Math.max(1, (maxLoadedRooms + stripeCount - 1) / stripeCount));
+        }
+        startRoomId = file.getStartRoomId();
+        random = new SeededRandom(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Create a world played by many players at once, loaded from a world
+     * file.
+     *
+     * @param file The world file
+     * @return The new world
+     */
+    public static World shared(WorldFile file)
+    {
+        World world = new World(file, DEFAULT_LOADED_ROOMS, SHARED_STRIPES);
+        world.shared = true;
+        return world;
+    }
+
+    /**
+     * Make a world built in code a world played by many players at once.
+     * Its rooms must all have been built.
+     *
+     * @param world The world built in code
+     * @return The world
+     */
+    public static World shared(World world)
+    {
+        if (world.file != null) {
+            throw new IllegalArgumentException("share a file world with shared(WorldFile)");
+        }
+        world.shared = true;
+        return world;
+    }
+
+    /**
+     * Publish the events of this world (players moving, items taken and
+     * dropped, beamers charged and fired) on an event bus.
+     *
+     * @param events The bus, or null to publish no events
+     */
+    public void setEventBus(EventBus events)
+    {
+        this.events = events;
+    }
+
+    /**
+     * @return The bus the events of this world are published on, or null
+     */
+    public EventBus getEventBus()
+    {
+        return events;
+    }
+
+    /**
+     * Publish an event of this world, if anyone listens.
+     *
+     * @param type What happened
+     * @param sessionId The session id of the player's game, or 0 if no player is known
+     * @param roomId The id of the room it happened in
+     * @param item The item it was about, or null
+     */
+    void publish(GameEvent.Type type, long sessionId, int roomId, Item item)
+    {
+        EventBus bus = events;
+        if (bus != null && bus.hasSubscribers()) {
+            bus.publish(new GameEvent(type, sessionId, roomId, item == null ? null : item.getName()));
+        }
+    }
+
+    /**
+     * @return true if many players play in this world at once
+     */
+    public boolean isShared()
+    {
+        return shared;
+    }
+
+    /**
+     * Create a room described "description" in this world, e.g. "a kitchen"
+     * or "an open court yard". Initially, it has no exits.
+     *
+     * @param description The room's description
+     * @return The new room, with the next id of this world
+     */
+    public Room newRoom(String description)
+    {
+        return addRoom(new Room(description, this, nextRoomId()));
+    }
+
+    /**
+     * Create a transporter room described "description" in this world.
+     *
+     * @param description The room's description
+     * @return The new transporter room, with the next id of this world
+     */
+    public TransporterRoom newTransporterRoom(String description)
+    {
+        return addRoom(new TransporterRoom(description, this, nextRoomId()));
+    }
+
+    /**
+     * @return The id the next room created in this world will have
+     */
+    private int nextRoomId()
+    {
+        if (file != null) {
+            throw new UnsupportedOperationException("the rooms of a file world are loaded from the file");
+        }
+        return rooms.size();
+    }
+
+    /**
+     * Register a room created with the next id of this world.
+     *
+     * @param room The room to add
+     * @return The room
+     */
+    private <R extends Room> R addRoom(R room)
+    {
+        rooms.add(room);
+        words = null;
+        return room;
+    }
+
+    /**
+     * Returns the room with the given id, loading it from the
+     * world file if it is not loaded.
+     *
+     * @param id The id of the room
+     * @return The room with that id
+     */
+    public Room getRoom(int id)
+    {
+        if (file == null) {
+            return rooms.get(id);
+        }
+        return stripe(id).getRoom(id);
+    }
+
+    /**
+     * Returns the stripe of a room of a file world.
+     *
+     * @param id The id of the room
+     * @return The stripe the room is kept in
+     */
+    private Stripe stripe(int id)
+    {
+        return stripes[id & (stripes.length - 1)];
+    }
+
+    /**
+     * Called by a room when items were added to it or removed from it.
+     * A file world keeps the items of the room from now on.
+     *
+     * @param room The room whose items changed
+     */
+    void itemsChanged(Room room)
+    {
+        if (file != null) {
+            Stripe stripe = stripe(room.getId());
+            synchronized (stripe) {
+                stripe.changedItems.put(room.getId(), room.getItemStore());
+            }
+        }
+    }
+
+    /**
+     * Called by a room when one of its exits was set. A world built in
+     * code has to find its routes again.
+     */
+    void exitsChanged()
+    {
+        routes = null;
+    }
+
+    /**
+     * Returns the routes between the rooms of this world. The routes of a
+     * file world are shared by all worlds loaded from the file.
+     *
+     * @return The routes
+     */
+    public RouteIndex getRouteIndex()
+    {
+        if (file != null) {
+            return file.getRouteIndex();
+        }
+        RouteIndex index = routes;
+        if (index == null) {
+            index = RouteIndex.build(rooms.size(), this::readExits);
+            routes = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the rooms the words of their descriptions stand for. The
+     * index of a file world is read from the file.
+     *
+     * @return The index of the words
+     */
+    public WordIndex getWordIndex()
+    {
+        if (file != null) {
+            return file.getWordIndex();
+        }
+        WordIndex index = words;
+        if (index == null) {
+            index = WordIndex.build(rooms.size(), this::getRoomDescription);
+            words = index;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the exits of a room. The rooms of a file world are not
+     * loaded for this; their exits are read from the file.
+     *
+     * @param id The id of the room
+     * @param exits Receives the id of the room behind every exit, indexed
+     *              by Direction ordinal, or -1 where there is no exit
+     * @return true if the room is a transporter room
+     */
+    public boolean readExits(int id, int[] exits)
+    {
+        if (file != null) {
+            return file.readExits(id, exits);
+        }
+        Room room = rooms.get(id);
+        for (Direction direction : Direction.values()) {
+            exits[direction.ordinal()] = room.getExitId(direction);
+        }
+        return room instanceof TransporterRoom;
+    }
+
+    /**
+     * Returns the items of a room. The rooms of a file world are not
+     * loaded for this; the items of a room whose items never changed are
+     * read from the file.
+     *
+     * @param id The id of the room
+     * @return The items of the room, or null if it has none
+     */
+    public ItemStore readItems(int id)
+    {
+        if (file == null) {
+            return rooms.get(id).getItemStore();
+        }
+        Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            if (stripe.changedItems.containsKey(id)) {
+                return stripe.changedItems.get(id);
+            }
+            if (stripe.keptItems.containsKey(id)) {
+                return toStore(stripe.keptItems.get(id));
+            }
+        }
+        return file.readItems(id);
+    }
+
+    /**
+     * Returns the description of a room. The rooms of a file world are
+     * not loaded for this; their description is read from the file.
+     *
+     * @param id The id of the room
+     * @return The description of the room
+     */
+    public String getRoomDescription(int id)
+    {
+        if (file != null) {
+            return file.readDescription(id);
+        }
+        return rooms.get(id).getShortDescription();
+    }
+
+    /**
+     * Returns the random number generator for the random choices made in
+     * this world by callers without a RandomSource of their own. Games
+     * use their own source (see Game.setRandomSource).
+     *
+     * @return The random number generator of this world
+     */
+    public SeededRandom getRandom()
+    {
+        return random;
+    }
+
+    /**
+     * Set where the transporter rooms of this world send the player.
+     *
+     * @param destinations The destinations, or null for any room of the world
+     */
+    public void setDestinationTable(DestinationTable destinations)
+    {
+        this.destinations = destinations;
+    }
+
+    /**
+     * Pick the room a transporter room sends the player to.
+     *
+     * @param random The source of the random choice
+     * @return The id of the destination room
+     */
+    public int pickDestination(RandomSource random)
+    {
+        DestinationTable table = destinations;
+        if (table == null) {
+            return random.nextInt(getRoomCount());
+        }
+        return table.pick(random);
+    }
+
+    /**
+     * @return true if the rooms of this world are loaded from a world file
+     */
+    public boolean isLoadedFromFile()
+    {
+        return file != null;
+    }
+
+    /**
+     * Returns a new world loaded from the same world file, with every
+     * room as it is in the file.
+     *
+     * @return The new world
+     * @throws UnsupportedOperationException If this world was built in code
+     */
+    public World reloaded()
+    {
+        if (file == null) {
+            throw new UnsupportedOperationException("the world was not loaded from a file");
+        }
+        World world = new World(file, maxLoadedRooms, stripes.length);
+        world.shared = shared;
+        world.destinations = destinations;
+        world.events = events;
+        world.startRoomId = startRoomId;
+        return world;
+    }
+
+    /**
+     * Returns the ids of the rooms whose items have to be saved to
+     * restore this world: every room of a world built in code, and the
+     * rooms of a file world whose items changed.
+     *
+     * @return The ids of the rooms, in increasing order
+     */
+    public int[] getChangedRoomIds()
+    {
+        if (file == null) {
+            int[] ids = new int[rooms.size()];
+            for (int id = 0; id < ids.length; id++) {
+                ids[id] = id;
+            }
+            return ids;
+        }
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                ids.addAll(stripe.changedItems.keySet());
+                ids.addAll(stripe.keptItems.keySet());
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).sorted().distinct().toArray();
+    }
+
+    /**
+     * Returns the items of a room without loading it.
+     *
+     * @param id The id of a room returned by getChangedRoomIds
+     * @return The items of the room, or null if it has none
+     */
+    public ItemStore getRoomItems(int id)
+    {
+        if (file == null) {
+            return rooms.get(id).getItemStore();
+        }
+        Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            if (stripe.changedItems.containsKey(id)) {
+                return stripe.changedItems.get(id);
+            }
+            return toStore(stripe.keptItems.get(id));
+        }
+    }
+
+    /**
+     * Replace the items of a room, e.g. when a saved game is restored.
+     *
+     * @param id The id of the room
+     * @param items The new items of the room
+     */
+    public void setRoomItems(int id, ItemStore items)
+    {
+        if (file == null) {
+            rooms.get(id).setItemStore(items);
+            return;
+        }
+        Room room;
+        Stripe stripe = stripe(id);
+        synchronized (stripe) {
+            room = stripe.loadedRooms.get(id);
+            if (room == null) {
+                stripe.keep(id, items);
+            }
+            else {
+                stripe.changedItems.put(id, items);
+                stripe.keptItems.remove(id);
+            }
+        }
+        // rooms are locked before stripes (see itemsChanged), never after
+        if (room != null) {
+            room.setItemStore(items);
+        }
+    }
+
+    /**
+     * Returns whether items are the same as those of a room in the file:
+     * items of the same types in the same order, with no beamer charged.
+     *
+     * @param id The id of the room
+     * @param items The items
+     * @return true if the room has the same items in the file
+     */
+    private boolean matchesFile(int id, Item[] items)
+    {
+        ItemStore original = file.readItems(id);
+        if (original == null || original.isEmpty()) {
+            return items.length == 0;
+        }
+        if (original.size() != items.length) {
+            return false;
+        }
+        int i = 0;
+        for (Item item : original) {
+            Item kept = items[i++];
+            if (kept.getClass() != item.getClass() || !kept.getType().equals(item.getType())
+                || (kept instanceof Beamer && ((Beamer) kept).getIsCharged())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param items A store of items, or null
+     * @return The items of the store, in order
+     */
+    private static Item[] toArray(ItemStore items)
+    {
+        if (items == null || items.isEmpty()) {
+            return NO_ITEMS;
+        }
+        Item[] array = new Item[items.size()];
+        int i = 0;
+        for (Item item : items) {
+            array[i++] = item;
+        }
+        return array;
+    }
+
+    /**
+     * @param items Items kept by toArray(), or null
+     * @return A store of the items, or null if there are none
+     */
+    private static ItemStore toStore(Item[] items)
+    {
+        if (items == null || items.length == 0) {
+            return null;
+        }
+        ItemStore store = new ItemStore();
+        for (Item item : items) {
+            store.add(item);
+        }
+        return store;
+    }
+
+    /**
+     * Returns the number of rooms in this world.
+     *
+     * @return The number of rooms
+     */
+    public int getRoomCount()
+    {
+        if (file == null) {
+            return rooms.size();
+        }
+        return file.getRoomCount();
+    }
+
+    /**
+     * Returns the number of rooms currently loaded.
+     *
+     * @return The number of loaded rooms
+     */
+    public int getLoadedRoomCount()
+    {
+        if (file == null) {
+            return rooms.size();
+        }
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.loadedRooms.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Set the room where the game starts.
+     *
+     * @param room The start room
+     */
+    public void setStartRoom(Room room)
+    {
+        startRoomId = room.getId();
+    }
+
+    /**
+     * Returns the room where the game starts.
+     *
+     * @return The start room
+     */
+    public Room getStartRoom()
+    {
+        return getRoom(startRoomId);
+    }
+}
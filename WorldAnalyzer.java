@@ -0,0 +1,571 @@
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * WorldAnalyzer checks a world for mistakes in its exits and items:
+ * rooms the player cannot reach from the start room, rooms without any
+ * exit, exits without a way back, and cookies and beamers the player
+ * cannot get. As items other than cookies can only be picked up after
+ * eating a cookie (see Game.take), a beamer can only be had if a cookie
+ * can be reached as well.
+ *
+ * The rooms are read (without loading them, for a file world) and checked
+ * in parallel on a fork/join pool, and the rooms reachable from the start
+ * room are found with a parallel breadth-first search, one level at a time.
+ * Transporter rooms send the player to a random room, so their exits are
+ * not followed; a reachable transporter room is reported instead.
+ *
+ * To analyze a world:  java WorldAnalyzer [world file]
+ *
+ * @author Noor Karabala
+ */
+public class WorldAnalyzer
+{
+    // ranges of fewer rooms than this are not split between tasks
+    private static final int CHUNK = 4096;
+
+    // the number of room ids listed for every kind of problem
+    private static final int SAMPLES = 20;
+
+    private static final int DIRECTIONS = Direction.values().length;
+
+    // bits of itemFlags
+    private static final byte COOKIE = 1;
+    private static final byte BEAMER = 2;
+
+    /**
+     * The outcome of an analysis. The lists hold the first few rooms
+     * (or exits) found of every kind; the counts are complete.
+     */
+    public static class Report
+    {
+        private int roomCount;
+        private int reachableCount;
+        private boolean transporterReachable;
+        private List<Integer> unreachableRooms = new ArrayList<Integer>();
+        private int deadEndCount;
+        private List<Integer> deadEnds = new ArrayList<Integer>();
+        private long oneWayExitCount;
+        private List<String> oneWayExits = new ArrayList<String>();
+        private int cookieCount;
+        private int reachableCookieCount;
+        private int beamerCount;
+        private int reachableBeamerCount;
+        private long millis;
+
+        /**
+         * @return The number of rooms of the world
+         */
+        public int getRoomCount()
+        {
+            return roomCount;
+        }
+
+        /**
+         * @return The number of rooms that can be walked to from the start room
+         */
+        public int getReachableCount()
+        {
+            return reachableCount;
+        }
+
+        /**
+         * @return true if a transporter room can be walked to, which can lead anywhere
+         */
+        public boolean isTransporterReachable()
+        {
+            return transporterReachable;
+        }
+
+        /**
+         * @return The number of rooms that cannot be walked to from the start room
+         */
+        public int getUnreachableCount()
+        {
+            return roomCount - reachableCount;
+        }
+
+        /**
+         * @return The first rooms that cannot be walked to from the start room
+         */
+        public List<Integer> getUnreachableRooms()
+        {
+            return unreachableRooms;
+        }
+
+        /**
+         * @return The number of rooms (other than transporter rooms) without any exit
+         */
+        public int getDeadEndCount()
+        {
+            return deadEndCount;
+        }
+
+        /**
+         * @return The first rooms without any exit
+         */
+        public List<Integer> getDeadEnds()
+        {
+            return deadEnds;
+        }
+
+        /**
+         * @return The number of exits whose room has no exit back in the opposite direction
+         */
+        public long getOneWayExitCount()
+        {
+            return oneWayExitCount;
+        }
+
+        /**
+         * @return The first one-way exits, e.g. "12 east -> 13"
+         */
+        public List<String> getOneWayExits()
+        {
+            return oneWayExits;
+        }
+
+        /**
+         * @return The number of cookies in the world
+         */
+        public int getCookieCount()
+        {
+            return cookieCount;
+        }
+
+        /**
+         * @return The number of cookies in rooms that can be walked to
+         */
+        public int getReachableCookieCount()
+        {
+            return reachableCookieCount;
+        }
+
+        /**
+         * @return The number of beamers in the world
+         */
+        public int getBeamerCount()
+        {
+            return beamerCount;
+        }
+
+        /**
+         * @return The number of beamers the player can pick up: in rooms that can
+         *         be walked to, provided a cookie can be eaten first
+         */
+        public int getReachableBeamerCount()
+        {
+            return reachableBeamerCount;
+        }
+
+        /**
+         * @return The time the analysis took, in milliseconds
+         */
+        public long getMillis()
+        {
+            return millis;
+        }
+
+        /**
+         * @return true if no problem was found
+         */
+        public boolean isClean()
+        {
+            return getUnreachableCount() == 0 && deadEndCount == 0 && oneWayExitCount == 0
+                && reachableCookieCount == cookieCount && reachableBeamerCount == beamerCount;
+        }
+
+        /**
+         * @return The report, one finding per line
+         */
+        public String toString()
+        {
+            StringBuilder s = new StringBuilder();
+            s.append("Rooms: ").append(roomCount).append(", analyzed in ").append(millis).append(" ms\n");
+            s.append("Unreachable rooms: ").append(getUnreachableCount()).append(list(unreachableRooms))
+                .append('\n');
+            if (transporterReachable) {
+                s.append("  (a transporter room is reachable and may lead to any room)\n");
+            }
+            s.append("Dead ends: ").append(deadEndCount).append(list(deadEnds)).append('\n');
+            s.append("One-way exits: ").append(oneWayExitCount).append(list(oneWayExits)).append('\n');
+            s.append("Cookies reachable: ").append(reachableCookieCount).append(" of ").append(cookieCount)
+                .append('\n');
+            s.append("Beamers reachable: ").append(reachableBeamerCount).append(" of ").append(beamerCount);
+            if (beamerCount > 0 && reachableCookieCount == 0) {
+                s.append(" (no cookie can be eaten to pick them up)");
+            }
+            return s.toString();
+        }
+
+        /**
+         * Returns the found rooms or exits as the end of a report line.
+         *
+         * @param found The first rooms or exits found
+         * @return The list, e.g. " (3, 7, 9)", or nothing if the list is empty
+         */
+        private String list(List<?> found)
+        {
+            if (found.isEmpty()) {
+                return "";
+            }
+            String s = found.toString();
+            return " (" + s.substring(1, s.length() - 1) + ")";
+        }
+    }
+
+    /**
+     * Works on a range of room ids.
+     */
+    private interface RangeAction
+    {
+        void run(int from, int to);
+    }
+
+    /**
+     * Splits a range of room ids into chunks that are worked on in parallel.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private static class RangeTask extends RecursiveAction
+    {
+        private int from;
+        private int to;
+        private RangeAction action;
+
+        private RangeTask(int from, int to, RangeAction action)
+        {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        protected void compute()
+        {
+            if (to - from <= CHUNK) {
+                action.run(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, middle, action), new RangeTask(middle, to, action));
+        }
+    }
+
+    private World world;
+    private ForkJoinPool pool;
+    private int roomCount;
+
+    // the exits of room r are exits[r * DIRECTIONS + ordinal], -1 where there is none
+    private int[] exits;
+    private boolean[] transporter;
+    private byte[] itemFlags;
+    private int[] cookies;
+    private int[] beamers;
+
+    // a bit for every room reachable from the start room
+    private AtomicLongArray reached;
+
+    /**
+     * Create an analyzer of a world, using the common fork/join pool.
+     *
+     * @param world The world to analyze; it must not be played while it is analyzed
+     */
+    public WorldAnalyzer(World world)
+    {
+        this(world, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Create an analyzer of a world.
+     *
+     * @param world The world to analyze; it must not be played while it is analyzed
+     * @param pool The pool the analysis runs on
+     */
+    public WorldAnalyzer(World world, ForkJoinPool pool)
+    {
+        this.world = world;
+        this.pool = pool;
+        roomCount = world.getRoomCount();
+    }
+
+    /**
+     * Analyze the world.
+     *
+     * @return The report of the analysis
+     */
+    public Report analyze()
+    {
+        long start = System.nanoTime();
+        exits = new int[roomCount * DIRECTIONS];
+        transporter = new boolean[roomCount];
+        itemFlags = new byte[roomCount];
+        cookies = new int[roomCount];
+        beamers = new int[roomCount];
+        pool.invoke(new RangeTask(0, roomCount, this::readRooms));
+
+        reached = new AtomicLongArray((roomCount + 63) / 64);
+        if (roomCount > 0) {
+            findReachableRooms(world.getStartRoom().getId());
+        }
+
+        // the number of one-way exits of every room
+        byte[] oneWay = new byte[roomCount];
+        pool.invoke(new RangeTask(0, roomCount, (from, to) -> findOneWayExits(from, to, oneWay)));
+
+        Report report = summarize(oneWay);
+        report.millis = (System.nanoTime() - start) / 1_000_000;
+        return report;
+    }
+
+    /**
+     * Read the exits and items of a range of rooms.
+     *
+     * @param from The first room id
+     * @param to The room id after the last
+     */
+    private void readRooms(int from, int to)
+    {
+        int[] roomExits = new int[DIRECTIONS];
+        for (int id = from; id < to; id++) {
+            transporter[id] = world.readExits(id, roomExits);
+            System.arraycopy(roomExits, 0, exits, id * DIRECTIONS, DIRECTIONS);
+            ItemStore items = world.readItems(id);
+            if (items == null) {
+                continue;
+            }
+            for (Item item : items) {
+                if (item instanceof Beamer) {
+                    beamers[id]++;
+                    itemFlags[id] |= BEAMER;
+                }
+                else if (item.getName().equals("cookie")) {
+                    cookies[id]++;
+                    itemFlags[id] |= COOKIE;
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the rooms reachable from a room with a parallel breadth-first
+     * search: the rooms of every level are expanded in parallel, and the
+     * rooms they lead to that were not reached before form the next level.
+     *
+     * @param startId The id of the room to start from
+     */
+    private void findReachableRooms(int startId)
+    {
+        mark(startId);
+        int[] level = { startId };
+        while (level.length > 0) {
+            level = pool.invoke(new ExpandTask(level, 0, level.length));
+        }
+    }
+
+    /**
+     * Mark a room as reached.
+     *
+     * @param id The id of the room
+     * @return true if the room was not reached before
+     */
+    private boolean mark(int id)
+    {
+        int word = id >>> 6;
+        long bit = 1L << id;
+        long old;
+        do {
+            old = reached.get(word);
+            if ((old & bit) != 0) {
+                return false;
+            }
+        } while (!reached.compareAndSet(word, old, old | bit));
+        return true;
+    }
+
+    /**
+     * @param id The id of a room
+     * @return true if the room was reached
+     */
+    private boolean isReached(int id)
+    {
+        return (reached.get(id >>> 6) & (1L << id)) != 0;
+    }
+
+    /**
+     * Expands part of a level of the search, returning the newly
+     * reached rooms.
+     */
+    @SuppressWarnings("serial") // tasks are never serialized
+    private class ExpandTask extends RecursiveTask<int[]>
+    {
+        private int[] level;
+        private int from;
+        private int to;
+
+        private ExpandTask(int[] level, int from, int to)
+        {
+            this.level = level;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected int[] compute()
+        {
+            if (to - from > CHUNK) {
+                int middle = (from + to) >>> 1;
+                ExpandTask second = new ExpandTask(level, middle, to);
+                second.fork();
+                int[] first = new ExpandTask(level, from, middle).compute();
+                int[] rest = second.join();
+                int[] both = Arrays.copyOf(first, first.length + rest.length);
+                System.arraycopy(rest, 0, both, first.length, rest.length);
+                return both;
+            }
+            int[] next = new int[16];
+            int count = 0;
+            for (int i = from; i < to; i++) {
+                int room = level[i];
+                if (transporter[room]) {
+                    continue; // its exits lead to a random room
+                }
+                for (int d = 0; d < DIRECTIONS; d++) {
+                    int neighbour = exits[room * DIRECTIONS + d];
+                    if (neighbour >= 0 && mark(neighbour)) {
+                        if (count == next.length) {
+                            next = Arrays.copyOf(next, count * 2);
+                        }
+                        next[count++] = neighbour;
+                    }
+                }
+            }
+            return Arrays.copyOf(next, count);
+        }
+    }
+
+    /**
+     * Count the one-way exits of a range of rooms: exits leading to a room
+     * that has no exit back in the opposite direction. Exits of and into
+     * transporter rooms are left out, as they lead to a random room anyway.
+     *
+     * @param from The first room id
+     * @param to The room id after the last
+     * @param oneWay Receives the number of one-way exits of every room
+     */
+    private void findOneWayExits(int from, int to, byte[] oneWay)
+    {
+        Direction[] directions = Direction.values();
+        for (int id = from; id < to; id++) {
+            if (transporter[id]) {
+                continue;
+            }
+            for (Direction direction : directions) {
+                int neighbour = exits[id * DIRECTIONS + direction.ordinal()];
+                if (neighbour < 0 || transporter[neighbour]) {
+                    continue;
+                }
+                if (exits[neighbour * DIRECTIONS + direction.opposite().ordinal()] != id) {
+                    oneWay[id]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Count the problems found and list the first of every kind.
+     *
+     * @param oneWay The number of one-way exits of every room
+     * @return The report
+     */
+    private Report summarize(byte[] oneWay)
+    {
+        Report report = new Report();
+        report.roomCount = roomCount;
+        boolean cookieReachable = false;
+        int reachableBeamers = 0;
+        Direction[] directions = Direction.values();
+        for (int id = 0; id < roomCount; id++) {
+            boolean isReached = isReached(id);
+            if (isReached) {
+                report.reachableCount++;
+                report.transporterReachable |= transporter[id];
+            }
+            else if (report.unreachableRooms.size() < SAMPLES) {
+                report.unreachableRooms.add(id);
+            }
+
+            if (!transporter[id] && !hasExit(id)) {
+                report.deadEndCount++;
+                if (report.deadEnds.size() < SAMPLES) {
+                    report.deadEnds.add(id);
+                }
+            }
+
+            if (oneWay[id] > 0) {
+                report.oneWayExitCount += oneWay[id];
+                for (Direction direction : directions) {
+                    int neighbour = exits[id * DIRECTIONS + direction.ordinal()];
+                    if (report.oneWayExits.size() < SAMPLES && neighbour >= 0 && !transporter[neighbour]
+                        && exits[neighbour * DIRECTIONS + direction.opposite().ordinal()] != id) {
+                        report.oneWayExits.add(id + " " + direction + " -> " + neighbour);
+                    }
+                }
+            }
+
+            if (itemFlags[id] != 0) {
+                report.cookieCount += cookies[id];
+                report.beamerCount += beamers[id];
+                if (isReached) {
+                    report.reachableCookieCount += cookies[id];
+                    cookieReachable |= cookies[id] > 0;
+                    reachableBeamers += beamers[id];
+                }
+            }
+        }
+        // beamers can only be picked up after eating a cookie
+        report.reachableBeamerCount = cookieReachable ? reachableBeamers : 0;
+        return report;
+    }
+
+    /**
+     * @param id The id of a room
+     * @return true if the room has at least one exit
+     */
+    private boolean hasExit(int id)
+    {
+        for (int d = 0; d < DIRECTIONS; d++) {
+            if (exits[id * DIRECTIONS + d] >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Analyze the world file given as the argument, or the campus, and
+     * print the report.
+     *
+     * @param args The command line arguments: [world file]
+     * @throws IOException If the world file cannot be opened
+     */
+    public static void main(String[] args) throws IOException
+    {
+        World world;
+        if (args.length > 0) {
+            world = new World(WorldFile.open(Paths.get(args[0])));
+        }
+        else {
+            world = Game.createRooms();
+        }
+        Report report = new WorldAnalyzer(world).analyze();
+        System.out.println(report);
+        if (!report.isClean()) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * WorldCompiler reads a world written as text and compiles it into a
+ * world file that games can load (see WorldFile). The text has one
+ * statement per line; empty lines and lines starting with # are ignored.
+ * Rooms are named, and get their ids in the order they are declared:
+ *
+ *     room <name> <description>
+ *     transporter <name> <description>
+ *     exit <room> <direction> <neighbour room>
+ *     item <room> <item name> <weight> <description>
+ *     beamer <room> <beamer name> <weight> <description>
+ *     start <room>
+ *
+ * If there is no "start" line, the game starts in the first room.
+ *
+ * To compile a world:  java WorldCompiler campus.txt campus.zwf
+ *
+ * @author Noor Karabala
+ */
+public class WorldCompiler
+{
+    /**
+     * A room as it is declared in the text.
+     */
+    private static class RoomSource
+    {
+        private boolean transporter;
+        private String description;
+        private List<Direction> directions = new ArrayList<Direction>();
+        private List<String> neighbours = new ArrayList<String>();
+        private List<Item> items = new ArrayList<Item>();
+    }
+
+    private List<RoomSource> rooms;
+    private HashMap<String, Integer> roomIds;
+    private String startRoom;
+
+    /**
+     * Create a compiler with no rooms.
+     */
+    public WorldCompiler()
+    {
+        rooms = new ArrayList<RoomSource>();
+        roomIds = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Compile a text world into a world file.
+     *
+     * @param source The text world
+     * @param target The world file to write
+     * @throws IOException If a file cannot be read or written, or the text is not a valid world
+     */
+    public static void compile(Path source, Path target) throws IOException
+    {
+        WorldCompiler compiler = new WorldCompiler();
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            compiler.read(reader);
+        }
+        compiler.write(target);
+    }
+
+    /**
+     * Read all statements of a text world.
+     *
+     * @param reader The reader of the text
+     * @throws IOException If the text cannot be read or is not a valid world
+     */
+    public void read(BufferedReader reader) throws IOException
+    {
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                readStatement(line.split("\\s+", 5));
+            }
+            catch (RuntimeException e) {
+                throw new IOException("line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Read one statement.
+     *
+     * @param words The words of the statement
+     */
+    private void readStatement(String[] words)
+    {
+        String keyword = words[0];
+        if (keyword.equals("room") || keyword.equals("transporter")) {
+            expect(words, 3);
+            if (roomIds.containsKey(words[1])) {
+                throw new IllegalArgumentException("room " + words[1] + " declared twice");
+            }
+            RoomSource room = new RoomSource();
+            room.transporter = keyword.equals("transporter");
+            room.description = join(words, 2);
+            roomIds.put(words[1], rooms.size());
+            rooms.add(room);
+        }
+        else if (keyword.equals("exit")) {
+            expect(words, 4);
+            RoomSource room = room(words[1]);
+            Direction direction = Direction.fromString(words[2]);
+            if (direction == null) {
+                throw new IllegalArgumentException("not a direction: " + words[2]);
+            }
+            if (room.directions.contains(direction)) {
+                throw new IllegalArgumentException("two exits " + direction + " from " + words[1]);
+            }
+            room.directions.add(direction);
+            room.neighbours.add(words[3]);
+        }
+        else if (keyword.equals("item") || keyword.equals("beamer")) {
+            expect(words, 5);
+            RoomSource room = room(words[1]);
+            double weight = Double.parseDouble(words[3]);
+            if (keyword.equals("beamer")) {
+                room.items.add(new Beamer(words[2], words[4], weight));
+            }
+            else {
+                room.items.add(new Item(words[2], words[4], weight));
+            }
+        }
+        else if (keyword.equals("start")) {
+            expect(words, 2);
+            startRoom = words[1];
+        }
+        else {
+            throw new IllegalArgumentException("unknown statement " + keyword);
+        }
+    }
+
+    /**
+     * Check that a statement has at least the given number of words.
+     *
+     * @param words The words of the statement
+     * @param count The number of words needed
+     */
+    private void expect(String[] words, int count)
+    {
+        if (words.length < count) {
+            throw new IllegalArgumentException(words[0] + " needs " + (count - 1) + " arguments");
+        }
+    }
+
+    /**
+     * Join the words of a statement from the given index on.
+     *
+     * @param words The words of the statement
+     * @param from The index of the first word
+     * @return The words, separated by spaces
+     */
+    private String join(String[] words, int from)
+    {
+        return String.join(" ", Arrays.asList(words).subList(from, words.length));
+    }
+
+    /**
+     * Returns the room with the given name.
+     *
+     * @param name The name of the room
+     * @return The declared room
+     */
+    private RoomSource room(String name)
+    {
+        return rooms.get(roomId(name));
+    }
+
+    /**
+     * Returns the id of the room with the given name.
+     *
+     * @param name The name of the room
+     * @return The id of the room
+     */
+    private int roomId(String name)
+    {
+        Integer id = roomIds.get(name);
+        if (id == null) {
+            throw new IllegalArgumentException("unknown room " + name);
+        }
+        return id;
+    }
+
+    /**
+     * Write the rooms read so far as a world file.
+     *
+     * @param target The world file to write
+     * @throws IOException If the file cannot be written, or an exit leads to an unknown room
+     */
+    public void write(Path target) throws IOException
+    {
+        if (rooms.isEmpty()) {
+            throw new IOException("the world has no rooms");
+        }
+        int startRoomId;
+        List<List<Integer>> neighbourIds = new ArrayList<List<Integer>>();
+        try {
+            startRoomId = startRoom == null ? 0 : roomId(startRoom);
+            for (RoomSource room : rooms) {
+                List<Integer> ids = new ArrayList<Integer>();
+                for (String neighbour : room.neighbours) {
+                    ids.add(roomId(neighbour));
+                }
+                neighbourIds.add(ids);
+            }
+        }
+        catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+
+        try (WorldWriter writer = new WorldWriter(target, rooms.size(), startRoomId)) {
+            for (int id = 0; id < rooms.size(); id++) {
+                RoomSource room = rooms.get(id);
+                writer.writeRoom(WorldWriter.encodeRoom(room.transporter, room.description,
+                                                        room.directions, neighbourIds.get(id), room.items));
+            }
+        }
+    }
+
+    /**
+     * Compile the text world named by the first argument into the
+     * world file named by the second.
+     *
+     * @param args The command line arguments: source target
+     * @throws IOException If the world cannot be compiled
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2) {
+            System.out.println("usage: java WorldCompiler <world.txt> <world.zwf>");
+            return;
+        }
+        compile(Paths.get(args[0]), Paths.get(args[1]));
+    }
+}
@@ -0,0 +1,383 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * A WorldFile is a compiled world (see WorldCompiler and WorldWriter),
+ * mapped into memory read-only. Rooms are read from it one at a time
+ * when a World first needs them, so opening even a very large world
+ * takes no time, and any number of worlds (one per game session) can
+ * share one WorldFile.
+ *
+ * The file starts with a header and a table with the position of every
+ * room, followed by the rooms and by the index of the names of the rooms
+ * (see WordIndex), sorted by name so a name is found by binary search:
+ *
+ *     int magic, int version, int room count, int start room id,
+ *     long position of the name index
+ *     long position of room 0, room 1, ...
+ *     room: byte kind (ROOM or TRANSPORTER), string description,
+ *           byte exit count, (byte Direction ordinal, int room id) per exit,
+ *           int item count, (byte kind (ITEM or BEAMER), string name,
+ *                            string description, double weight) per item
+ *     name index: int name count,
+ *                 (long position of the name, int room id or
+ *                  WordIndex.AMBIGUOUS) per name, string per name
+ *
+ * Strings are stored as an unsigned short length followed by UTF-8 bytes.
+ *
+ * @author Noor Karabala
+ */
+public class WorldFile
+{
+    public static final int MAGIC = 0x5A55554C;   // "ZUUL"
+    public static final int VERSION = 3;
+    public static final int HEADER_SIZE = 24;
+
+    // the size of an entry of the name index
+    public static final int NAME_ENTRY_SIZE = 12;
+
+    // kinds of rooms and items
+    public static final byte ROOM = 0;
+    public static final byte TRANSPORTER = 1;
+    public static final byte ITEM = 0;
+    public static final byte BEAMER = 1;
+
+    // a room record may not be longer than this
+    public static final int MAX_RECORD_SIZE = 1 << 20;
+
+    // the file is mapped in segments of this size; every segment is mapped
+    // MAX_RECORD_SIZE bytes longer, so a record never has to be read
+    // from two segments
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    // the directions by their ordinal
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    private ByteBuffer[] segments;
+    private int roomCount;
+    private int startRoomId;
+
+    // the routes between the rooms, built when first needed and shared by all worlds
+    private RouteIndex routes;
+
+    // the position of the name index, and the number of names in it
+    private long namesPosition;
+    private int nameCount;
+
+    /**
+     * Create a world file from its mapped segments.
+     *
+     * @param segments The mapped segments of the file
+     * @throws IOException If the file is not a world file
+     */
+    private WorldFile(ByteBuffer[] segments) throws IOException
+    {
+        this.segments = segments;
+        ByteBuffer header = segments[0];
+        if (header.limit() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException("not a world file");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("unsupported world file version " + header.getInt(4));
+        }
+        roomCount = header.getInt(8);
+        startRoomId = header.getInt(12);
+        namesPosition = header.getLong(16);
+        nameCount = new Cursor(namesPosition).readInt();
+    }
+
+    /**
+     * Open a compiled world file.
+     *
+     * @param path The file to open
+     * @return The opened world file
+     * @throws IOException If the file cannot be read or is not a world file
+     */
+    public static WorldFile open(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) Math.max(1, (size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            ByteBuffer[] segments = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = i * SEGMENT_SIZE;
+                long length = Math.min(size - start, SEGMENT_SIZE + MAX_RECORD_SIZE);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+            }
+            // the mapping stays valid after the channel is closed
+            return new WorldFile(segments);
+        }
+    }
+
+    /**
+     * @return The number of rooms in the world
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * @return The id of the room where the game starts
+     */
+    public int getStartRoomId()
+    {
+        return startRoomId;
+    }
+
+    /**
+     * Read a room, with its exits and items, and create it in the given world.
+     *
+     * @param id The id of the room
+     * @param world The world the room belongs to
+     * @return The new room
+     */
+    public Room readRoom(int id, World world)
+    {
+        Cursor cursor = roomCursor(id);
+        byte kind = cursor.readByte();
+        String description = cursor.readString();
+        Room room;
+        if (kind == TRANSPORTER) {
+            room = new TransporterRoom(description, world, id);
+        }
+        else {
+            room = new Room(description, world, id);
+        }
+
+        int exitCount = cursor.readByte();
+        for (int i = 0; i < exitCount; i++) {
+            Direction direction = DIRECTIONS[cursor.readByte()];
+            room.setExit(direction, cursor.readInt());
+        }
+
+        ItemStore items = readItems(cursor);
+        if (items != null) {
+            room.setItemStore(items);
+        }
+        return room;
+    }
+
+    /**
+     * Read the items of a room as they are in the file, without creating the room.
+     *
+     * @param id The id of the room
+     * @return The items of the room, or null if it has none
+     */
+    public ItemStore readItems(int id)
+    {
+        Cursor cursor = roomCursor(id);
+        cursor.readByte();
+        cursor.skipString();
+        int exitCount = cursor.readByte();
+        cursor.skip(exitCount * 5);
+        return readItems(cursor);
+    }
+
+    /**
+     * Read the items of a room record.
+     *
+     * @param cursor A cursor at the item count of the record
+     * @return The items, or null if there are none
+     */
+    private ItemStore readItems(Cursor cursor)
+    {
+        int itemCount = cursor.readInt();
+        if (itemCount == 0) {
+            return null;
+        }
+        ItemStore items = new ItemStore();
+        for (int i = 0; i < itemCount; i++) {
+            byte itemKind = cursor.readByte();
+            String name = cursor.readString();
+            String itemDescription = cursor.readString();
+            double weight = cursor.readDouble();
+            if (itemKind == BEAMER) {
+                items.add(new Beamer(name, itemDescription, weight));
+            }
+            else {
+                items.add(new Item(name, itemDescription, weight));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Read the exits of a room without creating it.
+     *
+     * @param id The id of the room
+     * @param exits Receives the id of the room behind every exit, indexed
+     *              by Direction ordinal, or -1 where there is no exit
+     * @return true if the room is a transporter room
+     */
+    public boolean readExits(int id, int[] exits)
+    {
+        Cursor cursor = roomCursor(id);
+        byte kind = cursor.readByte();
+        cursor.skipString();
+        Arrays.fill(exits, -1);
+        int exitCount = cursor.readByte();
+        for (int i = 0; i < exitCount; i++) {
+            int direction = cursor.readByte();
+            exits[direction] = cursor.readInt();
+        }
+        return kind == TRANSPORTER;
+    }
+
+    /**
+     * Read the description of a room without creating it.
+     *
+     * @param id The id of the room
+     * @return The description of the room
+     */
+    public String readDescription(int id)
+    {
+        Cursor cursor = roomCursor(id);
+        cursor.readByte();
+        return cursor.readString();
+    }
+
+    /**
+     * Returns the routes between the rooms of this file, building them
+     * the first time they are needed.
+     *
+     * @return The routes
+     */
+    public synchronized RouteIndex getRouteIndex()
+    {
+        if (routes == null) {
+            routes = RouteIndex.build(roomCount, this::readExits);
+        }
+        return routes;
+    }
+
+    /**
+     * Returns the rooms the words of their descriptions stand for. The
+     * index is read from the file, so it takes no time and no memory.
+     *
+     * @return The index of the words
+     */
+    public WordIndex getWordIndex()
+    {
+        return this::findName;
+    }
+
+    /**
+     * Find a name in the name index of the file by binary search.
+     *
+     * @param word A word, in any case
+     * @return The room the word names, WordIndex.NONE or WordIndex.AMBIGUOUS
+     */
+    private int findName(String word)
+    {
+        String name = word.toLowerCase(Locale.ROOT);
+        int low = 0;
+        int high = nameCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            Cursor entry = new Cursor(namesPosition + 4 + (long) NAME_ENTRY_SIZE * middle);
+            int order = new Cursor(entry.readLong()).readString().compareTo(name);
+            if (order < 0) {
+                low = middle + 1;
+            }
+            else if (order > 0) {
+                high = middle - 1;
+            }
+            else {
+                return entry.readInt();
+            }
+        }
+        return WordIndex.NONE;
+    }
+
+    /**
+     * Returns a cursor at the start of a room record.
+     *
+     * @param id The id of the room
+     * @return A cursor reading the room
+     */
+    private Cursor roomCursor(int id)
+    {
+        if (id < 0 || id >= roomCount) {
+            throw new IndexOutOfBoundsException("no room " + id);
+        }
+        long position = new Cursor(HEADER_SIZE + 8L * id).readLong();
+        return new Cursor(position);
+    }
+
+    /**
+     * A Cursor reads one record from the mapped file. The segments are only
+     * read with absolute positions, so many cursors (on many threads) can
+     * read the same file at once.
+     */
+    private class Cursor
+    {
+        private ByteBuffer segment;
+        private int position;
+
+        /**
+         * Create a cursor at a position in the file.
+         *
+         * @param filePosition The position in the file
+         */
+        private Cursor(long filePosition)
+        {
+            segment = segments[(int) (filePosition / SEGMENT_SIZE)];
+            position = (int) (filePosition % SEGMENT_SIZE);
+        }
+
+        private byte readByte()
+        {
+            byte value = segment.get(position);
+            position += 1;
+            return value;
+        }
+
+        private int readInt()
+        {
+            int value = segment.getInt(position);
+            position += 4;
+            return value;
+        }
+
+        private long readLong()
+        {
+            long value = segment.getLong(position);
+            position += 8;
+            return value;
+        }
+
+        private double readDouble()
+        {
+            double value = segment.getDouble(position);
+            position += 8;
+            return value;
+        }
+
+        private void skip(int bytes)
+        {
+            position += bytes;
+        }
+
+        private void skipString()
+        {
+            position += 2 + (segment.getShort(position) & 0xFFFF);
+        }
+
+        private String readString()
+        {
+            int length = segment.getShort(position) & 0xFFFF;
+            position += 2;
+            byte[] bytes = new byte[length];
+            segment.get(position, bytes);
+            position += length;
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,594 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * WorldGenerator builds worlds of any number of rooms from a seed, for
+ * load and soak tests. The same seed and settings always give the same
+ * world. The rooms are connected as
+ *
+ *     GRID         a square grid, with exits north, east, south and west
+ *     RANDOM       a random cycle through all rooms (east and west) and
+ *                  two random pairings of the rooms (north and south,
+ *                  up and down): every room can reach every other room,
+ *                  in few steps, but neighbours have nothing in common
+ *     SMALL_WORLD  the grid, plus random shortcuts up and down between
+ *                  some pairs of rooms anywhere in the grid
+ *
+ * Every exit has a way back. The rooms get items (about itemDensity per
+ * room, some of them cookies, some too heavy to carry), a share of them
+ * are transporter rooms, and the given number of beamers is spread over
+ * the world. The start room (room 0) is never a transporter room and
+ * always has a cookie, so a player can start taking items at once.
+ *
+ * Every room is worked out from the seed and its id alone; the pairings
+ * come from random permutations of the room ids that can be computed
+ * (and reversed) for one id at a time. So the rooms are generated in
+ * chunks on all cores, in any order, and written straight to a world
+ * file or into a World in the order of their ids. Only a few chunks are
+ * held at once, so a world file of ten million rooms is written in the
+ * same memory as one of a thousand.
+ *
+ * To generate a world file:
+ *
+ *     java WorldGenerator [-topology grid|random|small-world] [-items n] [-transporters share]
+ *                         [-beamers n] [-shortcuts share] [-seed n] rooms world.zwf
+ *
+ * @author Noor Karabala
+ */
+public class WorldGenerator
+{
+    /**
+     * How the rooms are connected.
+     */
+    public enum Topology
+    {
+        GRID, RANDOM, SMALL_WORLD
+    }
+
+    // the number of rooms generated by one task
+    private static final int CHUNK = 4096;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // salts keeping the random choices of different purposes apart
+    private static final long ROOM_SALT = 1;
+    private static final long BEAMER_SALT = 2;
+    private static final long SHORTCUT_SALT = 3;
+    private static final long CYCLE_SALT = 4;
+    private static final long NORTH_SOUTH_SALT = 5;
+    private static final long UP_DOWN_SALT = 6;
+
+    // the items rooms are furnished with; the first is the cookie
+    private static final ItemType[] ITEM_TYPES = {
+        ItemType.of("cookie", "a chocolate cookie", 2),
+        ItemType.of("book", "a dog-eared book", 1),
+        ItemType.of("lamp", "a brass lamp", 3),
+        ItemType.of("chair", "a wooden chair", 5),
+        ItemType.of("computer", "a PC", 10),
+        ItemType.of("crate", "a crate of old papers", 30),
+        ItemType.of("statue", "a marble statue", 400),
+    };
+
+    private static final ItemType BEAMER_TYPE = ItemType.of("beamer", "a portable teleportation device", 3.5);
+
+    // the words room descriptions are made of
+    private static final String[] ADJECTIVES = {
+        "dusty", "bright", "narrow", "damp", "quiet", "crowded", "cold", "long", "tiny", "abandoned"
+    };
+    private static final String[] PLACES = {
+        "corridor", "lecture theatre", "office", "lab", "store room", "stairwell", "library",
+        "cellar", "courtyard", "kitchen"
+    };
+
+    /**
+     * A room as it is generated, before it is written or built.
+     */
+    private static class GeneratedRoom
+    {
+        private boolean transporter;
+        private String description;
+        private List<Direction> directions = new ArrayList<Direction>();
+        private List<Integer> neighbourIds = new ArrayList<Integer>();
+        private List<Item> items = new ArrayList<Item>();
+    }
+
+    /**
+     * Takes the generated rooms, in the order of their ids.
+     */
+    private interface RoomSink<T>
+    {
+        void accept(T room) throws IOException;
+    }
+
+    /**
+     * A random permutation of 0 to n - 1 that can be applied to, and
+     * reversed for, one number at a time: a 4 round Feistel network on the
+     * smallest even number of bits holding n, applied again while the
+     * result is n or more ("cycle walking").
+     */
+    private static class Permutation
+    {
+        private int size;
+        private int halfBits;
+        private int halfMask;
+        private long key;
+
+        /**
+         * @param size The number of numbers permuted
+         * @param key The key choosing the permutation
+         */
+        private Permutation(int size, long key)
+        {
+            this.size = size;
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, size - 1));
+            halfBits = Math.max(1, (bits + 1) / 2);
+            halfMask = (1 << halfBits) - 1;
+            this.key = key;
+        }
+
+        /**
+         * @param x A number from 0 to size - 1
+         * @return Its place in the permutation
+         */
+        private int apply(int x)
+        {
+            do {
+                int left = x >>> halfBits;
+                int right = x & halfMask;
+                for (int round = 0; round < 4; round++) {
+                    int next = left ^ scramble(right, round);
+                    left = right;
+                    right = next;
+                }
+                x = (left << halfBits) | right;
+            } while (Integer.compareUnsigned(x, size) >= 0);
+            return x;
+        }
+
+        /**
+         * @param x A place in the permutation, from 0 to size - 1
+         * @return The number at that place
+         */
+        private int invert(int x)
+        {
+            do {
+                int left = x >>> halfBits;
+                int right = x & halfMask;
+                for (int round = 3; round >= 0; round--) {
+                    int previous = right ^ scramble(left, round);
+                    right = left;
+                    left = previous;
+                }
+                x = (left << halfBits) | right;
+            } while (Integer.compareUnsigned(x, size) >= 0);
+            return x;
+        }
+
+        /**
+         * @param half Half of a number
+         * @param round The round of the network
+         * @return The value mixed into the other half
+         */
+        private int scramble(int half, int round)
+        {
+            return (int) mix(key + round * GOLDEN_GAMMA + half) & halfMask;
+        }
+    }
+
+    private int roomCount;
+    private long seed;
+    private Topology topology = Topology.GRID;
+    private double itemDensity = 1;
+    private double transporterRatio = 0.01;
+    private int beamerCount = 0;
+    private double shortcutRatio = 0.1;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // worked out when the rooms are generated
+    private int gridWidth;
+    private Permutation cycle;
+    private Permutation northSouth;
+    private Permutation upDown;
+    private int[] beamerRooms;
+
+    /**
+     * Create a generator of grid worlds with one item per room on average,
+     * 1% transporter rooms and no beamers.
+     *
+     * @param roomCount The number of rooms of the worlds
+     * @param seed The seed the worlds are generated from
+     */
+    public WorldGenerator(int roomCount, long seed)
+    {
+        if (roomCount <= 0) {
+            throw new IllegalArgumentException("a world needs at least one room");
+        }
+        this.roomCount = roomCount;
+        this.seed = seed;
+    }
+
+    /**
+     * @param topology How the rooms are connected
+     */
+    public void setTopology(Topology topology)
+    {
+        this.topology = topology;
+    }
+
+    /**
+     * @param itemDensity The average number of items per room
+     */
+    public void setItemDensity(double itemDensity)
+    {
+        this.itemDensity = itemDensity;
+    }
+
+    /**
+     * @param transporterRatio The share of rooms that are transporter rooms, from 0 to 1
+     */
+    public void setTransporterRatio(double transporterRatio)
+    {
+        this.transporterRatio = transporterRatio;
+    }
+
+    /**
+     * @param beamerCount The number of beamers in the world
+     */
+    public void setBeamerCount(int beamerCount)
+    {
+        this.beamerCount = beamerCount;
+    }
+
+    /**
+     * @param shortcutRatio The share of rooms with a shortcut, in SMALL_WORLD worlds, from 0 to 1
+     */
+    public void setShortcutRatio(double shortcutRatio)
+    {
+        this.shortcutRatio = shortcutRatio;
+    }
+
+    /**
+     * @param pool The pool the rooms are generated on
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     * Generate the world and write it to a world file.
+     *
+     * @param target The world file to write
+     * @throws IOException If the file cannot be written
+     */
+    public void write(Path target) throws IOException
+    {
+        try (WorldWriter writer = new WorldWriter(target, roomCount, 0)) {
+            // the rooms are encoded on the pool as well; only writing is done in order
+            generate(room -> WorldWriter.encodeRoom(room.transporter, room.description, room.directions,
+                                                   room.neighbourIds, room.items),
+                     writer::writeRoom);
+        }
+    }
+
+    /**
+     * Generate the world and build its rooms in code, e.g. for a test that
+     * needs the rooms in memory. Large worlds are better written to a file
+     * and loaded from it, as a file world keeps only the rooms in use.
+     *
+     * @return The new world
+     */
+    public World build()
+    {
+        World world = new World();
+        try {
+            generate(room -> room, room -> {
+                Room built = room.transporter ? world.newTransporterRoom(room.description)
+                                              : world.newRoom(room.description);
+                for (int i = 0; i < room.directions.size(); i++) {
+                    built.setExit(room.directions.get(i), room.neighbourIds.get(i));
+                }
+                for (Item item : room.items) {
+                    built.addItem(item);
+                }
+            });
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen when building in memory
+        }
+        world.setStartRoom(world.getRoom(0));
+        return world;
+    }
+
+    /**
+     * Generate all rooms in chunks on the pool and hand them to a sink in
+     * the order of their ids. At most two chunks per thread of the pool are
+     * generated ahead of the sink.
+     *
+     * @param convert Turns a generated room into what the sink takes; runs on the pool
+     * @param sink Takes the rooms, in order, on the calling thread
+     * @throws IOException If the sink fails
+     */
+    private <T> void generate(Function<GeneratedRoom, T> convert, RoomSink<T> sink)
+        throws IOException
+    {
+        prepare();
+        int window = 2 * pool.getParallelism();
+        ArrayDeque<Future<List<T>>> chunks = new ArrayDeque<Future<List<T>>>();
+        int next = 0;
+        try {
+            while (next < roomCount || !chunks.isEmpty()) {
+                while (next < roomCount && chunks.size() < window) {
+                    int from = next;
+                    int to = (int) Math.min(roomCount, (long) from + CHUNK);
+                    chunks.add(pool.submit(() -> {
+                        List<T> rooms = new ArrayList<T>(to - from);
+                        for (int id = from; id < to; id++) {
+                            rooms.add(convert.apply(generateRoom(id)));
+                        }
+                        return rooms;
+                    }));
+                    next = to;
+                }
+                for (T room : chunks.poll().get()) {
+                    sink.accept(room);
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while generating the world", e);
+        }
+        catch (ExecutionException e) {
+            throw new IllegalStateException("could not generate the world", e.getCause());
+        }
+        finally {
+            for (Future<List<T>> chunk : chunks) {
+                chunk.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Work out what the rooms are generated from: the width of the grid,
+     * the permutations pairing the rooms, and the rooms of the beamers.
+     */
+    private void prepare()
+    {
+        gridWidth = (int) Math.ceil(Math.sqrt(roomCount));
+        cycle = new Permutation(roomCount, mix(seed ^ CYCLE_SALT));
+        northSouth = new Permutation(roomCount, mix(seed ^ NORTH_SOUTH_SALT));
+        upDown = new Permutation(roomCount, mix(seed ^ UP_DOWN_SALT));
+        beamerRooms = new int[beamerCount];
+        for (int i = 0; i < beamerCount; i++) {
+            beamerRooms[i] = (int) ((mix(seed ^ (BEAMER_SALT + i * GOLDEN_GAMMA)) >>> 33) % roomCount);
+        }
+        Arrays.sort(beamerRooms);
+    }
+
+    /**
+     * Generate one room from the seed and its id.
+     *
+     * @param id The id of the room
+     * @return The room
+     */
+    private GeneratedRoom generateRoom(int id)
+    {
+        SeededRandom random = new SeededRandom(mix(seed ^ (ROOM_SALT + id * GOLDEN_GAMMA)));
+        GeneratedRoom room = new GeneratedRoom();
+        room.transporter = id != 0 && chance(random) < transporterRatio;
+        String adjective = ADJECTIVES[random.nextInt(ADJECTIVES.length)];
+        room.description = (adjective.charAt(0) == 'a' ? "in an " : "in a ") + adjective + " "
+            + PLACES[random.nextInt(PLACES.length)] + " (room " + id + ")";
+
+        if (topology == Topology.RANDOM) {
+            addCycleExits(room, id);
+            addPairedExit(room, id, northSouth, Direction.NORTH);
+            addPairedExit(room, id, upDown, Direction.UP);
+        }
+        else {
+            addGridExits(room, id);
+            if (topology == Topology.SMALL_WORLD) {
+                addPairedExit(room, id, upDown, Direction.UP);
+            }
+        }
+
+        // a whole number of items, so that itemDensity is met on average
+        int itemCount = (int) itemDensity + (chance(random) < itemDensity - (int) itemDensity ? 1 : 0);
+        if (id == 0) {
+            room.items.add(new Item(ITEM_TYPES[0]));
+        }
+        for (int i = 0; i < itemCount; i++) {
+            // cookies and light items are the most common
+            int type = Math.min(random.nextInt(ITEM_TYPES.length), random.nextInt(ITEM_TYPES.length));
+            room.items.add(new Item(ITEM_TYPES[type]));
+        }
+        int beamer = Arrays.binarySearch(beamerRooms, id);
+        if (beamer >= 0) {
+            while (beamer > 0 && beamerRooms[beamer - 1] == id) {
+                beamer--;
+            }
+            for (; beamer < beamerRooms.length && beamerRooms[beamer] == id; beamer++) {
+                room.items.add(new Beamer(BEAMER_TYPE));
+            }
+        }
+        return room;
+    }
+
+    /**
+     * Add the exits of a room in the grid, in the order of the directions.
+     *
+     * @param room The room
+     * @param id The id of the room
+     */
+    private void addGridExits(GeneratedRoom room, int id)
+    {
+        int x = id % gridWidth;
+        if (id >= gridWidth) {
+            addExit(room, Direction.NORTH, id - gridWidth);
+        }
+        if (x < gridWidth - 1 && id + 1 < roomCount) {
+            addExit(room, Direction.EAST, id + 1);
+        }
+        if ((long) id + gridWidth < roomCount) {
+            addExit(room, Direction.SOUTH, id + gridWidth);
+        }
+        if (x > 0) {
+            addExit(room, Direction.WEST, id - 1);
+        }
+    }
+
+    /**
+     * Add the exits east and west of a room on the random cycle through all rooms.
+     *
+     * @param room The room
+     * @param id The id of the room
+     */
+    private void addCycleExits(GeneratedRoom room, int id)
+    {
+        if (roomCount < 2) {
+            return;
+        }
+        int place = cycle.apply(id);
+        addExit(room, Direction.EAST, cycle.invert(place + 1 == roomCount ? 0 : place + 1));
+        addExit(room, Direction.WEST, cycle.invert(place == 0 ? roomCount - 1 : place - 1));
+    }
+
+    /**
+     * Add the exit of a room to the room it is paired with. The rooms at
+     * places 2k and 2k + 1 of the permutation are paired; the first goes
+     * to the second in the given direction, and back in the opposite one.
+     * In a SMALL_WORLD world, only some pairs are connected.
+     *
+     * @param room The room
+     * @param id The id of the room
+     * @param pairing The permutation pairing the rooms
+     * @param direction The direction from the first room of a pair to the second
+     */
+    private void addPairedExit(GeneratedRoom room, int id, Permutation pairing, Direction direction)
+    {
+        int place = pairing.apply(id);
+        if ((place ^ 1) >= roomCount) {
+            return; // the last room of an odd number has no partner
+        }
+        int partner = pairing.invert(place ^ 1);
+        if (topology == Topology.SMALL_WORLD) {
+            // both rooms of the pair make the same choice
+            long pair = Math.min(id, partner);
+            if (chance(mix(seed ^ (SHORTCUT_SALT + pair * GOLDEN_GAMMA))) >= shortcutRatio) {
+                return;
+            }
+        }
+        addExit(room, (place & 1) == 0 ? direction : direction.opposite(), partner);
+    }
+
+    /**
+     * Add an exit to a room.
+     *
+     * @param room The room
+     * @param direction The direction of the exit
+     * @param neighbourId The id of the room the exit leads to
+     */
+    private static void addExit(GeneratedRoom room, Direction direction, int neighbourId)
+    {
+        room.directions.add(direction);
+        room.neighbourIds.add(neighbourId);
+    }
+
+    /**
+     * @param random A random number generator
+     * @return A random number from 0 (inclusive) to 1 (exclusive)
+     */
+    private static double chance(SeededRandom random)
+    {
+        return chance(random.nextLong());
+    }
+
+    /**
+     * @param bits Random bits
+     * @return A number from 0 (inclusive) to 1 (exclusive) made of the high 53 bits
+     */
+    private static double chance(long bits)
+    {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Scramble a number (the SplitMix64 finalizer), so that nearby numbers
+     * give unrelated results.
+     *
+     * @param z The number
+     * @return The scrambled number
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Generate a world file as told by the command line arguments.
+     *
+     * @param args The command line arguments (see the class comment)
+     * @throws IOException If the world file cannot be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        List<String> rest = new ArrayList<String>();
+        Topology topology = Topology.GRID;
+        double items = 1;
+        double transporters = 0.01;
+        int beamers = 0;
+        double shortcuts = 0.1;
+        long seed = 42;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-topology") && i + 1 < args.length) {
+                topology = Topology.valueOf(args[++i].toUpperCase().replace('-', '_'));
+            }
+            else if (args[i].equals("-items") && i + 1 < args.length) {
+                items = Double.parseDouble(args[++i]);
+            }
+            else if (args[i].equals("-transporters") && i + 1 < args.length) {
+                transporters = Double.parseDouble(args[++i]);
+            }
+            else if (args[i].equals("-beamers") && i + 1 < args.length) {
+                beamers = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-shortcuts") && i + 1 < args.length) {
+                shortcuts = Double.parseDouble(args[++i]);
+            }
+            else if (args[i].equals("-seed") && i + 1 < args.length) {
+                seed = Long.parseLong(args[++i]);
+            }
+            else {
+                rest.add(args[i]);
+            }
+        }
+        if (rest.size() != 2) {
+            System.out.println("usage: java WorldGenerator [-topology grid|random|small-world] [-items n]"
+                               + " [-transporters share] [-beamers n] [-shortcuts share] [-seed n] rooms world.zwf");
+            return;
+        }
+
+        WorldGenerator generator = new WorldGenerator(Integer.parseInt(rest.get(0)), seed);
+        generator.setTopology(topology);
+        generator.setItemDensity(items);
+        generator.setTransporterRatio(transporters);
+        generator.setBeamerCount(beamers);
+        generator.setShortcutRatio(shortcuts);
+        long start = System.nanoTime();
+        generator.write(Paths.get(rest.get(1)));
+        System.out.printf("%d rooms written to %s in %d ms%n", generator.roomCount, rest.get(1),
+                          (System.nanoTime() - start) / 1_000_000);
+    }
+}
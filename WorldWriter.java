@@ -0,0 +1,241 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WorldWriter writes a compiled world file (see WorldFile for the format).
+ * The rooms are written one after another in the order of their ids, so
+ * a world never has to be held in memory as a whole to be written. The
+ * room records and the entries of the room table are collected in two
+ * fixed buffers and written when a buffer is full, so writing a world of
+ * any size takes the same small amount of memory and few system calls.
+ * Only the names of the rooms (see WordIndex) are kept until the file is
+ * closed, to write their index; there are as many of them as distinct
+ * words in the descriptions, however many rooms there are.
+ *
+ * @author Noor Karabala
+ */
+public class WorldWriter implements AutoCloseable
+{
+    // the size of the buffers of room records and of room table entries
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private FileChannel channel;
+    private int roomCount;
+    private int startRoomId;
+    private int roomsWritten;
+
+    // the position of the next room record in the file
+    private long position;
+
+    // room records not written yet, and where the first of them goes
+    private ByteBuffer records;
+    private long recordsPosition;
+
+    // room table entries not written yet, and where the first of them goes
+    private ByteBuffer table;
+    private long tablePosition;
+
+    // the names of the rooms written
+    private WordIndex.Builder names;
+
+    /**
+     * Create a world file for the given number of rooms.
+     *
+     * @param path The file to write
+     * @param roomCount The number of rooms the world will have
+     * @param startRoomId The id of the room where the game starts
+     * @throws IOException If the file cannot be created
+     */
+    public WorldWriter(Path path, int roomCount, int startRoomId) throws IOException
+    {
+        this.roomCount = roomCount;
+        this.startRoomId = startRoomId;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        // the rooms follow the header and the table of room positions
+        position = WorldFile.HEADER_SIZE + 8L * roomCount;
+        records = ByteBuffer.allocate(BUFFER_SIZE);
+        recordsPosition = position;
+        table = ByteBuffer.allocate(BUFFER_SIZE);
+        tablePosition = WorldFile.HEADER_SIZE;
+        names = new WordIndex.Builder();
+    }
+
+    /**
+     * Encode a room record.
+     *
+     * @param transporter true if the room is a transporter room
+     * @param description The description of the room
+     * @param directions The directions of the exits
+     * @param neighbourIds The ids of the rooms the exits lead to
+     * @param items The items in the room
+     * @return The encoded room
+     */
+    public static byte[] encodeRoom(boolean transporter, String description, List<Direction> directions,
+                                    List<Integer> neighbourIds, List<Item> items)
+    {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(transporter ? WorldFile.TRANSPORTER : WorldFile.ROOM);
+            writeString(out, description);
+            out.writeByte(directions.size());
+            for (int i = 0; i < directions.size(); i++) {
+                out.writeByte(directions.get(i).ordinal());
+                out.writeInt(neighbourIds.get(i));
+            }
+            out.writeInt(items.size());
+            for (Item item : items) {
+                out.writeByte(item instanceof Beamer ? WorldFile.BEAMER : WorldFile.ITEM);
+                writeString(out, item.getName());
+                writeString(out, item.getItemDescription());
+                out.writeDouble(item.getWeight());
+            }
+            if (bytes.size() > WorldFile.MAX_RECORD_SIZE) {
+                throw new IllegalArgumentException("room record too long: " + description);
+            }
+            return bytes.toByteArray();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen when writing to memory
+        }
+    }
+
+    /**
+     * Write a string as its length followed by its UTF-8 bytes.
+     *
+     * @param out The stream to write to
+     * @param s The string to write
+     * @throws IOException If the stream fails
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException
+    {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("string too long: " + s.substring(0, 40) + "...");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Write the next room.
+     *
+     * @param record The room, encoded with encodeRoom
+     * @throws IOException If the file cannot be written
+     */
+    public void writeRoom(byte[] record) throws IOException
+    {
+        if (roomsWritten == roomCount) {
+            throw new IllegalStateException("all " + roomCount + " rooms are written");
+        }
+        if (!table.hasRemaining()) {
+            tablePosition += writeAll(table, tablePosition);
+        }
+        table.putLong(position);
+        // the description follows the kind of the room
+        int length = ((record[1] & 0xFF) << 8) | (record[2] & 0xFF);
+        names.addRoom(roomsWritten, new String(record, 3, length, StandardCharsets.UTF_8));
+        roomsWritten++;
+
+        if (record.length > records.remaining()) {
+            recordsPosition += writeAll(records, recordsPosition);
+        }
+        if (record.length > records.capacity()) {
+            // a record larger than the buffer is written at once
+            ByteBuffer large = ByteBuffer.wrap(record);
+            while (large.hasRemaining()) {
+                recordsPosition += channel.write(large, recordsPosition);
+            }
+        }
+        else {
+            records.put(record);
+        }
+        position += record.length;
+    }
+
+    /**
+     * Write the header, the room table and the name index and close the file.
+     *
+     * @throws IOException If the file cannot be written, or not all rooms were written
+     */
+    public void close() throws IOException
+    {
+        try {
+            if (roomsWritten != roomCount) {
+                throw new IOException("only " + roomsWritten + " of " + roomCount + " rooms written");
+            }
+            writeAll(records, recordsPosition);
+            writeAll(table, tablePosition);
+            writeNames();
+
+            ByteBuffer header = ByteBuffer.allocate(WorldFile.HEADER_SIZE);
+            header.putInt(WorldFile.MAGIC).putInt(WorldFile.VERSION).putInt(roomCount).putInt(startRoomId)
+                  .putLong(position);
+            writeAll(header, 0);
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Write the name index after the rooms: the entries, sorted by name,
+     * then the names.
+     *
+     * @throws IOException If the file cannot be written
+     */
+    private void writeNames() throws IOException
+    {
+        Map<String, Integer> rooms = names.getNames();
+        String[] sorted = rooms.keySet().toArray(new String[0]);
+        Arrays.sort(sorted);
+
+        byte[][] strings = new byte[sorted.length][];
+        int size = 4 + WorldFile.NAME_ENTRY_SIZE * sorted.length;
+        for (int i = 0; i < sorted.length; i++) {
+            strings[i] = sorted[i].getBytes(StandardCharsets.UTF_8);
+            size += 2 + strings[i].length;
+        }
+
+        ByteBuffer index = ByteBuffer.allocate(size);
+        index.putInt(sorted.length);
+        long stringPosition = position + 4 + WorldFile.NAME_ENTRY_SIZE * sorted.length;
+        for (int i = 0; i < sorted.length; i++) {
+            index.putLong(stringPosition).putInt(rooms.get(sorted[i]));
+            stringPosition += 2 + strings[i].length;
+        }
+        for (byte[] string : strings) {
+            index.putShort((short) string.length).put(string);
+        }
+        writeAll(index, position);
+    }
+
+    /**
+     * Write the contents of a buffer at a position and clear it.
+     *
+     * @param buffer The buffer to write
+     * @param at The position in the file
+     * @return The number of bytes written
+     * @throws IOException If the file cannot be written
+     */
+    private long writeAll(ByteBuffer buffer, long at) throws IOException
+    {
+        buffer.flip();
+        long written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, at + written);
+        }
+        buffer.clear();
+        return written;
+    }
+}